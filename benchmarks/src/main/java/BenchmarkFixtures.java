@@ -0,0 +1,197 @@
+import Benchmarks.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// This class builds the shops, goods and receipts that the benchmarks run on. It is in the default package with the
+// classes of the shop and gives each benchmark a Stage. All the files are saved in a temporary folder that is made
+// when the class is loaded and deleted when the benchmark JVM exits
+public class BenchmarkFixtures {
+    // The temporary data folder of this JVM
+    private static final Path DATA_FOLDER = createDataFolder();
+    // Each fixture gets its own shop so the journals of the shops don't mix
+    private static final AtomicInteger SHOP_IDS = new AtomicInteger();
+    // The number of prepared baskets each cashier goes through
+    private static final int BASKETS_PER_CASHIER = 64;
+
+    private BenchmarkFixtures() {
+    }
+
+    // Sell a basket of goods with Shop.sellGoods, the receipts are saved by the receipt writer of the shop
+    public static Stage sellGoods(int catalogSize, int basketSize, int cashiers) {
+        Shop shop = createShop(catalogSize);
+        Cashier[] shopCashiers = createCashiers(shop, cashiers);
+        Client client = new Client(1_000_000_000_000.0);
+        Random random = new Random(42);
+
+        // Prepare the baskets of each cashier, each basket has different goods bought one piece at a time
+        @SuppressWarnings("unchecked")
+        Map<Integer, Integer>[][] baskets = new Map[cashiers][BASKETS_PER_CASHIER];
+        for (int cashier = 0; cashier < cashiers; cashier++) {
+            for (int basket = 0; basket < BASKETS_PER_CASHIER; basket++) {
+                Map<Integer, Integer> items = new HashMap<>();
+                while (items.size() < Math.min(basketSize, catalogSize)) {
+                    items.put(random.nextInt(catalogSize), 1);
+                }
+                baskets[cashier][basket] = items;
+            }
+        }
+        int[] next = new int[cashiers];
+
+        return new ShopStage(shop) {
+            @Override
+            public long run(int cashier) {
+                int basket = next[cashier]++ & (BASKETS_PER_CASHIER - 1);
+                Receipt receipt = shop.sellGoods(shopCashiers[cashier], baskets[cashier][basket], client);
+                return receipt != null ? receipt.getReceiptId() : -1;
+            }
+        };
+    }
+
+    // Calculate the selling price of the goods with Goods.calcSellingPrice, each cashier goes through the whole catalog
+    public static Stage calcSellingPrice(int catalogSize, int basketSize, int cashiers) {
+        Shop shop = createShop(catalogSize);
+        Goods[] goods = new Goods[catalogSize];
+        for (int id = 0; id < catalogSize; id++) {
+            goods[id] = shop.findGoods(id);
+        }
+        int[] next = new int[cashiers];
+
+        return new ShopStage(shop) {
+            @Override
+            public long run(int cashier) {
+                int index = next[cashier]++;
+                if (index == catalogSize - 1) next[cashier] = 0;
+                return Double.doubleToRawLongBits(goods[index].calcSellingPrice(shop));
+            }
+        };
+    }
+
+    // Save a receipt with Receipt.saveReceiptToFile, each cashier saves a new copy of its own receipt again and again
+    public static Stage saveReceiptToFile(int catalogSize, int basketSize, int cashiers) {
+        Shop shop = createShop(basketSize);
+        Receipt[] receipts = createReceipts(shop, basketSize, cashiers);
+
+        return new ShopStage(shop) {
+            @Override
+            public long run(int cashier) throws IOException {
+                unsavedCopy(shop, receipts[cashier]).saveReceiptToFile();
+                return receipts[cashier].getReceiptId();
+            }
+        };
+    }
+
+    // Save a receipt with Receipt.serializeReceiptObj, each cashier saves a new copy of its own receipt
+    public static Stage serializeReceiptObj(int catalogSize, int basketSize, int cashiers) {
+        Shop shop = createShop(basketSize);
+        Receipt[] receipts = createReceipts(shop, basketSize, cashiers);
+
+        return new ShopStage(shop) {
+            @Override
+            public long run(int cashier) throws IOException {
+                unsavedCopy(shop, receipts[cashier]).serializeReceiptObj();
+                return receipts[cashier].getReceiptId();
+            }
+        };
+    }
+
+    // Create a shop with the passed number of goods, some of the food is close to its expiry so it is sold with a discount
+    private static Shop createShop(int catalogSize) {
+        int shopId = SHOP_IDS.incrementAndGet();
+        Shop shop = new Shop(shopId, "BenchmarkShop" + shopId, "BGN", 20, 40, 10, 5, 7, 10);
+        LocalDate today = LocalDate.now();
+        for (int id = 0; id < catalogSize; id++) {
+            GoodsType type = id % 2 == 0 ? GoodsType.FOOD : GoodsType.NON_FOOD;
+            LocalDate expiry = today.plusDays(id % 5 == 0 ? 3 : 365);
+            shop.addGoodsToList(new Goods(id, "Goods " + id, 1 + id % 100 / 4.0, type, expiry, Integer.MAX_VALUE / 2));
+        }
+        return shop;
+    }
+
+    private static Cashier[] createCashiers(Shop shop, int cashiers) {
+        Cashier[] result = new Cashier[cashiers];
+        for (int id = 0; id < cashiers; id++) {
+            result[id] = new Cashier(id, "Cashier " + id, 1500);
+            shop.addCashierToList(result[id]);
+        }
+        return result;
+    }
+
+    // Create one receipt for each cashier with all the goods of the shop on it
+    private static Receipt[] createReceipts(Shop shop, int basketSize, int cashiers) {
+        Cashier[] shopCashiers = createCashiers(shop, cashiers);
+        Receipt[] receipts = new Receipt[cashiers];
+        for (int cashier = 0; cashier < cashiers; cashier++) {
+            Receipt receipt = new Receipt(shop.getId(), shop.getName(), shopCashiers[cashier], cashier + 1, shop);
+            for (int id = 0; id < basketSize; id++) {
+                receipt.addSaleOfGoods(shop.findGoods(id), 1 + id % 3, 100 + id);
+            }
+            receipts[cashier] = receipt;
+        }
+        return receipts;
+    }
+
+    // Return a copy of the receipt that was not saved yet, a receipt is only saved once. The copy has the same number
+    // so the same files are written again
+    private static Receipt unsavedCopy(Shop shop, Receipt receipt) {
+        int lineCount = receipt.getLineCount();
+        Goods[] lineGoods = new Goods[lineCount];
+        int[] lineQuantities = new int[lineCount];
+        long[] linePrices = new long[lineCount];
+        for (int line = 0; line < lineCount; line++) {
+            lineGoods[line] = receipt.getLineGoods(line);
+            lineQuantities[line] = receipt.getLineQuantity(line);
+            linePrices[line] = receipt.getLinePriceMinor(line);
+        }
+        return new Receipt(receipt.getShopId(), receipt.getShopName(), receipt.getCurrency(), receipt.getCashier(),
+                receipt.getReceiptId(), lineGoods, lineQuantities, linePrices, receipt.getTotalPriceMinor(), shop.getReceiptStore());
+    }
+
+    private static Path createDataFolder() {
+        try {
+            Path folder = Files.createTempDirectory("shop-benchmark");
+            System.setProperty(DataFolder.PROPERTY, folder.toString());
+            // Delete the folder with everything in it when the benchmark is over
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteDataFolder(folder)));
+            return folder;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteDataFolder(Path folder) {
+        try {
+            Storage.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing the receipt store: " + e.getMessage());
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Error while deleting the benchmark folder: " + e.getMessage());
+        }
+    }
+
+    // A stage that closes its shop when the benchmark is over
+    private abstract static class ShopStage implements Stage {
+        final Shop shop;
+
+        ShopStage(Shop shop) {
+            this.shop = shop;
+        }
+
+        @Override
+        public void close() {
+            shop.close();
+        }
+    }
+}
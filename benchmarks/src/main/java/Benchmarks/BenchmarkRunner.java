@@ -0,0 +1,29 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks once for each number of cashiers with one thread per cashier and the GC profiler, so every
+// stage reports its throughput, average time and allocation rate. The first argument selects the benchmarks with
+// a regular expression and the cashiers system property the numbers of cashiers, for example -Dcashiers=1,2,8
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "Benchmarks\\..*Benchmark";
+        for (String value : System.getProperty("cashiers", "1,4").split(",")) {
+            int cashiers = Integer.parseInt(value.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(cashiers)
+                    .param("cashiers", String.valueOf(cashiers))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-cashiers-" + cashiers + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// The cashier that a benchmark thread sells as, each thread is its own cashier
+@State(Scope.Thread)
+public class CashierState {
+    int number;
+
+    @Setup
+    public void setUp(BenchmarkParams benchmark, ThreadParams thread) {
+        // There are as many cashiers as threads when the benchmarks are started by the runner, with more threads
+        // than cashiers some threads share a cashier
+        int cashiers = Integer.parseInt(benchmark.getParam("cashiers"));
+        number = thread.getThreadIndex() % cashiers;
+    }
+}
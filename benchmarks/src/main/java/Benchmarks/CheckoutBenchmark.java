@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Benchmark of the whole checkout with Shop.sellGoods, including the saving of the receipts by the receipt writer
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+    @Param({"1000", "100000"})
+    public int catalogSize;
+    @Param({"1", "10", "50"})
+    public int basketSize;
+    @Param({"1", "4"})
+    public int cashiers;
+
+    private Stage sellGoods;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sellGoods = Stage.create("sellGoods", catalogSize, basketSize, cashiers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sellGoods.close();
+    }
+
+    @Benchmark
+    public long sellGoods(CashierState cashier) throws Exception {
+        return sellGoods.run(cashier.number);
+    }
+}
@@ -0,0 +1,58 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Benchmark of saving the receipts with Receipt.saveReceiptToFile and Receipt.serializeReceiptObj. The fork uses the
+// files backend, which writes each receipt over its files again, the segments backend would append a new record on
+// every save. The files are written in the temporary data folder of the benchmark
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dshop.storage=files")
+public class PersistenceBenchmark {
+    @Param({"1", "10", "50"})
+    public int basketSize;
+    @Param({"1", "4"})
+    public int cashiers;
+
+    private Stage saveReceiptToFile;
+    private Stage serializeReceiptObj;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        saveReceiptToFile = Stage.create("saveReceiptToFile", 0, basketSize, cashiers);
+        serializeReceiptObj = Stage.create("serializeReceiptObj", 0, basketSize, cashiers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        saveReceiptToFile.close();
+        serializeReceiptObj.close();
+    }
+
+    @Benchmark
+    public long saveReceiptToFile(CashierState cashier) throws Exception {
+        return saveReceiptToFile.run(cashier.number);
+    }
+
+    @Benchmark
+    public long serializeReceiptObj(CashierState cashier) throws Exception {
+        return serializeReceiptObj.run(cashier.number);
+    }
+}
@@ -0,0 +1,48 @@
+package Benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Benchmark of the price calculation with Goods.calcSellingPrice over the whole catalog of the shop
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+    @Param({"1000", "100000"})
+    public int catalogSize;
+    @Param({"1", "4"})
+    public int cashiers;
+
+    private Stage calcSellingPrice;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        calcSellingPrice = Stage.create("calcSellingPrice", catalogSize, 0, cashiers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        calcSellingPrice.close();
+    }
+
+    @Benchmark
+    public long calcSellingPrice(CashierState cashier) throws Exception {
+        return calcSellingPrice.run(cashier.number);
+    }
+}
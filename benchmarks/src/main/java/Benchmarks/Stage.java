@@ -0,0 +1,24 @@
+package Benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+
+// One stage of the checkout that a benchmark runs. The classes of the shop are in the default package that can't be
+// imported here, so the stages are made by the BenchmarkFixtures class next to them and only this interface is seen
+// by the benchmarks. The stage is looked up once when the benchmark starts, after that it is a plain interface call
+public interface Stage extends AutoCloseable {
+    // Run the stage once as the cashier with the passed number and return a value the benchmark consumes
+    long run(int cashier) throws Exception;
+
+    // Create the stage with the passed name for the catalog size, basket size and number of cashiers
+    static Stage create(String name, int catalogSize, int basketSize, int cashiers) throws Exception {
+        try {
+            return (Stage) Class.forName("BenchmarkFixtures")
+                    .getMethod(name, int.class, int.class, int.class)
+                    .invoke(null, catalogSize, basketSize, cashiers);
+        } catch (InvocationTargetException e) {
+            // Throw the exception of the fixture and not the reflection wrapper
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+}
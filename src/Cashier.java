@@ -1,5 +1,6 @@
 import java.io.Serial;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 // Class that holds the management for the cashier
 class Cashier implements Serializable {
@@ -12,6 +13,8 @@ class Cashier implements Serializable {
     private final String names;
     // Declare the Cashier's salary
     private final double salary;
+    // The name encoded in UTF-8, it is encoded the first time a receipt of the cashier is rendered
+    private transient byte[] nameBytes;
 
     public Cashier(int id, String names, double salary) {
         // Initialize the instance variables as the passed parameters values
@@ -22,5 +25,13 @@ class Cashier implements Serializable {
 
     public int getId() { return id; }
     public String getName() { return names; }
+    byte[] getNameBytes() {
+        byte[] bytes = nameBytes;
+        if (bytes == null) {
+            bytes = names.getBytes(StandardCharsets.UTF_8);
+            nameBytes = bytes;
+        }
+        return bytes;
+    }
     public double getSalary() { return salary; }
 }
\ No newline at end of file
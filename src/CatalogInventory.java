@@ -0,0 +1,73 @@
+import java.util.Collection;
+import java.util.function.Consumer;
+
+// This class holds the inventory of a shop as goods objects. The goods are kept in the inventory catalog by their id,
+// their prices are cached on them by the price table and they are ordered by their date of expiry in its expiry index
+class CatalogInventory implements Inventory {
+    private final InventoryCatalog catalog;
+    private final PriceTable priceTable;
+
+    public CatalogInventory(Shop shop) {
+        // Initialize the instance variables
+        this.catalog = new InventoryCatalog();
+        this.priceTable = new PriceTable(shop);
+    }
+
+    @Override
+    public Goods get(int goodsId) {
+        return catalog.get(goodsId);
+    }
+
+    @Override
+    public long priceOf(Goods goods) {
+        return priceTable.priceOf(goods);
+    }
+
+    @Override
+    public void put(Goods goods) {
+        Goods previous = catalog.put(goods);
+        if (previous != null && previous != goods) {
+            priceTable.remove(previous);
+        }
+        priceTable.update(goods);
+    }
+
+    @Override
+    public void putAll(Collection<Goods> goods) {
+        // The goods that are replaced by goods with the same id are taken out of the expiry index
+        for (Goods current : goods) {
+            Goods previous = catalog.get(current.getId());
+            if (previous != null && previous != current) {
+                priceTable.remove(previous);
+            }
+        }
+        catalog.putAll(goods);
+        for (Goods current : goods) {
+            priceTable.update(current);
+        }
+    }
+
+    @Override
+    public Goods remove(int goodsId) {
+        Goods removed = catalog.remove(goodsId);
+        if (removed != null) {
+            priceTable.remove(removed);
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Goods> action) {
+        catalog.forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return catalog.size();
+    }
+
+    @Override
+    public ExpiryIndex getExpiryIndex() {
+        return priceTable.getExpiryIndex();
+    }
+}
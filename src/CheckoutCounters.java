@@ -0,0 +1,36 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// This class counts the checkouts of a shop or of one cashier, the sold receipts and items and the failed checkouts
+// by the reason they failed. The counters are striped so the cashiers don't wait for each other to count
+class CheckoutCounters implements CheckoutCountersMXBean {
+    private final LongAdder receipts = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder insufficientQuantity = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // Count a sold receipt with the passed number of sold items
+    public void sold(long soldItems) {
+        receipts.increment();
+        items.add(soldItems);
+    }
+
+    public void insufficientFunds() { insufficientFunds.increment(); }
+    public void insufficientQuantity() { insufficientQuantity.increment(); }
+    public void failure() { failures.increment(); }
+
+    @Override public long getReceipts() { return receipts.sum(); }
+    @Override public long getItems() { return items.sum(); }
+    @Override public long getInsufficientFunds() { return insufficientFunds.sum(); }
+    @Override public long getInsufficientQuantity() { return insufficientQuantity.sum(); }
+    @Override public long getFailures() { return failures.sum(); }
+
+    // Append the counters to the text of a snapshot
+    void appendTo(StringBuilder text) {
+        text.append("Receipts: ").append(getReceipts())
+                .append(", Items: ").append(getItems())
+                .append(", Insufficient funds: ").append(getInsufficientFunds())
+                .append(", Insufficient quantity: ").append(getInsufficientQuantity())
+                .append(", Failures: ").append(getFailures());
+    }
+}
@@ -0,0 +1,8 @@
+// The counters of the checkouts of a shop or of one of its cashiers as they are shown by JMX
+public interface CheckoutCountersMXBean {
+    long getReceipts();
+    long getItems();
+    long getInsufficientFunds();
+    long getInsufficientQuantity();
+    long getFailures();
+}
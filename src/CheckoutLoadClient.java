@@ -0,0 +1,91 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// This class holds a load client for the local checkout server. It opens many connections at the same time, each of
+// them in its own thread (virtual threads when the runtime has them), sends random baskets one after the other and
+// waits for every answer. At the end it prints the throughput, the answers of each status and the latency percentiles.
+// The load is set with system properties:
+// load.connections, load.requests (per connection), load.shops (IDs from 1), load.cashier, load.goods (comma separated
+// IDs), load.lines (most lines per basket) and load.money (money of each client), and shop.server.port for the server
+class CheckoutLoadClient {
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = Integer.getInteger(CheckoutServer.PORT_PROPERTY, CheckoutServer.DEFAULT_PORT);
+        int connections = Integer.getInteger("load.connections", 1000);
+        int requests = Integer.getInteger("load.requests", 100);
+        int shops = Integer.getInteger("load.shops", 1);
+        int cashierId = Integer.getInteger("load.cashier", 1);
+        int lines = Integer.getInteger("load.lines", 3);
+        long money = Money.fromDouble(Double.parseDouble(System.getProperty("load.money", "5000")));
+        int[] goodsIds = Arrays.stream(System.getProperty("load.goods", "101,102").split(","))
+                .mapToInt(id -> Integer.parseInt(id.trim())).toArray();
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLongArray statuses = new AtomicLongArray(CheckoutResult.Status.values().length);
+        LongAdder brokenConnections = new LongAdder();
+        CountDownLatch finished = new CountDownLatch(connections);
+        ThreadFactory threads = CheckoutServer.connectionThreadFactory();
+
+        long start = System.nanoTime();
+        for (int connection = 0; connection < connections; connection++) {
+            threads.newThread(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int request = 0; request < requests; request++) {
+                        // Create a basket of random goods with one to the most lines of random quantities
+                        Map<Integer, Integer> items = new LinkedHashMap<>();
+                        int lineCount = 1 + random.nextInt(lines);
+                        for (int line = 0; line < lineCount; line++) {
+                            items.merge(goodsIds[random.nextInt(goodsIds.length)], 1 + random.nextInt(3), Integer::sum);
+                        }
+                        long requestStart = System.nanoTime();
+                        CheckoutProtocol.writeRequest(output, 1 + random.nextInt(shops), cashierId, money, items);
+                        output.flush();
+                        CheckoutProtocol.Response response = CheckoutProtocol.readResponse(input);
+                        latencies.record(System.nanoTime() - requestStart);
+                        statuses.incrementAndGet(response.getStatus().ordinal());
+                    }
+                    // Count the connections that the server closed or that broke before all their baskets were answered
+                } catch (IOException e) {
+                    brokenConnections.increment();
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        finished.await();
+        long elapsed = System.nanoTime() - start;
+
+        // Print the results of the load
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        List<String> counts = new ArrayList<>();
+        for (CheckoutResult.Status status : CheckoutResult.Status.values()) {
+            counts.add(status + "=" + statuses.get(status.ordinal()));
+        }
+        System.out.println("Connections: " + connections + ", broken: " + brokenConnections.sum());
+        System.out.println("Answers: " + snapshot.getCount() + " in " + elapsed / 1_000_000 + " ms, "
+                + Math.round(snapshot.getCount() / (elapsed / 1e9)) + " per second");
+        System.out.println("Statuses: " + String.join(", ", counts));
+        System.out.printf(Locale.ROOT, "Latency micros: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n", snapshot.valueAt(50) / 1000.0,
+                snapshot.valueAt(99) / 1000.0, snapshot.valueAt(99.9) / 1000.0, snapshot.getMax() / 1000.0);
+    }
+}
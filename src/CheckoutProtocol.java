@@ -0,0 +1,167 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// This class holds the messages of the checkout server. Every message is a frame that starts with the number of bytes
+// after it, followed by big-endian numbers and length-prefixed UTF-8 strings:
+// request:  shop ID, cashier ID, money of the client in minor units, number of lines, goods ID and quantity of each line
+// response: status, then for a sold basket the receipt number, total price in minor units, number of lines and the
+//           goods ID, name, quantity and price in minor units of each line, or the message of the error otherwise
+final class CheckoutProtocol {
+    // The biggest frame that is read, a longer frame is a broken or hostile connection
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+    // The size of a request without its lines and the size of one line
+    private static final int REQUEST_HEADER_SIZE = Integer.BYTES * 3 + Long.BYTES;
+    private static final int REQUEST_LINE_SIZE = Integer.BYTES * 2;
+
+    private CheckoutProtocol() {
+    }
+
+    // Write the request of one basket
+    public static void writeRequest(DataOutputStream output, int shopId, int cashierId, long money, Map<Integer, Integer> items) throws IOException {
+        output.writeInt(REQUEST_HEADER_SIZE + REQUEST_LINE_SIZE * items.size());
+        output.writeInt(shopId);
+        output.writeInt(cashierId);
+        output.writeLong(money);
+        output.writeInt(items.size());
+        for (Map.Entry<Integer, Integer> entry : items.entrySet()) {
+            output.writeInt(entry.getKey());
+            output.writeInt(entry.getValue());
+        }
+    }
+
+    // Read the next request or return null if the connection was closed before it
+    public static Request readRequest(DataInputStream input) throws IOException {
+        int length = readFrameLength(input);
+        if (length < 0) return null;
+        int shopId = input.readInt();
+        int cashierId = input.readInt();
+        long money = input.readLong();
+        int lineCount = input.readInt();
+        if (length != REQUEST_HEADER_SIZE + REQUEST_LINE_SIZE * (long) lineCount) {
+            throw new IOException("The length of the checkout request doesn't match its lines");
+        }
+        if (money < 0) {
+            throw new IOException("The money of the checkout request is negative");
+        }
+        // The quantities of the same goods in more lines are added together, every quantity and their sum must be
+        // positive or the request is broken
+        Map<Integer, Integer> items = new LinkedHashMap<>();
+        for (int line = 0; line < lineCount; line++) {
+            int goodsId = input.readInt();
+            int quantity = input.readInt();
+            if (quantity <= 0 || items.merge(goodsId, quantity, Integer::sum) <= 0) {
+                throw new IOException("Invalid quantity " + quantity + " of goods " + goodsId + " in the checkout request");
+            }
+        }
+        return new Request(shopId, cashierId, money, items);
+    }
+
+    // Write the response of the checkout into the reusable frame buffer and then to the connection
+    public static void writeResponse(DataOutputStream output, ByteArrayOutputStream frame, CheckoutResult result) throws IOException {
+        frame.reset();
+        DataOutputStream body = new DataOutputStream(frame);
+        body.writeByte(result.getStatus().ordinal());
+        if (result.isSold()) {
+            Receipt receipt = result.getReceipt();
+            body.writeInt(receipt.getReceiptId());
+            body.writeLong(receipt.getTotalPriceMinor());
+            body.writeInt(receipt.getLineCount());
+            for (int line = 0; line < receipt.getLineCount(); line++) {
+                body.writeInt(receipt.getLineGoods(line).getId());
+                body.writeUTF(receipt.getLineGoods(line).getName());
+                body.writeInt(receipt.getLineQuantity(line));
+                body.writeLong(receipt.getLinePriceMinor(line));
+            }
+        } else {
+            body.writeUTF(result.getMessage() != null ? result.getMessage() : "");
+        }
+        output.writeInt(frame.size());
+        frame.writeTo(output);
+    }
+
+    // Read the next response, the lines of a sold receipt are counted but not kept
+    public static Response readResponse(DataInputStream input) throws IOException {
+        int length = readFrameLength(input);
+        if (length < 0) {
+            throw new IOException("The checkout server closed the connection");
+        }
+        int statusOrdinal = input.readUnsignedByte();
+        if (statusOrdinal >= CheckoutResult.Status.values().length) {
+            throw new IOException("Unknown status " + statusOrdinal + " of the checkout response");
+        }
+        CheckoutResult.Status status = CheckoutResult.Status.values()[statusOrdinal];
+        if (status != CheckoutResult.Status.SOLD) {
+            return new Response(status, 0, 0, 0, input.readUTF());
+        }
+        int receiptId = input.readInt();
+        long totalPrice = input.readLong();
+        int lineCount = input.readInt();
+        for (int line = 0; line < lineCount; line++) {
+            input.readInt();
+            input.readUTF();
+            input.readInt();
+            input.readLong();
+        }
+        return new Response(status, receiptId, totalPrice, lineCount, null);
+    }
+
+    // Read the length of the next frame or return -1 if the connection was closed before it
+    private static int readFrameLength(DataInputStream input) throws IOException {
+        int first = input.read();
+        if (first < 0) return -1;
+        int length = first << 24 | input.readUnsignedByte() << 16 | input.readUnsignedByte() << 8 | input.readUnsignedByte();
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid checkout frame length " + length);
+        }
+        return length;
+    }
+
+    // One basket that was sent to the checkout server
+    static final class Request {
+        private final int shopId;
+        private final int cashierId;
+        private final long money;
+        private final Map<Integer, Integer> items;
+
+        private Request(int shopId, int cashierId, long money, Map<Integer, Integer> items) {
+            this.shopId = shopId;
+            this.cashierId = cashierId;
+            this.money = money;
+            this.items = items;
+        }
+
+        public int getShopId() { return shopId; }
+        public int getCashierId() { return cashierId; }
+        // The money of the client in minor units
+        public long getMoney() { return money; }
+        public Map<Integer, Integer> getItems() { return items; }
+    }
+
+    // The answer of the checkout server to one basket
+    static final class Response {
+        private final CheckoutResult.Status status;
+        private final int receiptId;
+        private final long totalPrice;
+        private final int lineCount;
+        private final String message;
+
+        private Response(CheckoutResult.Status status, int receiptId, long totalPrice, int lineCount, String message) {
+            this.status = status;
+            this.receiptId = receiptId;
+            this.totalPrice = totalPrice;
+            this.lineCount = lineCount;
+            this.message = message;
+        }
+
+        public CheckoutResult.Status getStatus() { return status; }
+        public int getReceiptId() { return receiptId; }
+        // The total price of the receipt in minor units
+        public long getTotalPrice() { return totalPrice; }
+        public int getLineCount() { return lineCount; }
+        public String getMessage() { return message; }
+    }
+}
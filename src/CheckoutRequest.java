@@ -0,0 +1,20 @@
+import java.util.Map;
+
+// This class holds one basket of a batch checkout, the cashier that sells it, the IDs of the goods with their
+// quantities and the client that buys them
+class CheckoutRequest {
+    private final Cashier cashier;
+    private final Map<Integer, Integer> items;
+    private final Client client;
+
+    public CheckoutRequest(Cashier cashier, Map<Integer, Integer> items, Client client) {
+        // Initialize the instance variables as the passed parameters values
+        this.cashier = cashier;
+        this.items = items;
+        this.client = client;
+    }
+
+    public Cashier getCashier() { return cashier; }
+    public Map<Integer, Integer> getItems() { return items; }
+    public Client getClient() { return client; }
+}
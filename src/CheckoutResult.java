@@ -0,0 +1,42 @@
+// This class holds the result of one basket of a batch checkout or of the checkout server, the receipt if the basket
+// was sold or the reason it couldn't be sold with the message of the error
+class CheckoutResult {
+    // The ways a checkout can end
+    enum Status {
+        SOLD,
+        INSUFFICIENT_FUNDS,
+        INSUFFICIENT_QUANTITY,
+        FAILED,
+        // The checkout server didn't take the basket because it was busy or the receipts of the shop were not saved
+        // fast enough, nothing was sold and the basket can be sent again later
+        REJECTED
+    }
+
+    private final Status status;
+    private final Receipt receipt;
+    private final String message;
+
+    private CheckoutResult(Status status, Receipt receipt, String message) {
+        // Initialize the instance variables as the passed parameters values
+        this.status = status;
+        this.receipt = receipt;
+        this.message = message;
+    }
+
+    // Create the result of a sold basket
+    public static CheckoutResult sold(Receipt receipt) {
+        return new CheckoutResult(Status.SOLD, receipt, null);
+    }
+
+    // Create the result of a basket that couldn't be sold
+    public static CheckoutResult failed(Status status, String message) {
+        return new CheckoutResult(status, null, message);
+    }
+
+    public Status getStatus() { return status; }
+    public boolean isSold() { return status == Status.SOLD; }
+    // Return the receipt of the sold basket or null if it wasn't sold
+    public Receipt getReceipt() { return receipt; }
+    // Return the message of the error or null if the basket was sold
+    public String getMessage() { return message; }
+}
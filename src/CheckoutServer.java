@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// This class holds the local checkout server that the lanes and the web front end send their baskets to. It listens on
+// localhost and every connection gets its own thread that reads the requests of the checkout protocol one after the
+// other, sells each basket in the shop of the shop registry and answers with the receipt. The threads are virtual
+// threads when the runtime has them (Java 21 and later), so tens of thousands of connections only cost a little memory
+// each. The baskets are sold on the workers of a shop executor, so the baskets of one shop are sold by one thread in
+// the order they came. A basket is rejected straight away when too many baskets are being sold at the same time or
+// when the receipt writer of the shop falls behind, instead of letting the requests pile up
+class CheckoutServer implements AutoCloseable {
+    // The system properties with the port, the most open connections and the most baskets that are sold at once
+    static final String PORT_PROPERTY = "shop.server.port";
+    static final String MAX_CONNECTIONS_PROPERTY = "shop.server.maxConnections";
+    static final String MAX_IN_FLIGHT_PROPERTY = "shop.server.maxInFlight";
+    static final String WORKERS_PROPERTY = "shop.server.workers";
+    private static final String FALLING_BEHIND_MESSAGE = "The receipts of the shop are not saved fast enough";
+    static final int DEFAULT_PORT = 7070;
+    // The stack size of the platform threads that are used when there are no virtual threads
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private final ShopRegistry registry;
+    private final ShopExecutor executor;
+    private final ServerSocket serverSocket;
+    private final ThreadFactory connectionThreads;
+    // The free places for connections and for baskets that are being sold
+    private final Semaphore connections;
+    private final Semaphore inFlight;
+    private final Set<Socket> openSockets;
+    private final Thread acceptThread;
+    private volatile boolean isClosed;
+
+    // The number of accepted and refused connections and of the baskets that were answered or rejected
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder refusedConnections = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder rejectedCheckouts = new LongAdder();
+
+    public CheckoutServer(ShopRegistry registry, ShopExecutor executor, int port, int maxConnections, int maxInFlight) throws IOException {
+        // Initialize the instance variables and listen on the loopback address only
+        this.registry = registry;
+        this.executor = executor;
+        this.connections = new Semaphore(maxConnections);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.openSockets = ConcurrentHashMap.newKeySet();
+        this.connectionThreads = connectionThreadFactory();
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.acceptThread = new Thread(this::acceptConnections, "checkout-server-accept");
+    }
+
+    // Open the shop registry and serve it on the port of the system properties until the program is stopped
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ShopRegistry registry = ShopRegistry.open();
+        ShopExecutor executor = new ShopExecutor("checkout-server", Integer.getInteger(WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        CheckoutServer server = new CheckoutServer(registry, executor, Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT),
+                Integer.getInteger(MAX_CONNECTIONS_PROPERTY, 50_000), Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 1024));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            executor.close();
+            registry.close();
+        }));
+        server.start();
+        System.out.println("Checkout server with " + registry.size() + " shops listening on port " + server.getPort()
+                + (server.isVirtual() ? " with virtual threads" : " with platform threads"));
+        server.acceptThread.join();
+    }
+
+    public int getPort() { return serverSocket.getLocalPort(); }
+    public long getAcceptedConnections() { return acceptedConnections.sum(); }
+    public long getRefusedConnections() { return refusedConnections.sum(); }
+    public long getCheckouts() { return checkouts.sum(); }
+    public long getRejectedCheckouts() { return rejectedCheckouts.sum(); }
+
+    // Return if the connections are served by virtual threads
+    public boolean isVirtual() {
+        return !(connectionThreads instanceof PlatformThreadFactory);
+    }
+
+    public void start() {
+        acceptThread.start();
+    }
+
+    // Stop accepting connections and close the open ones, the executor and the shops of the registry are not closed
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error couldn't close the checkout server " + e.getMessage());
+        }
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    private void acceptConnections() {
+        while (!isClosed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!isClosed) {
+                    System.err.println("Error couldn't accept a connection " + e.getMessage());
+                }
+                continue;
+            }
+            // Close the connection straight away when there are already too many of them
+            if (!connections.tryAcquire()) {
+                refusedConnections.increment();
+                closeQuietly(socket);
+                continue;
+            }
+            acceptedConnections.increment();
+            openSockets.add(socket);
+            connectionThreads.newThread(() -> serve(socket)).start();
+        }
+    }
+
+    // Answer the requests of one connection until the client closes it
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+            CheckoutProtocol.Request request;
+            while ((request = CheckoutProtocol.readRequest(input)) != null) {
+                CheckoutProtocol.writeResponse(output, frame, checkout(request));
+                // Send the answers together when the client sent more requests without waiting for the answers
+                if (input.available() == 0) {
+                    output.flush();
+                }
+            }
+            output.flush();
+            // Throw an exception in case the connection broke or sent a broken request, only that connection is closed
+        } catch (IOException e) {
+            if (!isClosed) {
+                System.err.println("Error in a checkout connection: " + e.getMessage());
+            }
+        } finally {
+            openSockets.remove(socket);
+            connections.release();
+        }
+    }
+
+    // Sell the basket of the request, unless the server is too busy or the shop doesn't save its receipts fast enough.
+    // A shop whose receipt writer falls behind is checked before the basket is admitted and again on the worker right
+    // before the basket is sold, the basket may have waited in the queue of the worker while the writer fell behind and
+    // the checkout would block the worker on the full queue of the writer
+    private CheckoutResult checkout(CheckoutProtocol.Request request) {
+        Shop shop;
+        try {
+            shop = registry.getShop(request.getShopId());
+        } catch (IllegalArgumentException e) {
+            return failed(e.getMessage());
+        }
+        if (shop.isPersistenceFallingBehind()) {
+            return reject(FALLING_BEHIND_MESSAGE);
+        }
+        if (!inFlight.tryAcquire()) {
+            return reject("Too many checkouts at the same time");
+        }
+        try {
+            Cashier cashier = shop.findCashier(request.getCashierId());
+            if (cashier == null) {
+                return failed("Cashier not found");
+            }
+            Client client = Client.ofMinor(request.getMoney());
+            return executor.submit(shop, () -> {
+                if (shop.isPersistenceFallingBehind()) {
+                    return reject(FALLING_BEHIND_MESSAGE);
+                }
+                checkouts.increment();
+                return shop.checkout(cashier, request.getItems(), client);
+            }).join();
+            // Answer with the error in case the executor was closed or the checkout failed on the worker
+        } catch (CompletionException e) {
+            return failed(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private CheckoutResult reject(String message) {
+        rejectedCheckouts.increment();
+        return CheckoutResult.failed(CheckoutResult.Status.REJECTED, message);
+    }
+
+    private CheckoutResult failed(String message) {
+        checkouts.increment();
+        return CheckoutResult.failed(CheckoutResult.Status.FAILED, message);
+    }
+
+    // Return the factory of virtual threads when the runtime has them, otherwise of daemon platform threads with a small
+    // stack. The virtual threads are looked up by reflection so the program still builds and runs on Java 17
+    static ThreadFactory connectionThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return new PlatformThreadFactory();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // The connection is closed anyway
+        }
+    }
+
+    private static final class PlatformThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(null, runnable, "checkout-connection", PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
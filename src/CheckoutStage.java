@@ -0,0 +1,39 @@
+// The stages of the checkout that get their own latency histogram, the first ones are timed in Shop.sellGoods by the
+// cashier and the rest in the receipt writer when the receipt is saved. Shop.sellGoodsBatch times the lookup, pricing
+// and funds check for each basket and the stages after them once for the whole batch
+enum CheckoutStage {
+    // The whole sale from the first lookup until the receipt is handed to the writer, or the whole batch
+    CHECKOUT("checkout"),
+    // Finding the goods of the basket in the catalog
+    LOOKUP("lookup"),
+    // Getting the selling prices of the goods from the price table
+    PRICING("pricing"),
+    // Client.checkIsEnoughMoney
+    FUNDS_CHECK("fundsCheck"),
+    // Taking the goods out of the stock
+    RESERVE("reserve"),
+    // Getting the receipt number and adding the lines to the receipt
+    RECEIPT("receipt"),
+    // Putting the receipt in the queue of the writer, it includes waiting when the queue is full
+    SUBMIT("submit"),
+    // Adding the total price of the receipt to the total value of the shop
+    TOTAL_UPDATE("totalUpdate"),
+    // Rendering the text of the receipt
+    RENDER("render"),
+    // Encoding the receipt in the binary format
+    ENCODE("encode"),
+    // Appending the text and the encoded form of a batch of receipts to the receipt store with one write
+    STORE_APPEND("storeAppend"),
+    // Writing the record of the receipt to the journal of the shop
+    JOURNAL_APPEND("journalAppend"),
+    // Forcing the receipt store and the journal to the disk
+    SYNC("sync");
+
+    private final String displayName;
+
+    CheckoutStage(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() { return displayName; }
+}
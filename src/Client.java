@@ -3,19 +3,30 @@ import Exceptions.InsufficientFundsException;
 // This class holds the Clients management, Its only purpose is to hold the money the client has and to
 // do a check if the money are less than the total money for the receipt and if they are to throw an exception
 class Client {
-    // Declare the money of the client
-    private final double money;
+    // Declare the money of the client in minor units
+    private final long money;
 
     public Client(double money) {
+        this(Money.fromDouble(money));
+    }
+
+    // The constructor with the money in minor units is private, so a whole number of money like new Client(50) is
+    // still taken as a number of the major units by the public constructor
+    private Client(long money) {
         // Initialize the instance variable
         this.money = money;
     }
 
+    // Create a client with the money in minor units, the money is not turned into a double and back
+    static Client ofMinor(long money) {
+        return new Client(money);
+    }
+
     // Method that checks if the client has enough money to buy the goods
-    public void checkIsEnoughMoney(double totalPrice) throws InsufficientFundsException {
+    public void checkIsEnoughMoney(long totalPrice) throws InsufficientFundsException {
         if (this.money < totalPrice) {
             // If the client doesn't have enough money throw a custom exception
-            throw new InsufficientFundsException("Not enough funds. Total amount to pay is: " + this.money + ", Total amount needed:" + totalPrice);
+            throw new InsufficientFundsException("Not enough funds. Total amount to pay is: " + Money.format(this.money) + ", Total amount needed:" + Money.format(totalPrice));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,447 @@
+import java.io.Serial;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+// This class holds the inventory of a shop in primitive columns for very large catalogs. Each goods is a row with its
+// id, buying price, type, date of expiry as days from the epoch, stock and the index of its name in a table of the
+// distinct names, and a hash table finds the row of an id. A goods takes about 40 bytes, 29 in the columns and 8 to 16
+// in the hash table, instead of the few hundred of a goods object with its name, date, atomic quantity, cached price
+// and expiry index entries. Putting goods that are already in the inventory overwrites their row and the rows of
+// removed goods are used again, so restocking doesn't grow the columns. The columns are split into chunks that are
+// never moved when the inventory grows, so the quantity of a row is reserved with a compare and set on its column
+// without a lock. Finding goods returns a small view of the row that is only used for the checkout, the views of the
+// goods found last are kept until the inventory changes so the popular goods don't create a view for every line
+class ColumnarInventory implements Inventory {
+    // The number of rows in one chunk of the columns
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The smallest size of the hash table, it must always be a power of two
+    private static final int MIN_TABLE_SIZE = 16;
+    // The type of the rows that were removed and of goods without a type
+    private static final byte REMOVED = -1;
+    private static final byte NO_TYPE = (byte) GoodsType.values().length;
+    // The expiry day of goods without a date of expiry, they never expire. No date has this day, the last date is
+    // about 365 million days from the epoch
+    private static final int NO_EXPIRY = Integer.MAX_VALUE;
+    // The stock of a row is its generation in the high 32 bits and its quantity in the low 32 bits. The generation
+    // changes when the row is removed, so a view of removed goods can't reserve the stock of the goods that use the row next
+    private static final VarHandle STOCK = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long QUANTITY_MASK = 0xFFFFFFFFL;
+    // The number of views that are kept, it must be a power of two
+    private static final int VIEW_CACHE_SIZE = 1024;
+
+    private final Shop shop;
+    // The columns, one array of chunks for each field
+    private int[][] ids = new int[0][];
+    private long[][] buyingPrices = new long[0][];
+    private byte[][] types = new byte[0][];
+    private int[][] expiryDays = new int[0][];
+    private int[][] nameIds = new int[0][];
+    private long[][] stocks = new long[0][];
+    // The number of rows written so far including the removed ones and the number of goods in the inventory
+    private int rowCount;
+    private int size;
+    // The rows of the removed goods that are used again for new goods
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    // Hash table that holds the row + 1 of the goods with that id, 0 means the slot is empty
+    private int[] table = new int[MIN_TABLE_SIZE];
+    private final NameTable names = new NameTable();
+    // Lock that guards the changes to the inventory, readers only validate that nothing changed while they were reading
+    private final StampedLock lock = new StampedLock();
+    // The views that were created last by the hash of their id, a view is used again while no change was made to the
+    // inventory after it was created
+    private final Row[] views = new Row[VIEW_CACHE_SIZE];
+
+    // The current business day as days from the epoch and the time in milliseconds when the next day starts
+    private volatile long today;
+    private volatile long nextDayMillis = Long.MIN_VALUE;
+
+    public ColumnarInventory(Shop shop) {
+        // Initialize the instance variables
+        this.shop = shop;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Goods get(int goodsId) {
+        // Use the kept view of the goods if nothing changed in the inventory since it was created
+        int viewSlot = hash(goodsId) & (VIEW_CACHE_SIZE - 1);
+        Row cached = views[viewSlot];
+        if (cached != null && cached.getId() == goodsId && lock.validate(cached.stamp)) {
+            return cached;
+        }
+
+        // Otherwise read the row under the read lock, rows can be overwritten so the view is created while holding it
+        long stamp = lock.readLock();
+        try {
+            int row = find(goodsId);
+            if (row < 0) return null;
+            Row view = view(row, stamp);
+            views[viewSlot] = view;
+            return view;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long priceOf(Goods goods) {
+        Row row;
+        if (goods instanceof Row && ((Row) goods).inventory == this) {
+            row = (Row) goods;
+        } else {
+            row = (Row) get(goods.getId());
+            // Use IllegalArgumentException for the exception as it is expected for the goods to exist
+            if (row == null) throw new IllegalArgumentException("Goods not found");
+        }
+        if (row.expiryDay == NO_EXPIRY) {
+            return Goods.regularPriceMinor(shop, row.getBuyingPriceMinor(), row.getGoodsType());
+        }
+        long day = currentDay();
+        if (day > row.expiryDay) {
+            throw new IllegalArgumentException("Goods that are expired cannot be sold: " + row.getName());
+        }
+        return Goods.sellingPriceMinor(shop, row.getBuyingPriceMinor(), row.getGoodsType(), row.expiryDay - day);
+    }
+
+    @Override
+    public void put(Goods goods) {
+        long stamp = lock.writeLock();
+        try {
+            insert(goods);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void putAll(Collection<Goods> goods) {
+        long stamp = lock.writeLock();
+        try {
+            for (Goods current : goods) {
+                insert(current);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Remove the goods and return goods of their own with the values of the row, the row is used again for new goods
+    @Override
+    public Goods remove(int goodsId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotOf(goodsId);
+            if (table[slot] == 0) return null;
+            int row = table[slot] - 1;
+            int chunk = row >>> CHUNK_BITS;
+            int offset = row & CHUNK_MASK;
+            // Take the whole stock and move the row to the next generation, the views of the row can't change it anymore
+            long stock = (long) STOCK.getAndSet(stocks[chunk], offset, nextGeneration(stocks[chunk][offset]));
+            byte type = types[chunk][offset];
+            Goods removed = new Goods(goodsId, names.nameOf(nameIds[chunk][offset]), buyingPrices[chunk][offset],
+                    type >= 0 && type < NO_TYPE ? GoodsType.values()[type] : null, dateOf(expiryDays[chunk][offset]),
+                    new AtomicInteger((int) (stock & QUANTITY_MASK)));
+            types[chunk][offset] = REMOVED;
+            deleteSlot(slot);
+            size--;
+            if (freeRowCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+            }
+            freeRows[freeRowCount++] = row;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Call the action for the view of every goods in the inventory, the inventory can't be changed until all are visited
+    @Override
+    public void forEach(Consumer<Goods> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (types[row >>> CHUNK_BITS][row & CHUNK_MASK] != REMOVED) {
+                    action.accept(view(row, stamp));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Build the expiry index of the goods from the columns, it isn't kept up to date because keeping an entry for each
+    // goods would take more memory than the columns themselves
+    @Override
+    public ExpiryIndex getExpiryIndex() {
+        ExpiryIndex index = new ExpiryIndex(shop);
+        forEach(index::add);
+        index.advanceTo(currentDay(), goods -> { });
+        return index;
+    }
+
+    // Write the goods to their row, goods with the same id are overwritten in their row and new goods take the row of
+    // removed goods or a new row at the end. The caller holds the write lock
+    private void insert(Goods goods) {
+        int slot = slotOf(goods.getId());
+        boolean isNew = table[slot] == 0;
+        int row;
+        if (!isNew) {
+            row = table[slot] - 1;
+        } else if (freeRowCount > 0) {
+            row = freeRows[--freeRowCount];
+        } else {
+            row = rowCount++;
+            if (row >>> CHUNK_BITS == ids.length) {
+                addChunk();
+            }
+        }
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        ids[chunk][offset] = goods.getId();
+        buyingPrices[chunk][offset] = goods.getBuyingPriceMinor();
+        types[chunk][offset] = goods.getGoodsType() != null ? (byte) goods.getGoodsType().ordinal() : NO_TYPE;
+        expiryDays[chunk][offset] = goods.getDateOfExpiry() != null ? Math.toIntExact(goods.getDateOfExpiry().toEpochDay()) : NO_EXPIRY;
+        nameIds[chunk][offset] = names.intern(goods.getName());
+        // Keep the generation of the row, the views of overwritten goods reserve from the new stock of the same goods
+        long generation = stocks[chunk][offset] & ~QUANTITY_MASK;
+        STOCK.setVolatile(stocks[chunk], offset, generation | (goods.getQuantity() & QUANTITY_MASK));
+        if (!isNew) return;
+
+        table[slot] = row + 1;
+        size++;
+        // Keep the hash table at most half full so the probe sequences stay short
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+    }
+
+    // Add one chunk to every column, the chunks that are already there stay where they are
+    private void addChunk() {
+        int chunks = ids.length + 1;
+        ids = Arrays.copyOf(ids, chunks);
+        buyingPrices = Arrays.copyOf(buyingPrices, chunks);
+        types = Arrays.copyOf(types, chunks);
+        expiryDays = Arrays.copyOf(expiryDays, chunks);
+        nameIds = Arrays.copyOf(nameIds, chunks);
+        stocks = Arrays.copyOf(stocks, chunks);
+        ids[chunks - 1] = new int[CHUNK_SIZE];
+        buyingPrices[chunks - 1] = new long[CHUNK_SIZE];
+        types[chunks - 1] = new byte[CHUNK_SIZE];
+        expiryDays[chunks - 1] = new int[CHUNK_SIZE];
+        nameIds[chunks - 1] = new int[CHUNK_SIZE];
+        stocks[chunks - 1] = new long[CHUNK_SIZE];
+    }
+
+    // Create the view of the row while holding the lock with the passed stamp, the columns are read once and only the
+    // stock is read from the column again later
+    private Row view(int row, long stamp) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        byte type = types[chunk][offset];
+        GoodsType goodsType = type >= 0 && type < NO_TYPE ? GoodsType.values()[type] : null;
+        int nameId = nameIds[chunk][offset];
+        return new Row(this, stamp, ids[chunk][offset], names.nameOf(nameId), nameId, buyingPrices[chunk][offset], goodsType,
+                expiryDays[chunk][offset], stocks[chunk], offset, (int) ((long) STOCK.getVolatile(stocks[chunk], offset) >>> 32));
+    }
+
+    // Return the date of the expiry day of a row, or null for goods without a date of expiry
+    private static LocalDate dateOf(long expiryDay) {
+        return expiryDay != NO_EXPIRY ? LocalDate.ofEpochDay(expiryDay) : null;
+    }
+
+    // Return the empty stock of the next generation of the row
+    private static long nextGeneration(long stock) {
+        return ((stock >>> 32) + 1) << 32;
+    }
+
+    // Find the row of the id or return -1, the caller holds the lock
+    private int find(int goodsId) {
+        int entry = table[slotOf(goodsId)];
+        return entry - 1;
+    }
+
+    // Return the slot of the table with the row of the id or the empty slot where it would be added
+    private int slotOf(int goodsId) {
+        int mask = table.length - 1;
+        int slot = hash(goodsId) & mask;
+        while (table[slot] != 0 && idAt(table[slot] - 1) != goodsId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Empty the slot and shift back the entries after it, so no probe sequence is broken by the empty slot
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = table[next];
+            if (entry == 0) break;
+            int home = hash(idAt(entry - 1)) & mask;
+            // Move the entry back only if its home slot is not between the empty slot and its current slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = entry;
+                slot = next;
+            }
+        }
+        table[slot] = 0;
+    }
+
+    // Create a bigger hash table and put the rows of all goods in the inventory in it
+    private void rehash(int tableSize) {
+        int[] newTable = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int row = 0; row < rowCount; row++) {
+            if (types[row >>> CHUNK_BITS][row & CHUNK_MASK] == REMOVED) continue;
+            int slot = hash(idAt(row)) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = row + 1;
+        }
+        table = newTable;
+    }
+
+    private int idAt(int row) {
+        return ids[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    // Return the current business day as days from the epoch
+    private long currentDay() {
+        if (System.currentTimeMillis() >= nextDayMillis) {
+            startNewDay();
+        }
+        return today;
+    }
+
+    private synchronized void startNewDay() {
+        // Another cashier may have already started the new day
+        if (System.currentTimeMillis() < nextDayMillis) return;
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = LocalDate.now(zone);
+        today = day.toEpochDay();
+        nextDayMillis = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    // Spread the bits of the id so ids that follow each other don't end up in neighbouring slots
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // The distinct names of the goods, each name is kept once with its UTF-8 bytes for the receipts
+    private static final class NameTable {
+        private final Map<String, Integer> idsByName = new HashMap<>();
+        private volatile String[] names = new String[16];
+        private volatile byte[][] bytes = new byte[16][];
+        private int count;
+
+        // Return the index of the name and add it if it is new, the caller holds the write lock of the inventory
+        int intern(String name) {
+            Integer id = idsByName.get(name);
+            if (id != null) return id;
+            if (count == names.length) {
+                bytes = Arrays.copyOf(bytes, count * 2);
+                names = Arrays.copyOf(names, count * 2);
+            }
+            bytes[count] = name.getBytes(StandardCharsets.UTF_8);
+            names[count] = name;
+            idsByName.put(name, count);
+            return count++;
+        }
+
+        String nameOf(int id) { return names[id]; }
+        byte[] bytesOf(int id) { return bytes[id]; }
+    }
+
+    // The view of one row that the shop uses like goods, its quantity is reserved and released on the column as long as
+    // the row still holds the same goods. The date of expiry is only created when it is asked for. The view is never
+    // serialized, the goods are saved from their values
+    private static final class Row extends Goods {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final transient ColumnarInventory inventory;
+        // The stamp of the lock when the view was created, the view is kept while the inventory didn't change after it
+        private final transient long stamp;
+        private final int nameId;
+        private final long expiryDay;
+        private final transient long[] stockChunk;
+        private final int offset;
+        private final int generation;
+
+        private Row(ColumnarInventory inventory, long stamp, int id, String name, int nameId, long buyingPrice, GoodsType goodsType,
+                    long expiryDay, long[] stockChunk, int offset, int generation) {
+            super(id, name, buyingPrice, goodsType, null, null);
+            this.inventory = inventory;
+            this.stamp = stamp;
+            this.nameId = nameId;
+            this.expiryDay = expiryDay;
+            this.stockChunk = stockChunk;
+            this.offset = offset;
+            this.generation = generation;
+        }
+
+        @Override
+        byte[] getNameBytes() { return inventory.names.bytesOf(nameId); }
+
+        @Override
+        LocalDate getDateOfExpiry() { return dateOf(expiryDay); }
+
+        // Return the quantity of the row, or 0 if the goods were removed from it
+        @Override
+        public int getQuantity() {
+            long stock = (long) STOCK.getVolatile(stockChunk, offset);
+            return (int) (stock >>> 32) == generation ? (int) (stock & QUANTITY_MASK) : 0;
+        }
+
+        @Override
+        public void setQuantity(int quantity) {
+            update(current -> quantity);
+        }
+
+        @Override
+        public boolean tryReserve(int reserveQuantity) {
+            while (true) {
+                long stock = (long) STOCK.getVolatile(stockChunk, offset);
+                int current = (int) (stock & QUANTITY_MASK);
+                if ((int) (stock >>> 32) != generation || current < reserveQuantity) return false;
+                // Only change the quantity if no other cashier changed it in the meantime, otherwise try again
+                if (STOCK.compareAndSet(stockChunk, offset, stock, withQuantity(current - reserveQuantity))) return true;
+            }
+        }
+
+        // Return the quantity to the row, it is dropped if the goods were removed from the row in the meantime
+        @Override
+        public void release(int releaseQuantity) {
+            update(current -> current + releaseQuantity);
+        }
+
+        private void update(java.util.function.IntUnaryOperator change) {
+            while (true) {
+                long stock = (long) STOCK.getVolatile(stockChunk, offset);
+                if ((int) (stock >>> 32) != generation) return;
+                if (STOCK.compareAndSet(stockChunk, offset, stock, withQuantity(change.applyAsInt((int) (stock & QUANTITY_MASK))))) return;
+            }
+        }
+
+        private long withQuantity(int quantity) {
+            return (long) generation << 32 | (quantity & QUANTITY_MASK);
+        }
+    }
+}
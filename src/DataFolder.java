@@ -0,0 +1,16 @@
+import java.nio.file.Path;
+
+// This class holds the folder that all the files of the shops are saved in. It is the folder the program is started in,
+// unless the shop.data.dir system property points to another folder, the benchmarks use it to run in a temporary folder
+final class DataFolder {
+    // The name of the system property with the data folder
+    static final String PROPERTY = "shop.data.dir";
+
+    private DataFolder() {
+    }
+
+    // Return the path of the passed folder inside the data folder
+    public static Path resolve(String folder) {
+        return Path.of(System.getProperty(PROPERTY, "")).resolve(folder);
+    }
+}
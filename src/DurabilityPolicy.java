@@ -0,0 +1,9 @@
+// Create an enum to store the options for when the receipt writer forces the saved receipts to the disk
+enum DurabilityPolicy {
+    // Force the receipt store and the journal after each receipt
+    PER_RECEIPT,
+    // Force the receipt store and the journal once after each batch of receipts that were written together
+    PER_BATCH,
+    // Force the receipt store and the journal at most once per time interval, a crash can lose the last interval
+    TIMED
+}
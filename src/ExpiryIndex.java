@@ -0,0 +1,175 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// This class holds the goods of one shop ordered by their date of expiry. Goods are normal until they get into the
+// discount window of their type, then discounted until their date of expiry and expired after it, so each goods only
+// changes its state on two known days. The goods are kept in buckets by the day of their next change, and when a new
+// day starts only the buckets up to that day are taken, so the work of a new day depends on the number of goods that
+// change and not on the size of the catalog. The goods are also kept in buckets by their date of expiry, so the goods
+// that expire in a range of days and the goods to write off are found without going through the whole catalog. Goods
+// without a date of expiry never expire, they stay normal and are not in any bucket
+class ExpiryIndex {
+    // The states of the goods in the shop
+    enum State {
+        NORMAL,
+        DISCOUNTED,
+        EXPIRED
+    }
+
+    // The day of the next change of goods that never change again
+    static final long NEVER = Long.MAX_VALUE;
+
+    private final Shop shop;
+    // The state and the day of the next change of each goods in the index
+    private final Map<Goods, Tracked> tracked;
+    // The goods by the day of their next change and by their date of expiry, both as days from the epoch
+    private final TreeMap<Long, Set<Goods>> changesByDay;
+    private final TreeMap<Long, Set<Goods>> goodsByExpiry;
+    // The goods in each state
+    private final List<Set<Goods>> goodsByState;
+    // The day the states are up to date for
+    private long today;
+
+    public ExpiryIndex(Shop shop) {
+        // Initialize the instance variables, the index is empty until the first day is started
+        this.shop = shop;
+        this.tracked = new HashMap<>();
+        this.changesByDay = new TreeMap<>();
+        this.goodsByExpiry = new TreeMap<>();
+        this.goodsByState = new ArrayList<>();
+        for (int state = 0; state < State.values().length; state++) {
+            goodsByState.add(new LinkedHashSet<>());
+        }
+        this.today = Long.MIN_VALUE;
+    }
+
+    // Return the state of the goods on the passed day
+    public State stateOf(Goods goods, long day) {
+        if (goods.getDateOfExpiry() == null) return State.NORMAL;
+        long expiryDay = goods.getDateOfExpiry().toEpochDay();
+        if (day > expiryDay) return State.EXPIRED;
+        if (day >= discountStartDay(goods)) return State.DISCOUNTED;
+        return State.NORMAL;
+    }
+
+    // Return the first day after the passed day on which the state of the goods changes, or NEVER
+    public long nextChangeDay(Goods goods, long day) {
+        if (goods.getDateOfExpiry() == null) return NEVER;
+        long expiryDay = goods.getDateOfExpiry().toEpochDay();
+        if (day > expiryDay) return NEVER;
+        long discountStart = discountStartDay(goods);
+        return day < discountStart ? discountStart : expiryDay + 1;
+    }
+
+    // Add the goods with their state on the current day, goods that are already in the index are added again
+    public synchronized void add(Goods goods) {
+        remove(goods);
+        if (goods.getDateOfExpiry() != null) {
+            goodsByExpiry.computeIfAbsent(goods.getDateOfExpiry().toEpochDay(), day -> new LinkedHashSet<>()).add(goods);
+        }
+        track(goods, stateOf(goods, today), nextChangeDay(goods, today));
+    }
+
+    // Remove the goods from the index, nothing happens if they are not in it
+    public synchronized void remove(Goods goods) {
+        Tracked removed = tracked.remove(goods);
+        if (removed == null) return;
+        goodsByState.get(removed.state.ordinal()).remove(goods);
+        removeFromBucket(changesByDay, removed.nextChangeDay, goods);
+        if (goods.getDateOfExpiry() != null) {
+            removeFromBucket(goodsByExpiry, goods.getDateOfExpiry().toEpochDay(), goods);
+        }
+    }
+
+    // Move the index to the passed day, every goods that changes its state until then is moved to its new state and
+    // passed to the action. Only the buckets of the days that passed are visited
+    public synchronized void advanceTo(long day, Consumer<Goods> changed) {
+        today = day;
+        while (!changesByDay.isEmpty() && changesByDay.firstKey() <= day) {
+            Set<Goods> bucket = changesByDay.pollFirstEntry().getValue();
+            for (Goods goods : bucket) {
+                Tracked previous = tracked.remove(goods);
+                goodsByState.get(previous.state.ordinal()).remove(goods);
+                track(goods, stateOf(goods, day), nextChangeDay(goods, day));
+                changed.accept(goods);
+            }
+        }
+    }
+
+    // Return the goods that expire between the two days including both, ordered by their date of expiry
+    public synchronized List<Goods> findExpiringBetween(LocalDate from, LocalDate to) {
+        List<Goods> found = new ArrayList<>();
+        for (Set<Goods> bucket : goodsByExpiry.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            found.addAll(bucket);
+        }
+        return found;
+    }
+
+    // Return the goods in the passed state on the current day
+    public synchronized List<Goods> findInState(State state) {
+        return new ArrayList<>(goodsByState.get(state.ordinal()));
+    }
+
+    public synchronized int countInState(State state) {
+        return goodsByState.get(state.ordinal()).size();
+    }
+
+    // Return the buying price in minor units of the stock of the expired goods that has to be written off
+    public synchronized long calculateWriteOffMinor() {
+        long total = 0;
+        for (Goods goods : goodsByState.get(State.EXPIRED.ordinal())) {
+            total += Money.multiply(goods.getBuyingPriceMinor(), goods.getQuantity());
+        }
+        return total;
+    }
+
+    // Return the expired goods ordered by their date of expiry with the oldest first
+    public synchronized List<Goods> findWriteOffs() {
+        List<Goods> expired = new ArrayList<>(goodsByState.get(State.EXPIRED.ordinal()));
+        expired.sort(Comparator.comparing(Goods::getDateOfExpiry));
+        return expired;
+    }
+
+    // The first day the goods are sold with the discount, the days till expiry of their type before their expiry
+    private long discountStartDay(Goods goods) {
+        long expiryDay = goods.getDateOfExpiry().toEpochDay();
+        if (goods.getGoodsType() == GoodsType.FOOD) return expiryDay - shop.getDaysTillExpiryFood() + 1;
+        if (goods.getGoodsType() == GoodsType.NON_FOOD) return expiryDay - shop.getDaysTillExpiryNonFood() + 1;
+        return expiryDay + 1;
+    }
+
+    private void track(Goods goods, State state, long nextChangeDay) {
+        tracked.put(goods, new Tracked(state, nextChangeDay));
+        goodsByState.get(state.ordinal()).add(goods);
+        if (nextChangeDay != NEVER) {
+            changesByDay.computeIfAbsent(nextChangeDay, day -> new LinkedHashSet<>()).add(goods);
+        }
+    }
+
+    private static void removeFromBucket(TreeMap<Long, Set<Goods>> buckets, long day, Goods goods) {
+        Collection<Goods> bucket = buckets.get(day);
+        if (bucket != null && bucket.remove(goods) && bucket.isEmpty()) {
+            buckets.remove(day);
+        }
+    }
+
+    // The state of goods in the index and the day of their next change
+    private static final class Tracked {
+        private final State state;
+        private final long nextChangeDay;
+
+        private Tracked(State state, long nextChangeDay) {
+            this.state = state;
+            this.nextChangeDay = nextChangeDay;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// This class keeps each receipt in two small files, its text in the Receipts_txt folder and its encoded form in the
+// Receipts_serialized folder, the layout the receipts had before the segment store. The folders are created once when
+// the store is opened. The files of a batch are written without forcing them and stay open until the next sync forces
+// them all to the disk, so a batch still costs one force per file but the cashiers don't wait for it. At most
+// MAX_UNSYNCED_FILES stay open, the store forces and closes them before it opens more
+final class FileReceiptStore implements ReceiptStore {
+    // The names of the folders that the files are saved and read in
+    static final String TEXT_FOLDER = "Receipts_txt";
+    static final String ENCODED_FOLDER = "Receipts_serialized";
+    // The most written files that are kept open until the next sync, far below the open file limit of the process. Each
+    // file is forced on its own anyway, so forcing them earlier costs nothing
+    private static final int MAX_UNSYNCED_FILES = 64;
+
+    private final Path textFolder;
+    private final Path encodedFolder;
+    // The files that were written since the last sync, they are forced and closed by it
+    private final List<FileChannel> unsyncedFiles = new ArrayList<>();
+
+    private FileReceiptStore(Path textFolder, Path encodedFolder) {
+        // Initialize the instance variables
+        this.textFolder = textFolder;
+        this.encodedFolder = encodedFolder;
+    }
+
+    // Open the store in the folders inside the data folder and create the folders if they don't exist
+    public static FileReceiptStore open() throws IOException {
+        return open(DataFolder.resolve(TEXT_FOLDER), DataFolder.resolve(ENCODED_FOLDER));
+    }
+
+    public static FileReceiptStore open(Path textFolder, Path encodedFolder) throws IOException {
+        Files.createDirectories(textFolder);
+        Files.createDirectories(encodedFolder);
+        return new FileReceiptStore(textFolder, encodedFolder);
+    }
+
+    @Override
+    public synchronized void append(Batch batch) throws IOException {
+        try {
+            for (int record = 0; record < batch.size(); record++) {
+                appendFiles(batch.shopIdAt(record), batch.receiptIdAt(record), batch.textAt(record), batch.encodedAt(record));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void append(int shopId, int receiptId, byte[] text, byte[] encoded) throws IOException {
+        try {
+            appendFiles(shopId, receiptId, ByteBuffer.wrap(text), ByteBuffer.wrap(encoded));
+        } catch (IOException | RuntimeException e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+    }
+
+    // Write both files of the receipt and keep them open for the next sync, the open files are forced and closed first
+    // when there are too many of them
+    private void appendFiles(int shopId, int receiptId, ByteBuffer text, ByteBuffer encoded) throws IOException {
+        if (unsyncedFiles.size() + 2 > MAX_UNSYNCED_FILES) {
+            sync();
+        }
+        unsyncedFiles.add(write(textPath(shopId, receiptId), text));
+        unsyncedFiles.add(write(encodedPath(shopId, receiptId), encoded));
+    }
+
+    // Force and close the files that were written before a failed append, so no file is left open when the caller has
+    // nothing to sync. The failure of the force is added to the failure of the append
+    private void closeAfterFailure(Exception failure) {
+        try {
+            sync();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    // Write both files of the receipt and close them without forcing them
+    @Override
+    public void save(int shopId, int receiptId, byte[] text, int textLength, byte[] encoded) throws IOException {
+        write(textPath(shopId, receiptId), ByteBuffer.wrap(text, 0, textLength)).close();
+        write(encodedPath(shopId, receiptId), ByteBuffer.wrap(encoded)).close();
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        // Force and close every file even if one of them fails, the first failure is thrown at the end
+        IOException failure = null;
+        for (FileChannel file : unsyncedFiles) {
+            try (file) {
+                file.force(false);
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        unsyncedFiles.clear();
+        if (failure != null) throw failure;
+    }
+
+    @Override
+    public ByteBuffer readText(int shopId, int receiptId) throws IOException {
+        return read(textPath(shopId, receiptId));
+    }
+
+    @Override
+    public ByteBuffer readEncoded(int shopId, int receiptId) throws IOException {
+        return read(encodedPath(shopId, receiptId));
+    }
+
+    // Return the folder of the encoded files, they are named <shop ID>_receipt_<receipt ID>.ser
+    Path getEncodedFolder() { return encodedFolder; }
+
+    @Override
+    public boolean contains(int shopId, int receiptId) {
+        return Files.exists(encodedPath(shopId, receiptId));
+    }
+
+    // Return the highest receipt ID in the names of the encoded files of the shop, the folder is listed on each call
+    @Override
+    public int highestReceiptId(int shopId) throws IOException {
+        int highest = 0;
+        String prefix = shopId + "_receipt_";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(encodedFolder, prefix + "*.ser")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                try {
+                    highest = Math.max(highest, Integer.parseInt(fileName.substring(prefix.length(), fileName.length() - ".ser".length())));
+                    // Skip a file whose name doesn't end with a receipt ID
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        }
+        return highest;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+    }
+
+    private static FileChannel write(Path path, ByteBuffer bytes) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (bytes.hasRemaining()) {
+                file.write(bytes);
+            }
+            return file;
+            // Throw an exception in case the file couldn't be written and don't leave it open
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(Path path) throws IOException {
+        return Files.exists(path) ? ByteBuffer.wrap(Files.readAllBytes(path)) : null;
+    }
+
+    private Path textPath(int shopId, int receiptId) { return textFolder.resolve(shopId + "_receipt_" + receiptId + ".txt"); }
+    private Path encodedPath(int shopId, int receiptId) { return encodedFolder.resolve(shopId + "_receipt_" + receiptId + ".ser"); }
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// This class keeps the state of the shops in the shop info folder, the journal files and snapshot of each shop and its
+// saved ledger. The folder is created once when the store is opened
+final class FileShopStateStore implements ShopStateStore {
+    // The name of the folder that the information of the shops is stored in
+    static final String SHOP_INFO_FOLDER = "Shop_Info";
+
+    private final Path folder;
+
+    private FileShopStateStore(Path folder) {
+        // Initialize the instance variables
+        this.folder = folder;
+    }
+
+    // Open the store in the passed folder and create the folder if it doesn't exist
+    public static FileShopStateStore open(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        return new FileShopStateStore(folder);
+    }
+
+    public Path getFolder() { return folder; }
+
+    @Override
+    public Journal openJournal(int shopId, String shopName, String currency) throws IOException {
+        return ShopJournal.open(folder, shopId, shopName, currency);
+    }
+
+    @Override
+    public byte[] readLedger(int shopId) throws IOException {
+        Path file = ledgerPath(shopId);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    // Write the ledger to a temporary file and replace the saved ledger with it in one step
+    @Override
+    public void writeLedger(int shopId, byte[] ledger) throws IOException {
+        Path file = ledgerPath(shopId);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(ledger);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path ledgerPath(int shopId) {
+        return folder.resolve(shopId + "_ledger.bin");
+    }
+}
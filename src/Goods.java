@@ -1,7 +1,9 @@
 import java.io.Serial;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Class that holds the management for the creation of the goods
 class Goods implements Serializable {
@@ -12,17 +14,27 @@ class Goods implements Serializable {
     private final int id;
     // Declare the current goods Name
     private final String name;
-    // Declare the buying price of the goods
-    private final double buyingPrice;
+    // Declare the buying price of the goods in minor units
+    private final long buyingPrice;
     // Declare the goods type
     private final GoodsType goodsType;
     // Declare the date of the expiry  of the goods
     private final LocalDate dateOfExpiry;
-    //Declare the quantity of the goods
-    private int quantity;
+    // Declare the quantity of the goods, it is atomic so more cashiers can sell the same goods at the same time
+    private final AtomicInteger quantity;
+    // The selling price of the goods for the current day, it is cached by the price table of the shop
+    private transient volatile PriceTable.PriceEntry priceEntry;
+    // The name encoded in UTF-8, it is encoded the first time a receipt with the goods is rendered
+    private transient byte[] nameBytes;
 
     public Goods(int id, String name, double buyingPrice, GoodsType goodsType, LocalDate dateOfExpiry, int quantity) {
         // Initialize the instance variables as the passed parameters values
+        this(id, name, Money.fromDouble(buyingPrice), goodsType, dateOfExpiry, new AtomicInteger(quantity));
+    }
+
+    // Create goods with the buying price already in minor units, the views of the columnar inventory pass no quantity
+    // because they keep it in the columns
+    Goods(int id, String name, long buyingPrice, GoodsType goodsType, LocalDate dateOfExpiry, AtomicInteger quantity) {
         this.id = id;
         this.name = name;
         this.buyingPrice = buyingPrice;
@@ -31,39 +43,94 @@ class Goods implements Serializable {
         this.quantity = quantity;
     }
 
+    // Create goods that are only known from a line of a saved receipt, the id and the name are all that the receipt keeps
+    public static Goods ofReceiptLine(int id, String name) {
+        return new Goods(id, name, 0.0, null, null, 0);
+    }
+
     // Make getters for the needed variables
     public int getId() { return id; }
     public String getName() { return name; }
-    public double getBuyingPrice() { return buyingPrice; }
-    public int getQuantity() { return quantity; }
+    byte[] getNameBytes() {
+        byte[] bytes = nameBytes;
+        if (bytes == null) {
+            bytes = name.getBytes(StandardCharsets.UTF_8);
+            nameBytes = bytes;
+        }
+        return bytes;
+    }
+    public double getBuyingPrice() { return Money.toDouble(buyingPrice); }
+    public long getBuyingPriceMinor() { return buyingPrice; }
+    public int getQuantity() { return quantity.get(); }
+    GoodsType getGoodsType() { return goodsType; }
+    LocalDate getDateOfExpiry() { return dateOfExpiry; }
     // Set the quantity
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        this.quantity.set(quantity);
+    }
+
+    // Take the passed quantity out of the stock if there is enough of it and return if the reservation was successful
+    public boolean tryReserve(int reserveQuantity) {
+        while (true) {
+            int current = quantity.get();
+            if (current < reserveQuantity) return false;
+            // Only change the quantity if no other cashier changed it in the meantime, otherwise try again
+            if (quantity.compareAndSet(current, current - reserveQuantity)) return true;
+        }
+    }
+
+    // Return the passed quantity back to the stock when a reservation is rolled back
+    public void release(int releaseQuantity) {
+        quantity.addAndGet(releaseQuantity);
+    }
+
+    // Get and set the cached selling price, they are only used by the price table
+    PriceTable.PriceEntry getPriceEntry() { return priceEntry; }
+    void setPriceEntry(PriceTable.PriceEntry priceEntry) { this.priceEntry = priceEntry; }
+
+    // Return if the goods are expired on the passed day, goods without a date of expiry never expire
+    public boolean isExpired(LocalDate today) {
+        return getDateOfExpiry() != null && today.isAfter(getDateOfExpiry());
     }
 
     public double calcSellingPrice(Shop shop) {
-        if (LocalDate.now().isAfter(dateOfExpiry)) {
+        return Money.toDouble(calcSellingPriceMinor(shop, LocalDate.now()));
+    }
+
+    // Calculate the selling price of the goods in minor units on the passed day, goods without a date of expiry are
+    // sold with the regular overcharge
+    public long calcSellingPriceMinor(Shop shop, LocalDate today) {
+        if (isExpired(today)) {
             throw new IllegalArgumentException("Goods that are expired cannot be sold: " + name);
         }
+        if (getDateOfExpiry() == null) return regularPriceMinor(shop, buyingPrice, goodsType);
+        return sellingPriceMinor(shop, buyingPrice, goodsType, ChronoUnit.DAYS.between(today, getDateOfExpiry()));
+    }
 
-        // Determine the overcharge percentage based on the category of the goods
-        double overchargePercentage = (goodsType == GoodsType.FOOD) ? shop.getPercentageOverchargeFood() : shop.getPercentageOverchargeNonFood();
-
+    // Calculate the selling price in minor units of goods with the passed buying price, type and days until their
+    // expiry, the goods must not be expired
+    static long sellingPriceMinor(Shop shop, long buyingPrice, GoodsType goodsType, long daysToExpire) {
         // Calculate the base selling price base on the buying price with the overcharge percentage added
-        double sellingPrice = buyingPrice * (1 + overchargePercentage / 100);
+        long sellingPrice = regularPriceMinor(shop, buyingPrice, goodsType);
 
         // Get the expiry discount based on the category and the expiry date
-        long daysToExpire = ChronoUnit.DAYS.between(LocalDate.now(), dateOfExpiry);
         if ((goodsType == GoodsType.FOOD && daysToExpire < shop.getDaysTillExpiryFood()) ||
                 (goodsType == GoodsType.NON_FOOD && daysToExpire < shop.getDaysTillExpiryNonFood())) {
 
             // Add the discount to the price
-            double decreasePercentage = (goodsType == GoodsType.FOOD) ? shop.getPercentageDecreaseFood() : shop.getPercentageDecreaseNonFood();
-            sellingPrice *= (1 - decreasePercentage / 100);
+            long decreaseBasisPoints = (goodsType == GoodsType.FOOD) ? shop.getDecreaseFoodBasisPoints() : shop.getDecreaseNonFoodBasisPoints();
+            sellingPrice = Money.subtractPercentage(sellingPrice, decreaseBasisPoints);
         }
 
         // Return the calculated selling price of the goods
         return sellingPrice;
     }
 
+    // Calculate the selling price in minor units of goods with the passed buying price and type before any expiry discount
+    static long regularPriceMinor(Shop shop, long buyingPrice, GoodsType goodsType) {
+        // Determine the overcharge percentage based on the category of the goods
+        long overchargeBasisPoints = (goodsType == GoodsType.FOOD) ? shop.getOverchargeFoodBasisPoints() : shop.getOverchargeNonFoodBasisPoints();
+        return Money.addPercentage(buyingPrice, overchargeBasisPoints);
+    }
+
 }
\ No newline at end of file
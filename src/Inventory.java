@@ -0,0 +1,30 @@
+import java.util.Collection;
+import java.util.function.Consumer;
+
+// The goods of a shop as the shop uses them: find goods by id, get their selling price for today, add and remove goods
+// and go through all of them. The stock of the found goods is reserved and released on the goods themselves. The
+// inventory is kept either as goods objects or in primitive columns, see InventoryLayout
+interface Inventory {
+    // Return the goods with the passed id or null if there are no such goods in the inventory
+    Goods get(int goodsId);
+
+    // Return the selling price of goods of the inventory in minor units for today and throw an exception if they are expired
+    long priceOf(Goods goods);
+
+    // Add the goods to the inventory, goods with the same id are replaced
+    void put(Goods goods);
+
+    // Add many goods at once to the inventory
+    void putAll(Collection<Goods> goods);
+
+    // Remove the goods with the passed id from the inventory and return them, or null if there are no such goods
+    Goods remove(int goodsId);
+
+    // Call the action for all goods in the inventory
+    void forEach(Consumer<Goods> action);
+
+    int size();
+
+    // Return the index of the goods by their date of expiry
+    ExpiryIndex getExpiryIndex();
+}
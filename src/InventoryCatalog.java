@@ -0,0 +1,241 @@
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+// This class holds the inventory catalog of the shop. The goods are kept in dense arrays and are indexed by their
+// primitive int id in an open addressing hash table, so looking up goods by id doesn't box the id or scan the whole list.
+// Lookups are optimistic and don't block, changes to the catalog are done under a write lock so more cashiers can use it
+class InventoryCatalog implements Serializable {
+    // Create a unique identifier for the serialized class
+    @Serial
+    private static final long serialVersionUID = 1L;
+    // The smallest size of the hash table, it must always be a power of two
+    private static final int MIN_TABLE_SIZE = 16;
+
+    // Hash table that holds the dense index + 1 of the goods with that id, 0 means the slot is empty
+    private int[] table;
+    // Dense arrays with the id and the object of each goods in the catalog
+    private int[] ids;
+    private Goods[] goods;
+    // Declare the number of goods in the catalog
+    private int size;
+    // Lock that guards the changes to the catalog, readers only validate that nothing changed while they were reading
+    private final StampedLock lock = new StampedLock();
+
+    public InventoryCatalog() {
+        this(MIN_TABLE_SIZE / 2);
+    }
+
+    public InventoryCatalog(int expectedSize) {
+        // Initialize the arrays with enough space for the expected number of goods
+        this.table = new int[tableSizeFor(expectedSize)];
+        this.ids = new int[Math.max(expectedSize, 1)];
+        this.goods = new Goods[Math.max(expectedSize, 1)];
+        this.size = 0;
+    }
+
+    // The methods that go through the catalog by dense index must not be used while the catalog is changed
+    public int size() { return size; }
+    // Get the id and the goods object that are stored at the passed dense index
+    public int idAt(int index) { return ids[index]; }
+    public Goods goodsAt(int index) { return goods[index]; }
+
+    // Return the goods with the passed id or null if there are no such goods in the catalog
+    public Goods get(int id) {
+        // First try to read without locking and use the result only if no change happened in the meantime
+        long stamp = lock.tryOptimisticRead();
+        Goods found = find(id);
+        if (lock.validate(stamp)) return found;
+
+        // Fall back to a read lock if the catalog was changed while reading
+        stamp = lock.readLock();
+        try {
+            return find(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Call the action for all goods in the catalog, the catalog can't be changed until all goods are visited
+    public void forEach(Consumer<Goods> action) {
+        long stamp = lock.readLock();
+        try {
+            for (int index = 0; index < size; index++) {
+                action.accept(goods[index]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Search the goods without locking, the arrays are copied first so a concurrent change can't break the search
+    // and the result is only used by the caller if the read is validated
+    private Goods find(int id) {
+        int[] currentTable = table;
+        int[] currentIds = ids;
+        Goods[] currentGoods = goods;
+        int mask = currentTable.length - 1;
+        for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            int entry = currentTable[slot];
+            if (entry == 0 || entry > currentIds.length || entry > currentGoods.length) return null;
+            if (currentIds[entry - 1] == id) return currentGoods[entry - 1];
+        }
+    }
+
+    // Return the dense index of the goods with the passed id or -1 if there are no such goods in the catalog
+    public int indexOf(int id) {
+        int mask = table.length - 1;
+        // Probe the table starting from the hashed slot until the id or an empty slot is found
+        for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) return -1;
+            if (ids[entry - 1] == id) return entry - 1;
+        }
+    }
+
+    // Add the goods to the catalog, if there are already goods with the same id they are replaced and returned
+    public Goods put(Goods newGoods) {
+        long stamp = lock.writeLock();
+        try {
+            int index = indexOf(newGoods.getId());
+            if (index >= 0) {
+                Goods previous = goods[index];
+                goods[index] = newGoods;
+                return previous;
+            }
+            ensureCapacity(size + 1);
+            insert(newGoods);
+            return null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Load many goods at once, the arrays are grown only once for the whole collection
+    public void putAll(Collection<Goods> newGoods) {
+        long stamp = lock.writeLock();
+        try {
+            ensureCapacity(size + newGoods.size());
+            for (Goods current : newGoods) {
+                int index = indexOf(current.getId());
+                if (index >= 0) {
+                    goods[index] = current;
+                } else {
+                    insert(current);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Remove the goods with the passed id from the catalog and return them, or return null if there were no such goods
+    public Goods remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int mask = table.length - 1;
+            int slot = hash(id) & mask;
+            // Find the slot of the table that points to the goods
+            while (table[slot] != 0 && ids[table[slot] - 1] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == 0) return null;
+
+            int index = table[slot] - 1;
+            Goods removed = goods[index];
+            deleteSlot(slot);
+
+            // Move the last goods into the freed dense index so the arrays stay without holes
+            int last = size - 1;
+            if (index != last) {
+                ids[index] = ids[last];
+                goods[index] = goods[last];
+                table[slotOf(ids[index])] = index + 1;
+            }
+            goods[last] = null;
+            size--;
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Insert goods that are not yet in the catalog, the capacity must already be ensured
+    private void insert(Goods newGoods) {
+        int mask = table.length - 1;
+        int slot = hash(newGoods.getId()) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        ids[size] = newGoods.getId();
+        goods[size] = newGoods;
+        table[slot] = ++size;
+    }
+
+    // Return the slot of the table that points to the goods with the passed id, the id must be in the catalog
+    private int slotOf(int id) {
+        int mask = table.length - 1;
+        int slot = hash(id) & mask;
+        while (ids[table[slot] - 1] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Empty the slot and shift back the entries after it, so no probe sequence is broken by the empty slot
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = table[next];
+            if (entry == 0) break;
+            int home = hash(ids[entry - 1]) & mask;
+            // Move the entry back only if its home slot is not between the empty slot and its current slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = entry;
+                slot = next;
+            }
+        }
+        table[slot] = 0;
+    }
+
+    // Grow the dense arrays and the hash table so they can hold the passed number of goods
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            int newLength = Math.max(capacity, ids.length * 2);
+            ids = Arrays.copyOf(ids, newLength);
+            goods = Arrays.copyOf(goods, newLength);
+        }
+        // Keep the hash table at most half full so the probe sequences stay short
+        if (capacity * 2 > table.length) {
+            table = new int[tableSizeFor(capacity)];
+            int mask = table.length - 1;
+            for (int index = 0; index < size; index++) {
+                int slot = hash(ids[index]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = index + 1;
+            }
+        }
+    }
+
+    // Return the smallest power of two that is at least twice the passed size
+    private static int tableSizeFor(int expectedSize) {
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < expectedSize * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    // Spread the bits of the id so ids that follow each other don't end up in neighbouring slots
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,8 @@
+// Create an enum to store the ways the inventory of a shop can be kept in memory
+enum InventoryLayout {
+    // Every goods is an object in the inventory catalog with its price cached on it and an entry in the expiry index
+    OBJECTS,
+    // The fields of all goods are kept in primitive columns with the names in a table of distinct names, it takes a few
+    // times less memory per goods for very large catalogs
+    COLUMNS
+}
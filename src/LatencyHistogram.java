@@ -0,0 +1,106 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// This class holds the latencies of one stage of the checkout in nanoseconds. Like an HDR histogram the values are
+// counted in buckets that grow with the value, every power of two is split in 32 buckets so a value is known to about
+// 3% wherever it lies, and recording a value is one increment of an atomic counter without any locks or objects
+class LatencyHistogram implements StageLatencyMXBean {
+    // The number of buckets each power of two is split in, values below twice this number are counted exactly
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // The biggest value that is counted in its own bucket, about 18 minutes, bigger values are counted as this value
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        // Initialize the counts with a bucket for each value up to the biggest one
+        this.counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    // Count the passed latency in nanoseconds
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        // Only try to change the maximum when the value is bigger, most values aren't
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    // Return a copy of the counts that can be asked for percentiles while new values are recorded
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long count = 0;
+        for (int index = 0; index < copy.length; index++) {
+            copy[index] = counts.get(index);
+            count += copy[index];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    // The attributes of the histogram shown by JMX, each of them takes a new snapshot
+    @Override public long getCount() { return snapshot().getCount(); }
+    @Override public double getMeanMicros() { return snapshot().getMean() / 1000.0; }
+    @Override public double getP50Micros() { return snapshot().valueAt(50) / 1000.0; }
+    @Override public double getP90Micros() { return snapshot().valueAt(90) / 1000.0; }
+    @Override public double getP99Micros() { return snapshot().valueAt(99) / 1000.0; }
+    @Override public double getP999Micros() { return snapshot().valueAt(99.9) / 1000.0; }
+    @Override public double getMaxMicros() { return max.get() / 1000.0; }
+
+    // Return the bucket of the value, the first buckets hold one value each and every next power of two gets 32 buckets
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    // Return the biggest value that is counted in the bucket
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    // The counts of the histogram at one moment
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() { return count; }
+        public long getMax() { return max; }
+        public double getMean() { return count == 0 ? 0 : (double) sum / count; }
+
+        // Return the value that the passed percentage of the recorded values are not bigger than
+        public long valueAt(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int index = 0; index < counts.length; index++) {
+                seen += counts[index];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(index), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// This class reads the old .ser receipt files that were written with Java serialization of the whole receipt object,
+// including the shop with all its goods and cashiers. The classes in those files are read into the legacy classes
+// below that have the fields the old classes had, and the result is converted to a receipt of the current class
+final class LegacyReceiptReader {
+
+    private LegacyReceiptReader() {
+    }
+
+    // Read the old serialized receipt from the bytes of the file
+    public static Receipt read(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new LegacyObjectInputStream(bytes)) {
+            LegacyReceipt legacy = (LegacyReceipt) ois.readObject();
+
+            // The currency was only saved in the shop object of the old receipts
+            String currency = legacy.shop != null ? legacy.shop.shopCurrency : "";
+            Receipt receipt = new Receipt(legacy.shopId, legacy.shopName, currency, legacy.cashier, legacy.receiptId, legacy.dateTime);
+            for (Map.Entry<LegacyGoods, Integer> entry : legacy.soldGoods.entrySet()) {
+                LegacyGoods goods = entry.getKey();
+                receipt.addSaleOfGoods(Goods.ofReceiptLine(goods.id, goods.name), entry.getValue(), Money.fromDouble(legacy.goodsPrices.get(goods)));
+            }
+            return receipt;
+        }
+    }
+
+    // Stream that reads the old receipt, shop and goods classes as the legacy classes with the same fields
+    private static final class LegacyObjectInputStream extends ObjectInputStream {
+        LegacyObjectInputStream(byte[] bytes) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            Class<?> legacyClass = switch (descriptor.getName()) {
+                case "Receipt" -> LegacyReceipt.class;
+                case "Shop" -> LegacyShop.class;
+                case "Goods" -> LegacyGoods.class;
+                default -> null;
+            };
+            if (legacyClass == null) {
+                return descriptor;
+            }
+            ObjectStreamClass legacyDescriptor = ObjectStreamClass.lookup(legacyClass);
+            if (legacyDescriptor.getSerialVersionUID() != descriptor.getSerialVersionUID()) {
+                throw new InvalidClassException(descriptor.getName(), "Unknown version of the old receipt format");
+            }
+            return legacyDescriptor;
+        }
+    }
+
+    // The fields of the receipt class as they were saved in the old .ser files
+    private static final class LegacyReceipt implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private int receiptId;
+        private Cashier cashier;
+        private LocalDateTime dateTime;
+        private Map<LegacyGoods, Integer> soldGoods;
+        private Map<LegacyGoods, Double> goodsPrices;
+        private double totalPrice;
+        private int shopId;
+        private String shopName;
+        private LegacyShop shop;
+    }
+
+    // The fields of the shop class as they were saved in the old .ser files
+    private static final class LegacyShop implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private int id;
+        private String name;
+        private String shopCurrency;
+        private List<LegacyGoods> allGoods;
+        private List<Cashier> cashiers;
+        private double totalIncome;
+        private double totalCosts;
+        private double percentageOverchargeFood;
+        private double percentageOverchargeNonFood;
+        private double percentageDecreaseFood;
+        private double percentageDecreaseNonFood;
+        private int daysTillExpiryFood;
+        private int daysTillExpiryNonFood;
+    }
+
+    // The fields of the goods class as they were saved in the old .ser files
+    private static final class LegacyGoods implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private int id;
+        private String name;
+        private double buyingPrice;
+        private GoodsType goodsType;
+        private LocalDate dateOfExpiry;
+        private int quantity;
+    }
+}
@@ -37,6 +37,9 @@ public class Main {
 
         if (receipt != null) {
             try {
+                // Wait until the receipt writer saved the receipt files
+                receipt.getPersistedFuture().join();
+
                 // Call method that opens and prints the information from the txt receipt file
                 Receipt.readReceiptFromFile(receipt.getShopId(), receipt.getReceiptId());
 
@@ -46,8 +49,8 @@ public class Main {
                 System.out.println("Shop: " + deserializedReceipt.getShopName());
                 System.out.println("Receipt ID: " + deserializedReceipt.getReceiptId());
                 System.out.println("Cashier: " + deserializedReceipt.getCashier().getName());
-                // Print the total price and format it to have two numbers after the decimal
-                System.out.println("Total Price: " + String.format("%.2f", deserializedReceipt.getTotalPrice()) + " " + shop.getCurrency());
+                // Print the total price with two numbers after the decimal
+                System.out.println("Total Price: " + Money.format(deserializedReceipt.getTotalPriceMinor()) + " " + shop.getCurrency());
 
                 // Throw error in case there are problems with the deserialization
             } catch (IOException | ClassNotFoundException e) {
@@ -56,6 +59,9 @@ public class Main {
         }
 
         // Print the total profit of the shop
-        System.out.println("\n" + shop.getName() + " Total Profit: " + String.format("%.2f", shop.calculateProfit()) + " " + shop.getCurrency());
+        System.out.println("\n" + shop.getName() + " Total Profit: " + Money.format(shop.calculateProfitMinor()) + " " + shop.getCurrency());
+
+        // Close the shop so its journal is written to the disk
+        shop.close();
     }
 }
@@ -0,0 +1,66 @@
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// This class keeps the receipts only in memory, for load tests that measure the shop without the cost of the disk.
+// Every receipt is kept until the program exits, so it is not meant for long runs
+final class MemoryReceiptStore implements ReceiptStore {
+    // The text and the encoded form of each receipt by the key of the receipt
+    private final Map<Long, byte[][]> receipts = new ConcurrentHashMap<>();
+    // The highest receipt ID of each shop
+    private final Map<Integer, Integer> highestReceiptIds = new ConcurrentHashMap<>();
+
+    @Override
+    public void append(Batch batch) {
+        for (int record = 0; record < batch.size(); record++) {
+            receipts.put(ReceiptIndex.key(batch.shopIdAt(record), batch.receiptIdAt(record)),
+                    new byte[][]{toBytes(batch.textAt(record)), toBytes(batch.encodedAt(record))});
+            highestReceiptIds.merge(batch.shopIdAt(record), batch.receiptIdAt(record), Math::max);
+        }
+    }
+
+    @Override
+    public void append(int shopId, int receiptId, byte[] text, byte[] encoded) {
+        receipts.put(ReceiptIndex.key(shopId, receiptId), new byte[][]{text.clone(), encoded.clone()});
+        highestReceiptIds.merge(shopId, receiptId, Math::max);
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public ByteBuffer readText(int shopId, int receiptId) {
+        byte[][] receipt = receipts.get(ReceiptIndex.key(shopId, receiptId));
+        return receipt != null ? ByteBuffer.wrap(receipt[0]).asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public ByteBuffer readEncoded(int shopId, int receiptId) {
+        byte[][] receipt = receipts.get(ReceiptIndex.key(shopId, receiptId));
+        return receipt != null ? ByteBuffer.wrap(receipt[1]).asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public boolean contains(int shopId, int receiptId) {
+        return receipts.containsKey(ReceiptIndex.key(shopId, receiptId));
+    }
+
+    @Override
+    public int highestReceiptId(int shopId) {
+        return highestReceiptIds.getOrDefault(shopId, 0);
+    }
+
+    // Return the number of receipts in the store
+    public int size() { return receipts.size(); }
+
+    @Override
+    public void close() {
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// This class keeps the state of the shops only in memory, for load tests that should not touch the disk. A shop that is
+// created again in the same run continues with the receipt number and total value it had, nothing is kept after the
+// program exits
+final class MemoryShopStateStore implements ShopStateStore {
+    private final Map<Integer, MemoryJournal> journals = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> ledgers = new ConcurrentHashMap<>();
+
+    @Override
+    public Journal openJournal(int shopId, String shopName, String currency) {
+        return journals.computeIfAbsent(shopId, id -> new MemoryJournal());
+    }
+
+    @Override
+    public byte[] readLedger(int shopId) {
+        byte[] ledger = ledgers.get(shopId);
+        return ledger != null ? ledger.clone() : null;
+    }
+
+    @Override
+    public void writeLedger(int shopId, byte[] ledger) {
+        ledgers.put(shopId, ledger.clone());
+    }
+
+    // The journal only keeps the last receipt number, the total value and the costs, there is nothing to replay
+    private static final class MemoryJournal implements Journal {
+        private int receiptNumber;
+        private long totalValue;
+        private long costOfGoods;
+        private long salaries;
+
+        @Override
+        public synchronized int getReceiptNumber() { return receiptNumber; }
+        @Override
+        public synchronized long getTotalValue() { return totalValue; }
+        @Override
+        public synchronized long getCostOfGoods() { return costOfGoods; }
+        @Override
+        public synchronized long getSalaries() { return salaries; }
+
+        @Override
+        public synchronized void append(int soldReceiptNumber, long receiptTotalPrice) {
+            receiptNumber = Math.max(receiptNumber, soldReceiptNumber);
+            totalValue += receiptTotalPrice;
+        }
+
+        @Override
+        public synchronized void appendCostOfGoods(long cost) {
+            costOfGoods += cost;
+        }
+
+        @Override
+        public synchronized void appendSalary(long salary) {
+            salaries += salary;
+        }
+
+        @Override
+        public void sync() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
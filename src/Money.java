@@ -0,0 +1,81 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// This class holds the arithmetic for the money of the shops. All amounts are longs in minor units (cents), so the
+// totals are exact and adding them doesn't create any objects. Percentages are longs in basis points (1% = 100).
+// Adding an overcharge or taking a discount rounds the result to the nearest cent, halves are rounded away from zero
+final class Money {
+    // The number of minor units in one unit of the currency and the number of basis points in 100%
+    static final long MINOR_UNITS = 100;
+    static final long FULL_PERCENTAGE = 10_000;
+
+    private Money() {
+    }
+
+    // Convert an amount like 12.34 to minor units, it is used where the amounts come into the program
+    public static long fromDouble(double amount) {
+        return BigDecimal.valueOf(amount).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    // Convert an amount in minor units back to a double, it is only used to show the amounts
+    public static double toDouble(long amount) {
+        return amount / (double) MINOR_UNITS;
+    }
+
+    // Convert a percentage like 12.5 to basis points
+    public static long percentageToBasisPoints(double percentage) {
+        return BigDecimal.valueOf(percentage).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    // Parse an amount written with two decimals like 426.00 to minor units
+    public static long parse(String amount) {
+        return new BigDecimal(amount.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    // Return the amount with the passed percentage added to it
+    public static long addPercentage(long amount, long basisPoints) {
+        return applyPercentage(amount, FULL_PERCENTAGE + basisPoints);
+    }
+
+    // Return the amount with the passed percentage taken from it
+    public static long subtractPercentage(long amount, long basisPoints) {
+        return applyPercentage(amount, FULL_PERCENTAGE - basisPoints);
+    }
+
+    // Return the price of the passed quantity, an exception is thrown if the result doesn't fit in a long
+    public static long multiply(long price, int quantity) {
+        return Math.multiplyExact(price, quantity);
+    }
+
+    // Format the amount with two decimals like 426.00
+    public static String format(long amount) {
+        StringBuilder text = new StringBuilder(24);
+        appendTo(text, amount);
+        return text.toString();
+    }
+
+    // Append the amount with two decimals to the text
+    public static void appendTo(StringBuilder text, long amount) {
+        long units = amount / MINOR_UNITS;
+        long cents = Math.abs(amount % MINOR_UNITS);
+        if (amount < 0 && units == 0) {
+            text.append('-');
+        }
+        text.append(units).append('.');
+        if (cents < 10) {
+            text.append('0');
+        }
+        text.append(cents);
+    }
+
+    // Multiply the amount by the basis points and divide by 100% rounding the halves away from zero
+    private static long applyPercentage(long amount, long basisPoints) {
+        long product = Math.multiplyExact(amount, basisPoints);
+        long result = product / FULL_PERCENTAGE;
+        long remainder = product % FULL_PERCENTAGE;
+        if (Math.abs(remainder) * 2 >= FULL_PERCENTAGE) {
+            result += Long.signum(product);
+        }
+        return result;
+    }
+}
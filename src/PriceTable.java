@@ -0,0 +1,114 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// This class holds the selling prices of the goods of one shop. The price of goods only changes on the day they get
+// their expiry discount and on the day after their date of expiry, so each goods keeps its price entry with the day it
+// is valid until, and looking up a price while selling is one read of the entry and a check of that day. When a new
+// day starts the expiry index of the shop gives the goods whose state changes on that day and only their entries are
+// calculated again, goods that are added during the day get their entry when they are added
+class PriceTable {
+    private final Shop shop;
+    private final ExpiryIndex expiryIndex;
+
+    // The current business day, as a date and as days from the epoch, and the time in milliseconds when the next day starts
+    private volatile LocalDate today;
+    private volatile long todayEpochDay;
+    private volatile long nextDayMillis;
+
+    public PriceTable(Shop shop) {
+        // Initialize the instance variables, the prices are calculated the first time they are needed
+        this.shop = shop;
+        this.expiryIndex = new ExpiryIndex(shop);
+        this.nextDayMillis = Long.MIN_VALUE;
+    }
+
+    // Return the index of the goods of the shop by their date of expiry, it is up to date with the current day
+    public ExpiryIndex getExpiryIndex() {
+        currentDay();
+        return expiryIndex;
+    }
+
+    // Return the selling price of the goods in minor units for today and throw an exception if the goods are expired
+    public long priceOf(Goods goods) {
+        PriceEntry entry = entryOf(goods);
+        if (entry.isExpired) {
+            throw new IllegalArgumentException("Goods that are expired cannot be sold: " + goods.getName());
+        }
+        return entry.price;
+    }
+
+    // Return if the goods are expired today, the flag is calculated when the goods change their state
+    public boolean isExpired(Goods goods) {
+        return entryOf(goods).isExpired;
+    }
+
+    // Add the goods that were added to the shop to the expiry index and calculate their price, so the first sale
+    // doesn't have to do it
+    public void update(Goods goods) {
+        LocalDate day = currentDay();
+        expiryIndex.add(goods);
+        goods.setPriceEntry(calculate(goods, day));
+    }
+
+    // Remove the goods that were taken out of the shop from the expiry index
+    public void remove(Goods goods) {
+        expiryIndex.remove(goods);
+    }
+
+    // Return the entry of the goods, it is calculated again if its state changed since or if it is from another shop
+    private PriceEntry entryOf(Goods goods) {
+        LocalDate day = currentDay();
+        PriceEntry entry = goods.getPriceEntry();
+        if (entry == null || entry.table != this || todayEpochDay >= entry.nextChangeDay) {
+            entry = calculate(goods, day);
+            goods.setPriceEntry(entry);
+        }
+        return entry;
+    }
+
+    // Return the current business day, when a new day starts the goods that change their state are calculated again
+    private LocalDate currentDay() {
+        if (System.currentTimeMillis() >= nextDayMillis) {
+            startNewDay();
+        }
+        return today;
+    }
+
+    private synchronized void startNewDay() {
+        // Another cashier may have already started the new day
+        long now = System.currentTimeMillis();
+        if (now < nextDayMillis) return;
+
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = LocalDate.now(zone);
+        expiryIndex.advanceTo(day.toEpochDay(), goods -> goods.setPriceEntry(calculate(goods, day)));
+        // The new day is only shown to the cashiers after the changed goods have their new prices
+        today = day;
+        todayEpochDay = day.toEpochDay();
+        nextDayMillis = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private PriceEntry calculate(Goods goods, LocalDate day) {
+        long epochDay = day.toEpochDay();
+        long nextChangeDay = expiryIndex.nextChangeDay(goods, epochDay);
+        if (expiryIndex.stateOf(goods, epochDay) == ExpiryIndex.State.EXPIRED) {
+            return new PriceEntry(this, 0, true, nextChangeDay);
+        }
+        return new PriceEntry(this, goods.calcSellingPriceMinor(shop, day), false, nextChangeDay);
+    }
+
+    // The selling price of one goods of one shop and the first day it is not valid anymore
+    static final class PriceEntry {
+        private final PriceTable table;
+        private final long price;
+        private final boolean isExpired;
+        private final long nextChangeDay;
+
+        private PriceEntry(PriceTable table, long price, boolean isExpired, long nextChangeDay) {
+            this.table = table;
+            this.price = price;
+            this.isExpired = isExpired;
+            this.nextChangeDay = nextChangeDay;
+        }
+    }
+}
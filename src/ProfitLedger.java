@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// This class holds the profit and loss of one shop as it happens. Every sale adds its income and the discounts that
+// were given on it, every delivery of goods adds their buying price and every new cashier the salary, each to a
+// LongAdder for the totals and to the rollups per hour and per day. The rollups are ring buffers with one slot per hour
+// or day that is cleared when it is used for a new hour or day, so the profit of today or of the last 7 days is read
+// from a few slots without touching the disk. The ledger is saved in the shop state store when the shop is closed and
+// read again when the shop is created. The totals are also in the journal of the shop, so after a crash the totals
+// that the saved ledger misses are caught up from the journal
+class ProfitLedger implements ProfitLedgerMXBean {
+    // The amounts that are added up, all of them in minor units
+    enum Measure {
+        INCOME,
+        COST_OF_GOODS,
+        SALARIES,
+        DISCOUNTS
+    }
+
+    // The hours and days the rollups hold, the hours cover the last 7 days and today
+    static final int HOURS = 24 * 8;
+    static final int DAYS = 400;
+
+    private static final int MEASURES = Measure.values().length;
+    private static final int FILE_MAGIC = 0x4C454447;
+    private static final int FILE_VERSION = 1;
+
+    private final Shop shop;
+    private final int shopId;
+    private final ShopStateStore store;
+    private final LongAdder[] totals;
+    private final Rollup hours;
+    private final Rollup days;
+
+    private ProfitLedger(Shop shop, int shopId, ShopStateStore store) {
+        // Initialize the instance variables with empty totals and rollups
+        this.shop = shop;
+        this.shopId = shopId;
+        this.store = store;
+        this.totals = new LongAdder[MEASURES];
+        for (int measure = 0; measure < MEASURES; measure++) {
+            totals[measure] = new LongAdder();
+        }
+        this.hours = new Rollup(HOURS);
+        this.days = new Rollup(DAYS);
+    }
+
+    // Open the ledger of the shop and read it from the store if the shop was closed before
+    public static ProfitLedger open(ShopStateStore store, Shop shop) {
+        try {
+            byte[] saved = store.readLedger(shop.getId());
+            ProfitLedger ledger = new ProfitLedger(shop, shop.getId(), store);
+            if (saved != null) {
+                ledger.read(saved);
+            }
+            return ledger;
+            // Throw an exception in case the ledger couldn't be read, the shop starts with an empty ledger
+        } catch (IOException e) {
+            System.err.println("Error couldn't read the ledger of the shop " + shop.getId() + ": " + e.getMessage());
+            return new ProfitLedger(shop, shop.getId(), store);
+        }
+    }
+
+    // Read the saved ledger of a shop that is not loaded, return null if the shop has no saved ledger. Nothing can be
+    // added to it
+    public static ProfitLedger read(ShopStateStore store, int shopId) throws IOException {
+        byte[] saved = store.readLedger(shopId);
+        if (saved == null) return null;
+        ProfitLedger ledger = new ProfitLedger(null, shopId, store);
+        ledger.read(saved);
+        return ledger;
+    }
+
+    // Add the income of the sold receipt and the discounts that were given on its lines, a line was discounted by
+    // the difference between the price of the goods without the expiry discount and the price it was sold for
+    public void sale(Receipt receipt) {
+        long discounts = 0;
+        for (int line = 0; line < receipt.getLineCount(); line++) {
+            Goods goods = receipt.getLineGoods(line);
+            long regularPrice = Goods.regularPriceMinor(shop, goods.getBuyingPriceMinor(), goods.getGoodsType());
+            if (regularPrice > receipt.getLinePriceMinor(line)) {
+                discounts += Money.multiply(regularPrice - receipt.getLinePriceMinor(line), receipt.getLineQuantity(line));
+            }
+        }
+        LocalDateTime time = receipt.getDateTime();
+        add(time, Measure.INCOME, receipt.getTotalPriceMinor());
+        if (discounts > 0) {
+            add(time, Measure.DISCOUNTS, discounts);
+        }
+    }
+
+    // Add the buying price of goods that were delivered to the shop
+    public void stockAdded(long cost) {
+        add(LocalDateTime.now(), Measure.COST_OF_GOODS, cost);
+    }
+
+    // Add the salary of a cashier that started working in the shop
+    public void salaryAdded(long salary) {
+        add(LocalDateTime.now(), Measure.SALARIES, salary);
+    }
+
+    // Add an amount that was saved somewhere else to the total, it is not in any hour or day because its time is not known
+    public void seed(Measure measure, long amount) {
+        totals[measure.ordinal()].add(amount);
+    }
+
+    // Add to the total what it misses of the amount that was journaled, it is not in any hour or day like a seed
+    public void catchUp(Measure measure, long journaled) {
+        long missing = journaled - getTotal(measure);
+        if (missing > 0) {
+            seed(measure, missing);
+        }
+    }
+
+    public long getTotal(Measure measure) { return totals[measure.ordinal()].sum(); }
+
+    // Return the costs of the goods and the salaries
+    public long getTotalCosts() {
+        return getTotal(Measure.COST_OF_GOODS) + getTotal(Measure.SALARIES);
+    }
+
+    // Return the amount of the measure in the hour or the day, hours and days that are not in the rollups anymore are 0
+    public long getHour(long epochHour, Measure measure) { return hours.get(epochHour, measure.ordinal()); }
+    public long getDay(long epochDay, Measure measure) { return days.get(epochDay, measure.ordinal()); }
+
+    // Return the income minus the costs of the goods and the salaries of the day
+    public long profitOfDay(long epochDay) {
+        return days.get(epochDay, Measure.INCOME.ordinal()) - days.get(epochDay, Measure.COST_OF_GOODS.ordinal())
+                - days.get(epochDay, Measure.SALARIES.ordinal());
+    }
+
+    // Return the profit of the passed number of days that end with today
+    public long profitOfLastDays(int dayCount) {
+        if (dayCount < 1 || dayCount > DAYS) {
+            throw new IllegalArgumentException("The number of days must be between 1 and " + DAYS);
+        }
+        long today = LocalDateTime.now().toLocalDate().toEpochDay();
+        long profit = 0;
+        for (long day = today - dayCount + 1; day <= today; day++) {
+            profit += profitOfDay(day);
+        }
+        return profit;
+    }
+
+    // Return the profit of the passed number of hours that end with the current hour
+    public long profitOfLastHours(int hourCount) {
+        if (hourCount < 1 || hourCount > HOURS) {
+            throw new IllegalArgumentException("The number of hours must be between 1 and " + HOURS);
+        }
+        long currentHour = epochHour(LocalDateTime.now());
+        long profit = 0;
+        for (long hour = currentHour - hourCount + 1; hour <= currentHour; hour++) {
+            profit += hours.get(hour, Measure.INCOME.ordinal()) - hours.get(hour, Measure.COST_OF_GOODS.ordinal())
+                    - hours.get(hour, Measure.SALARIES.ordinal());
+        }
+        return profit;
+    }
+
+    @Override
+    public double getIncomeToday() { return Money.toDouble(getDay(today(), Measure.INCOME)); }
+    @Override
+    public double getDiscountsToday() { return Money.toDouble(getDay(today(), Measure.DISCOUNTS)); }
+    @Override
+    public double getProfitToday() { return Money.toDouble(profitOfDay(today())); }
+    @Override
+    public double getProfitLastHour() { return Money.toDouble(profitOfLastHours(1)); }
+    @Override
+    public double getProfitLast7Days() { return Money.toDouble(profitOfLastDays(7)); }
+    @Override
+    public double getTotalProfit() { return Money.toDouble(getTotal(Measure.INCOME) - getTotalCosts()); }
+
+    // Write the totals and the rollups to the store, it replaces the saved ledger in one step
+    public void save() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES * MEASURES
+                + hours.byteSize() + days.byteSize() + Integer.BYTES);
+        buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+        for (LongAdder total : totals) {
+            buffer.putLong(total.sum());
+        }
+        hours.writeTo(buffer);
+        days.writeTo(buffer);
+        buffer.putInt(checksum(buffer.array(), buffer.position()));
+        store.writeLedger(shopId, buffer.array());
+    }
+
+    private void read(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int expectedSize = Integer.BYTES * 2 + Long.BYTES * MEASURES + hours.byteSize() + days.byteSize() + Integer.BYTES;
+        if (bytes.length != expectedSize || buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION
+                || buffer.getInt(bytes.length - Integer.BYTES) != checksum(bytes, bytes.length - Integer.BYTES)) {
+            throw new IOException("The saved ledger of the shop " + shopId + " is damaged");
+        }
+        for (LongAdder total : totals) {
+            total.add(buffer.getLong());
+        }
+        hours.readFrom(buffer);
+        days.readFrom(buffer);
+    }
+
+    private void add(LocalDateTime time, Measure measure, long amount) {
+        totals[measure.ordinal()].add(amount);
+        hours.add(epochHour(time), measure.ordinal(), amount);
+        days.add(time.toLocalDate().toEpochDay(), measure.ordinal(), amount);
+    }
+
+    // The hours and days are counted in the local time of the shop, like the dates on the receipts
+    private static long epochHour(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * 24 + time.getHour();
+    }
+
+    private static long today() {
+        return LocalDateTime.now().toLocalDate().toEpochDay();
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    // Ring buffer with the amounts of each measure for the last hours or days, the slot of a period is the period modulo
+    // the number of slots. Adding only takes the lock when a slot is used for a new period, which is once per hour or
+    // day, otherwise it is one atomic add
+    private static final class Rollup {
+        // The value of the period of a slot that was never used
+        private static final long UNUSED = Long.MIN_VALUE;
+
+        private final AtomicLongArray periods;
+        private final AtomicLongArray values;
+
+        private Rollup(int size) {
+            this.periods = new AtomicLongArray(size);
+            this.values = new AtomicLongArray(size * MEASURES);
+            for (int slot = 0; slot < size; slot++) {
+                periods.set(slot, UNUSED);
+            }
+        }
+
+        private void add(long period, int measure, long amount) {
+            int slot = slotOf(period);
+            // An amount of a period that is older than the ring holds is only counted in the totals
+            if (periods.get(slot) != period && !roll(slot, period)) return;
+            values.getAndAdd(slot * MEASURES + measure, amount);
+        }
+
+        // Clear the slot for the new period, return false if the slot already holds a newer period
+        private synchronized boolean roll(int slot, long period) {
+            long current = periods.get(slot);
+            if (current > period) return false;
+            if (current < period) {
+                for (int measure = 0; measure < MEASURES; measure++) {
+                    values.set(slot * MEASURES + measure, 0);
+                }
+                periods.set(slot, period);
+            }
+            return true;
+        }
+
+        private long get(long period, int measure) {
+            int slot = slotOf(period);
+            return periods.get(slot) == period ? values.get(slot * MEASURES + measure) : 0;
+        }
+
+        private int slotOf(long period) {
+            return (int) Math.floorMod(period, (long) periods.length());
+        }
+
+        private int byteSize() {
+            return periods.length() * Long.BYTES * (1 + MEASURES);
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            for (int slot = 0; slot < periods.length(); slot++) {
+                buffer.putLong(periods.get(slot));
+                for (int measure = 0; measure < MEASURES; measure++) {
+                    buffer.putLong(values.get(slot * MEASURES + measure));
+                }
+            }
+        }
+
+        private void readFrom(ByteBuffer buffer) {
+            for (int slot = 0; slot < periods.length(); slot++) {
+                periods.set(slot, buffer.getLong());
+                for (int measure = 0; measure < MEASURES; measure++) {
+                    values.set(slot * MEASURES + measure, buffer.getLong());
+                }
+            }
+        }
+    }
+}
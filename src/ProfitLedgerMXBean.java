@@ -0,0 +1,9 @@
+// The profit and loss of one shop as it is shown by JMX, in the currency of the shop
+public interface ProfitLedgerMXBean {
+    double getIncomeToday();
+    double getDiscountsToday();
+    double getProfitToday();
+    double getProfitLastHour();
+    double getProfitLast7Days();
+    double getTotalProfit();
+}
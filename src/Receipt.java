@@ -1,34 +1,44 @@
-import java.io.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import Exceptions.InsufficientQuantityException;
-
-// This class holds the management for the receipt creation
-class Receipt implements Serializable {
-    // Create a unique identifier for the serialized class
-    @Serial
-    private static final long serialVersionUID = 1L;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// This class holds the management for the receipt creation, the receipt is saved in the compact binary format of the
+// receipt codec instead of serializing the whole object with the shop it belongs to
+class Receipt {
     private final int receiptId;
     // The cashiers object
     private final Cashier cashier;
     private final LocalDateTime dateTime;
-    // Map with the goods object and sold goods
-    private final Map<Goods, Integer> soldGoods;
-    // Map with the goods object and the price of the goods
-    private final Map<Goods, Double> goodsPrices;
-    private double totalPrice;
+    // The lines of the receipt in the order they were scanned, the goods, sold quantity and price per piece in minor
+    // units of each line are kept in arrays that grow when a line is added
+    private Goods[] lineGoods;
+    private int[] lineQuantities;
+    private long[] linePrices;
+    private int lineCount;
+    // The total price of the receipt in minor units
+    private long totalPrice;
     private final int shopId;
     private final String shopName;
-    // The shops object
-    private final Shop shop;
-
-    // The names of the folders that the files will be saved and read in
-    private static final String RECEIPT_FOLDER = "Receipts_txt";
-    private static final String SERIALIZED_RECEIPT_FOLDER = "Receipts_serialized";
-    private static final String SHOP_INFO_FOLDER = "Shop_Info";
+    // The currency of the shop the receipt is from
+    private final String currency;
+    // Future that is completed by the receipt writer when the receipt is saved to the disk
+    private final CompletableFuture<Receipt> persisted;
+    // The receipt store of the shop the receipt was sold in and if the receipt was already saved to it, by the receipt
+    // writer or by hand. A receipt that was read back has no store, it is already saved
+    private final ReceiptStore store;
+    private final AtomicBoolean saved;
+
+    // The format of the date on the receipt
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
     public Receipt(int shopId, String shopName, Cashier cashier, int receiptId, Shop shop) {
         // Initialize the instance variables
@@ -37,165 +47,187 @@ class Receipt implements Serializable {
         this.receiptId = receiptId;
         this.cashier = cashier;
         this.dateTime = LocalDateTime.now();
-        this.soldGoods = new HashMap<>();
-        this.goodsPrices = new HashMap<>();
-        this.totalPrice = 0.0;
-        this.shop = shop;
-
-        // If there are no existing folders with this name create them, if the system wasn't able to create
-        // the folders with that name in that directory throw an exception
-        try {
-            File folder = new File(RECEIPT_FOLDER);
-            if (!folder.exists() && !folder.mkdir()) {
-                throw new IOException("Couldn't create the folder: " + RECEIPT_FOLDER);
-            }
+        this.lineGoods = new Goods[4];
+        this.lineQuantities = new int[4];
+        this.linePrices = new long[4];
+        this.totalPrice = 0;
+        this.currency = shop.getCurrency();
+        this.persisted = new CompletableFuture<>();
+        this.store = shop.getReceiptStore();
+        this.saved = new AtomicBoolean();
+    }
 
-            File serializedFolder = new File(SERIALIZED_RECEIPT_FOLDER);
-            if (!serializedFolder.exists() && !serializedFolder.mkdir()) {
-                throw new IOException("Couldn't create the folder: " + SERIALIZED_RECEIPT_FOLDER);
-            }
+    // Create a receipt with all its lines at once, the arrays are used by the receipt as they are
+    Receipt(int shopId, String shopName, String currency, Cashier cashier, int receiptId,
+            Goods[] lineGoods, int[] lineQuantities, long[] linePrices, long totalPrice, ReceiptStore store) {
+        // Initialize the instance variables
+        this.shopId = shopId;
+        this.shopName = shopName;
+        this.currency = currency;
+        this.receiptId = receiptId;
+        this.cashier = cashier;
+        this.dateTime = LocalDateTime.now();
+        this.lineGoods = lineGoods;
+        this.lineQuantities = lineQuantities;
+        this.linePrices = linePrices;
+        this.lineCount = lineGoods.length;
+        this.totalPrice = totalPrice;
+        this.persisted = new CompletableFuture<>();
+        this.store = store;
+        this.saved = new AtomicBoolean();
+    }
 
-            File shopInfoFolder = new File(SHOP_INFO_FOLDER);
-            if (!shopInfoFolder.exists() && !shopInfoFolder.mkdir()) {
-                throw new IOException("Couldn't create the folder: " + SHOP_INFO_FOLDER);
-            }
-        } catch (IOException e) {
-            System.err.println("Error while trying to create folder: " + e.getMessage());
-        }
+    // Create a receipt that was read back from a saved file, it is already saved so its future is completed
+    Receipt(int shopId, String shopName, String currency, Cashier cashier, int receiptId, LocalDateTime dateTime) {
+        // Initialize the instance variables
+        this.shopId = shopId;
+        this.shopName = shopName;
+        this.currency = currency;
+        this.receiptId = receiptId;
+        this.cashier = cashier;
+        this.dateTime = dateTime;
+        this.lineGoods = new Goods[4];
+        this.lineQuantities = new int[4];
+        this.linePrices = new long[4];
+        this.totalPrice = 0;
+        this.persisted = CompletableFuture.completedFuture(this);
+        this.store = null;
+        this.saved = new AtomicBoolean(true);
     }
 
     // Setters for the variables used outside the class
     public int getReceiptId() { return receiptId; }
     public int getShopId() { return shopId; }
     public Cashier getCashier() { return cashier; }
-    public double getTotalPrice() { return totalPrice; }
+    public double getTotalPrice() { return Money.toDouble(totalPrice); }
+    public long getTotalPriceMinor() { return totalPrice; }
     public String getShopName() { return shopName; }
+    public String getCurrency() { return currency; }
+    public LocalDateTime getDateTime() { return dateTime; }
+    // Return the number of lines and the goods, sold quantity and price per piece in minor units of a line
+    public int getLineCount() { return lineCount; }
+    public Goods getLineGoods(int line) { return lineGoods[line]; }
+    public int getLineQuantity(int line) { return lineQuantities[line]; }
+    public long getLinePriceMinor(int line) { return linePrices[line]; }
+
+    // Return the sold goods with their quantities in the order they were scanned, the map is created on each call
+    public Map<Goods, Integer> getSoldGoods() {
+        Map<Goods, Integer> soldGoods = new LinkedHashMap<>();
+        for (int line = 0; line < lineCount; line++) {
+            soldGoods.merge(lineGoods[line], lineQuantities[line], Integer::sum);
+        }
+        return Collections.unmodifiableMap(soldGoods);
+    }
+
+    // Return the price the goods were sold for in minor units and throw an exception if they are not on the receipt
+    public long getGoodsPriceMinor(Goods goods) {
+        for (int line = 0; line < lineCount; line++) {
+            if (lineGoods[line].getId() == goods.getId()) return linePrices[line];
+        }
+        throw new IllegalArgumentException("Goods not on the receipt: " + goods.getName());
+    }
+    // Return the future that is completed when the receipt is saved
+    public CompletableFuture<Receipt> getPersistedFuture() { return persisted; }
     // Format the date and return it
     public String getFormatDate() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
-        return dateTime.format(formatter);
+        return dateTime.format(DATE_FORMAT);
     }
 
-    // Add the sale of the goods
-    public void addSaleOfGoods(Goods goods, int saleQantity, double price) throws InsufficientQuantityException {
-        // Check if the stores goods quantity is less than the sold goods
-        if (goods.getQuantity() < saleQantity) {
-            // Throw custom exception in case there are not enough goods to sell
-            throw new InsufficientQuantityException("Insufficient quantity of these goods: " + goods.getName());
-        }
-        // Remove the sold quantity from the quantity that the store has
-        goods.setQuantity(goods.getQuantity() - saleQantity);
-        // Add the quantity of sold current goods in the map
-        soldGoods.put(goods, saleQantity);
-        // Add the price of the goods in the prices map
-        goodsPrices.put(goods, price);
+    // Add the sale of the goods, the sold quantity must already be reserved from the stock of the shop. Goods that are
+    // already on the receipt with the same price get the quantity added to their line
+    public void addSaleOfGoods(Goods goods, int saleQantity, long price) {
         // Add the price of all sold goods to the total price
-        totalPrice += price * saleQantity;
+        totalPrice = Math.addExact(totalPrice, Money.multiply(price, saleQantity));
+        for (int line = 0; line < lineCount; line++) {
+            if (lineGoods[line].getId() == goods.getId() && linePrices[line] == price) {
+                lineQuantities[line] = Math.addExact(lineQuantities[line], saleQantity);
+                return;
+            }
+        }
+        // Add a new line at the end, the arrays are doubled when they are full
+        if (lineCount == lineGoods.length) {
+            int capacity = Math.max(4, lineCount * 2);
+            lineGoods = Arrays.copyOf(lineGoods, capacity);
+            lineQuantities = Arrays.copyOf(lineQuantities, capacity);
+            linePrices = Arrays.copyOf(linePrices, capacity);
+        }
+        lineGoods[lineCount] = goods;
+        lineQuantities[lineCount] = saleQantity;
+        linePrices[lineCount] = price;
+        lineCount++;
     }
 
-    // Save receipt to a TXT file inside the Receipts_txt folder
+    // Save the receipt to the receipt store of its shop, as a TXT file inside the Receipts_txt folder with the files
+    // backend. The store keeps the text and the encoded form of a receipt together, so both are saved and the call of
+    // serializeReceiptObj that goes with it does nothing
     public void saveReceiptToFile() throws IOException {
-        // Build the file and file name path
-        String fileName = RECEIPT_FOLDER + "/" + shopId + "_receipt_" + receiptId + ".txt";
-
-        // Create and open the file to start writhing in it
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            // Write the needed information in the file
-            writer.write(shopName + "\n");
-            writer.write("Receipt number: " + receiptId + "\n");
-            writer.write("Cashier ID: " + cashier.getId() + ", Name: " + cashier.getName() + "\n");
-            writer.write("Date: " + getFormatDate() + "\n");
-            writer.write("Items: \n");
-
-            // For each sold item in the goods map write its sold quantity and its price it was sold for
-            for (Map.Entry<Goods, Integer> entry : soldGoods.entrySet()) {
-                // Get the current key from the map which is the object of the goods class
-                Goods goods = entry.getKey();
-                // Get the sold quantity of the current goods
-                int quantity = entry.getValue();
-                // Get the price of the current goods object
-                double eachGoodsPrice = goodsPrices.get(goods);
-                // Write the information of each sold item to the file
-                writer.write(goods.getName() + " x " + quantity + " # " + String.format("%.2f", eachGoodsPrice) + " " + shop.getCurrency() + " per piece\n");
-            }
-            // Write the total price of all the sold goods in the file
-            writer.write("Total Price: " + String.format("%.2f", totalPrice) + " " + shop.getCurrency() + "\n");
-        }
+        save();
     }
 
-    // Read each of the details from of receipt txt file from the Receipts_txt folder
+    // Return the text of the receipt as it is printed in the txt file
+    public byte[] toTextBytes() {
+        return ReceiptRenderer.forCurrentThread().toBytes(this);
+    }
+
+    // Read each of the details of the receipt from the receipt store, or from the receipt txt file in the Receipts_txt
+    // folder for the receipts that were saved before the store existed
     public static void readReceiptFromFile(int shopId, int receiptId) throws IOException {
-        // Create the file path using the passed Shop ID and receipt ID
-        String fileName = RECEIPT_FOLDER + "/" + shopId + "_receipt_" + receiptId + ".txt";
-        // Open the file and start reading from it
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            // Create a string that holds each line of the file as it is read
-            String line;
-            // Loop read and store each line in the line string from the file until there are no more lines in the file
-            while ((line = reader.readLine()) != null) {
-                // Print the current line in the console
-                System.out.println(line);
-            }
+        // Print the text from the store, from a mapped segment, an archive block, memory or a txt file
+        ByteBuffer text = Storage.receipts().readText(shopId, receiptId);
+        if (text == null && Storage.backend() == StorageBackend.SEGMENTS) {
+            text = Storage.files().readText(shopId, receiptId);
         }
+        if (text == null) {
+            throw new FileNotFoundException("The receipt " + receiptId + " of the shop " + shopId + " is not saved");
+        }
+        byte[] bytes = new byte[text.remaining()];
+        text.get(bytes);
+        System.out.print(new String(bytes, StandardCharsets.UTF_8));
     }
 
-    // This method creates the serialized file that stores the object of the receipt
+    // This method saves the receipt in the binary format of the receipt codec to the receipt store of its shop, as a
+    // serialized file inside the Receipts_serialized folder with the files backend. It does nothing if the receipt
+    // was already saved by saveReceiptToFile or by the receipt writer
     public void serializeReceiptObj() throws IOException {
-        // Build the file path for the current file
-        String fileName = SERIALIZED_RECEIPT_FOLDER + "/" + shopId + "_receipt_" + receiptId + ".ser";
-        // Open the .ser type file and store the object of the receipt in it
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fileName))) {
-            oos.writeObject(this);
-        }
+        save();
     }
 
-    public static Receipt deserializeReceiptObj(int shopId, int receiptId) throws IOException, ClassNotFoundException {
-        // Build the file path for the current file based on the passed shop ID and receipt ID
-        String fileName = SERIALIZED_RECEIPT_FOLDER + "/" + shopId + "_receipt_" + receiptId + ".ser";
-        // Open the file to read the serialized object and return the object
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
-            return (Receipt) ois.readObject();
-        }
+    // Return true if the caller is the first to save the receipt, the receipt writer and the saves by hand call it
+    // so a receipt is saved to the store only once
+    boolean claimSave() {
+        return saved.compareAndSet(false, true);
     }
 
-    // This method updates the earned value of the shop in the shop information file
-    public void updateShopTotalValue(int currentReceiptNumber) throws IOException {
-        // Create the file path using the current shop ID
-        String fileName = SHOP_INFO_FOLDER + "/" + shopId + "_shop_info.txt";
-
-        // Call method that gets the last total value that was printed in the shop info file
-        double currentTotalValue = getLastShopTotalValue(fileName);
-        // and add the new receipt total price to the last total value of the shop
-        currentTotalValue += totalPrice;
-
-        // Update the new count of the total printed receipt numbers and the new updated total earned value of the shop
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            writer.write(shopName + "\n");
-            writer.write("Receipt number: " + currentReceiptNumber + "\n");
-            writer.write("Total value: " + String.format("%.2f", currentTotalValue) + " " + shop.getCurrency() + "\n");
-        }
+    // Let the receipt be saved again after the claimed save failed
+    void saveFailed() {
+        saved.set(false);
     }
 
-    private double getLastShopTotalValue(String fileName) throws IOException {
-        double lastTotalValue = 0.0;
-        File file = new File(fileName);
-
-        // If the file with that directory exists open it
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Read each file of the line until the line that starts with Total value:  is found
-                    if (line.startsWith("Total value: ")) {
-                        // Trim the line until only the total value is left and turn it into a double
-                        String totalValueStr = line.split(":")[1].trim().replace(" BGN", "").trim();
-                        lastTotalValue = Double.parseDouble(totalValueStr);
-                    }
-                }
-            }
+    // Save the text and the encoded form of the receipt as one record, only the first call saves it
+    private void save() throws IOException {
+        if (!claimSave()) return;
+        try {
+            // Write the text from the buffer of the renderer without copying it
+            ReceiptRenderer renderer = ReceiptRenderer.forCurrentThread();
+            int textLength = renderer.render(this);
+            store.save(shopId, receiptId, renderer.buffer(), textLength, ReceiptCodec.encode(this));
+            // Throw the exception in case the receipt couldn't be saved, the next call tries again
+        } catch (IOException | RuntimeException e) {
+            saveFailed();
+            throw e;
         }
+    }
 
-        // Return the updated current total value of the shop
-        return lastTotalValue;
+    public static Receipt deserializeReceiptObj(int shopId, int receiptId) throws IOException, ClassNotFoundException {
+        // Decode the receipt from the store, or from its .ser file if it was saved before the store existed, old files
+        // with a Java serialized receipt are converted
+        ByteBuffer encoded = Storage.receipts().readEncoded(shopId, receiptId);
+        if (encoded == null && Storage.backend() == StorageBackend.SEGMENTS) {
+            encoded = Storage.files().readEncoded(shopId, receiptId);
+        }
+        if (encoded == null) {
+            throw new FileNotFoundException("The receipt " + receiptId + " of the shop " + shopId + " is not saved");
+        }
+        return ReceiptCodec.read(encoded);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// This class holds the totals of scanned receipts grouped by goods, shop, cashier and time. Each grouping is a table
+// with a column for each key and each measure in primitive arrays, so adding a receipt only adds to a few numbers and
+// the aggregates of two scans are merged by adding their tables. It is the visitor the receipt codec scans into
+class ReceiptAggregates implements ReceiptCodec.Visitor {
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    // The groupings of the receipts, the totals of the goods come from the lines and the rest from the whole receipts
+    enum Dimension {
+        // Key: goods ID
+        GOODS,
+        // Key: shop ID
+        SHOP,
+        // Keys: shop ID and cashier ID
+        CASHIER,
+        // Key: hours from the epoch
+        HOUR,
+        // Key: days from the epoch
+        DAY,
+        // Key: months from the epoch, the year times 12 plus the month from 0
+        MONTH,
+        // Keys: goods ID and days from the epoch
+        GOODS_DAY,
+        // Keys: goods ID and months from the epoch
+        GOODS_MONTH,
+        // Keys: shop ID and cashier ID packed in one number, and hours from the epoch
+        CASHIER_HOUR
+    }
+
+    // The numbers that are added up for each group
+    enum Measure {
+        RECEIPTS,
+        ITEMS,
+        REVENUE
+    }
+
+    private final GroupTable[] tables;
+    private long receiptCount;
+
+    // The receipt that is being scanned and its totals
+    private int shopId;
+    private int cashierId;
+    private long hour;
+    private long day;
+    private long month;
+    private long receiptItems;
+    private long receiptRevenue;
+    // The month of the last day, the receipts of the same day don't have to work out the month again
+    private long lastDay = Long.MIN_VALUE;
+    private long lastMonth;
+
+    public ReceiptAggregates() {
+        // Initialize an empty table for each grouping
+        this.tables = new GroupTable[Dimension.values().length];
+        for (Dimension dimension : Dimension.values()) {
+            tables[dimension.ordinal()] = new GroupTable();
+        }
+    }
+
+    public long getReceiptCount() { return receiptCount; }
+
+    @Override
+    public void receipt(int shopId, int receiptId, int cashierId, long epochSecond) {
+        this.shopId = shopId;
+        this.cashierId = cashierId;
+        this.hour = Math.floorDiv(epochSecond, SECONDS_PER_HOUR);
+        this.day = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        if (day != lastDay) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            lastDay = day;
+            lastMonth = date.getYear() * 12L + date.getMonthValue() - 1;
+        }
+        this.month = lastMonth;
+        this.receiptItems = 0;
+        this.receiptRevenue = 0;
+    }
+
+    @Override
+    public void line(int goodsId, int quantity, long price) {
+        long revenue = Money.multiply(price, quantity);
+        receiptItems += quantity;
+        receiptRevenue += revenue;
+        table(Dimension.GOODS).add(goodsId, 0, 1, quantity, revenue);
+        table(Dimension.GOODS_DAY).add(goodsId, day, 1, quantity, revenue);
+        table(Dimension.GOODS_MONTH).add(goodsId, month, 1, quantity, revenue);
+    }
+
+    @Override
+    public void end() {
+        receiptCount++;
+        table(Dimension.SHOP).add(shopId, 0, 1, receiptItems, receiptRevenue);
+        table(Dimension.CASHIER).add(shopId, cashierId, 1, receiptItems, receiptRevenue);
+        table(Dimension.HOUR).add(hour, 0, 1, receiptItems, receiptRevenue);
+        table(Dimension.DAY).add(day, 0, 1, receiptItems, receiptRevenue);
+        table(Dimension.MONTH).add(month, 0, 1, receiptItems, receiptRevenue);
+        table(Dimension.CASHIER_HOUR).add(cashierKey(shopId, cashierId), hour, 1, receiptItems, receiptRevenue);
+    }
+
+    // Add the totals of the other aggregates to these
+    public void merge(ReceiptAggregates other) {
+        receiptCount += other.receiptCount;
+        for (int table = 0; table < tables.length; table++) {
+            tables[table].merge(other.tables[table]);
+        }
+    }
+
+    // Return the group with the passed keys or null if no receipt was added to it
+    public Row get(Dimension dimension, long key1, long key2) {
+        return table(dimension).get(key1, key2);
+    }
+
+    // Return all groups of the dimension ordered by their keys
+    public List<Row> rows(Dimension dimension) {
+        List<Row> rows = table(dimension).rows();
+        rows.sort(Comparator.comparingLong(Row::getKey1).thenComparingLong(Row::getKey2));
+        return rows;
+    }
+
+    // Return the groups of the dimension with the biggest value of the measure, at most the passed number of them
+    public List<Row> top(Dimension dimension, Measure measure, int limit) {
+        List<Row> rows = table(dimension).rows();
+        rows.sort(Comparator.comparingLong((Row row) -> row.get(measure)).reversed()
+                .thenComparingLong(Row::getKey1).thenComparingLong(Row::getKey2));
+        return rows.subList(0, Math.min(limit, rows.size()));
+    }
+
+    // Pack the shop ID and the cashier ID in one key
+    public static long cashierKey(int shopId, int cashierId) {
+        return (long) shopId << 32 | (cashierId & 0xFFFFFFFFL);
+    }
+
+    private GroupTable table(Dimension dimension) {
+        return tables[dimension.ordinal()];
+    }
+
+    // One group of a dimension with its keys and totals
+    static final class Row {
+        private final long key1;
+        private final long key2;
+        private final long receipts;
+        private final long items;
+        private final long revenue;
+
+        private Row(long key1, long key2, long receipts, long items, long revenue) {
+            this.key1 = key1;
+            this.key2 = key2;
+            this.receipts = receipts;
+            this.items = items;
+            this.revenue = revenue;
+        }
+
+        public long getKey1() { return key1; }
+        public long getKey2() { return key2; }
+        public long getReceipts() { return receipts; }
+        public long getItems() { return items; }
+        // The revenue is in minor units
+        public long getRevenue() { return revenue; }
+
+        public long get(Measure measure) {
+            return switch (measure) {
+                case RECEIPTS -> receipts;
+                case ITEMS -> items;
+                case REVENUE -> revenue;
+            };
+        }
+    }
+
+    // Open addressing hash table from two keys to the totals of the group, each key and each measure is its own column
+    private static final class GroupTable {
+        private long[] keys1 = new long[16];
+        private long[] keys2 = new long[16];
+        private long[] receipts = new long[16];
+        private long[] items = new long[16];
+        private long[] revenue = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        void add(long key1, long key2, long addedReceipts, long addedItems, long addedRevenue) {
+            int slot = slotOf(key1, key2);
+            if (!used[slot]) {
+                if ((size + 1) * 2 > used.length) {
+                    grow();
+                    slot = slotOf(key1, key2);
+                }
+                used[slot] = true;
+                keys1[slot] = key1;
+                keys2[slot] = key2;
+                size++;
+            }
+            receipts[slot] += addedReceipts;
+            items[slot] += addedItems;
+            revenue[slot] += addedRevenue;
+        }
+
+        void merge(GroupTable other) {
+            for (int slot = 0; slot < other.used.length; slot++) {
+                if (other.used[slot]) {
+                    add(other.keys1[slot], other.keys2[slot], other.receipts[slot], other.items[slot], other.revenue[slot]);
+                }
+            }
+        }
+
+        Row get(long key1, long key2) {
+            int slot = slotOf(key1, key2);
+            return used[slot] ? row(slot) : null;
+        }
+
+        List<Row> rows() {
+            List<Row> rows = new ArrayList<>(size);
+            for (int slot = 0; slot < used.length; slot++) {
+                if (used[slot]) {
+                    rows.add(row(slot));
+                }
+            }
+            return rows;
+        }
+
+        private Row row(int slot) {
+            return new Row(keys1[slot], keys2[slot], receipts[slot], items[slot], revenue[slot]);
+        }
+
+        // Return the slot of the keys or the empty slot where they would be added
+        private int slotOf(long key1, long key2) {
+            int mask = used.length - 1;
+            int slot = hash(key1, key2) & mask;
+            while (used[slot] && (keys1[slot] != key1 || keys2[slot] != key2)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Double the size of the table and put all groups again
+        private void grow() {
+            long[] oldKeys1 = keys1;
+            long[] oldKeys2 = keys2;
+            long[] oldReceipts = receipts;
+            long[] oldItems = items;
+            long[] oldRevenue = revenue;
+            boolean[] oldUsed = used;
+            int capacity = oldUsed.length * 2;
+            keys1 = new long[capacity];
+            keys2 = new long[capacity];
+            receipts = new long[capacity];
+            items = new long[capacity];
+            revenue = new long[capacity];
+            used = new boolean[capacity];
+            for (int slot = 0; slot < oldUsed.length; slot++) {
+                if (!oldUsed[slot]) continue;
+                int newSlot = slotOf(oldKeys1[slot], oldKeys2[slot]);
+                used[newSlot] = true;
+                keys1[newSlot] = oldKeys1[slot];
+                keys2[newSlot] = oldKeys2[slot];
+                receipts[newSlot] = oldReceipts[slot];
+                items[newSlot] = oldItems[slot];
+                revenue[newSlot] = oldRevenue[slot];
+            }
+        }
+
+        private static int hash(long key1, long key2) {
+            long h = (key1 * 0x9E3779B97F4A7C15L) ^ (key2 * 0xC2B2AE3D27D4EB4FL);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
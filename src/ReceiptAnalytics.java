@@ -0,0 +1,327 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// This class answers questions about all the saved receipts, like the revenue per goods per day or the items per
+// cashier per hour. The segments of the receipt store and the old .ser files are scanned in parallel on a fork-join
+// pool, the records of a segment are split between the tasks and only the numbers of each receipt are decoded into
+// the columnar aggregates. Every refresh only scans what was added since the last one: the segments that were sealed
+// are never read again and the active segment is read from where the last refresh stopped. The archives of the store
+// are scanned block by block, without the receipts that were already scanned in the segment they were made from.
+// Only the receipts on the disk can be scanned: with the segment store its segments, its archives and the old .ser
+// files, with the file store the .ser files it writes. The memory store is not accepted
+class ReceiptAnalytics {
+    // The most records one task scans before it splits its work in two
+    private static final int RECORDS_PER_TASK = 16_384;
+    // The most old .ser files one task reads before it splits its work in two
+    private static final int FILES_PER_TASK = 64;
+
+    // The segment store, or null when the receipts are in the .ser files of the file store and only they are scanned
+    private final ReceiptSegmentStore store;
+    private final Path legacyFolder;
+    private final ForkJoinPool pool;
+    private final ReceiptAggregates totals;
+    // How far each segment without a footer was scanned and the sorted keys of the receipts that were scanned in it,
+    // the segments that were scanned completely, and the old files that were scanned or skipped because their receipt
+    // is also in the segment store, so every old file is looked up in the store only once
+    private final Map<Path, Integer> scannedOffsets;
+    private final Map<Path, long[]> scannedKeys;
+    private final Set<Path> sealedSegments;
+    private final Set<Path> scannedLegacyFiles;
+    private final Set<Path> scannedArchives;
+
+    public ReceiptAnalytics(ReceiptStore store) {
+        this(store, store instanceof FileReceiptStore files ? files.getEncodedFolder() : DataFolder.resolve(FileReceiptStore.ENCODED_FOLDER),
+                ForkJoinPool.commonPool());
+    }
+
+    public ReceiptAnalytics(ReceiptStore store, Path legacyFolder, ForkJoinPool pool) {
+        // Use IllegalArgumentException for the exception as the receipts of the store can't be scanned
+        if (!(store instanceof ReceiptSegmentStore) && !(store instanceof FileReceiptStore)) {
+            throw new IllegalArgumentException("Only the receipts of the segment store and the file store can be scanned");
+        }
+        // Initialize the instance variables, nothing is scanned until the first refresh
+        this.store = store instanceof ReceiptSegmentStore segments ? segments : null;
+        this.legacyFolder = legacyFolder;
+        this.pool = pool;
+        this.totals = new ReceiptAggregates();
+        this.scannedOffsets = new HashMap<>();
+        this.scannedKeys = new HashMap<>();
+        this.sealedSegments = new HashSet<>();
+        this.scannedLegacyFiles = new HashSet<>();
+        this.scannedArchives = new HashSet<>();
+    }
+
+    // Scan the receipts that were saved since the last refresh and add them to the totals, the first refresh scans
+    // the whole archive. Return the number of receipts that were added
+    public synchronized long refresh() throws IOException {
+        List<RecursiveTask<ReceiptAggregates>> tasks = new ArrayList<>();
+        for (Path path : store != null ? store.segmentPaths() : List.<Path>of()) {
+            if (sealedSegments.contains(path)) continue;
+            ByteBuffer segment = map(path);
+            int scannedOffset = scannedOffsets.getOrDefault(path, 0);
+
+            long[] offsets = ReceiptSegmentStore.footerOffsets(segment);
+            if (offsets != null) {
+                // The footer of a sealed segment has the offsets of all its records, only the new ones are scanned
+                int first = 0;
+                while (first < offsets.length && offsets[first] < scannedOffset) {
+                    first++;
+                }
+                tasks.add(new SegmentScan(segment, offsets, first, offsets.length));
+                sealedSegments.add(path);
+                scannedOffsets.remove(path);
+                scannedKeys.remove(path);
+            } else {
+                // Walk the headers of the records of the active segment to find where each of them starts, and keep
+                // their keys in case the segment is archived before the next refresh sees its footer
+                long[] keys = scannedKeys.getOrDefault(path, new long[0]);
+                int keyCount = keys.length;
+                long[] newOffsets = new long[1024];
+                int count = 0;
+                int offset = scannedOffset;
+                for (int next = ReceiptSegmentStore.nextRecord(segment, offset); next >= 0; next = ReceiptSegmentStore.nextRecord(segment, offset)) {
+                    if (count == newOffsets.length) {
+                        newOffsets = Arrays.copyOf(newOffsets, count * 2);
+                    }
+                    if (keyCount == keys.length) {
+                        keys = Arrays.copyOf(keys, Math.max(keyCount * 2, 1024));
+                    }
+                    newOffsets[count++] = offset;
+                    keys[keyCount++] = ReceiptIndex.key(segment.getInt(offset + Integer.BYTES), segment.getInt(offset + Integer.BYTES * 2));
+                    offset = next;
+                }
+                tasks.add(new SegmentScan(segment, newOffsets, 0, count));
+                scannedOffsets.put(path, offset);
+                keys = Arrays.copyOf(keys, keyCount);
+                Arrays.sort(keys);
+                scannedKeys.put(path, keys);
+            }
+        }
+
+        // A segment that was scanned whole is not scanned again in its archive, the archive of a segment that was only
+        // scanned up to some record when it was still active is scanned without the receipts that were scanned in it
+        for (ReceiptArchive archive : store != null ? store.archives() : List.<ReceiptArchive>of()) {
+            if (!scannedArchives.add(archive.getPath())) continue;
+            String fileName = archive.getPath().getFileName().toString();
+            Path segmentPath = archive.getPath().resolveSibling(fileName.substring(0, fileName.length() - ".arc".length()) + ".seg");
+            if (sealedSegments.remove(segmentPath)) continue;
+            scannedOffsets.remove(segmentPath);
+            tasks.add(new ArchiveScan(archive, scannedKeys.remove(segmentPath), 0, archive.getBlockCount()));
+        }
+
+        List<Path> legacyFiles = newLegacyFiles();
+        if (!legacyFiles.isEmpty()) {
+            tasks.add(new LegacyScan(legacyFiles, 0, legacyFiles.size()));
+        }
+
+        ReceiptAggregates added = pool.invoke(new RecursiveTask<>() {
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected ReceiptAggregates compute() {
+                return mergeAll(invokeAll(tasks));
+            }
+        });
+        totals.merge(added);
+        return added.getReceiptCount();
+    }
+
+    // Return the number of receipts that were scanned
+    public synchronized long getReceiptCount() { return totals.getReceiptCount(); }
+
+    // Return the group with the passed keys or null if there are no receipts in it
+    public synchronized ReceiptAggregates.Row get(ReceiptAggregates.Dimension dimension, long key1, long key2) {
+        return totals.get(dimension, key1, key2);
+    }
+
+    // Return all groups of the dimension ordered by their keys
+    public synchronized List<ReceiptAggregates.Row> rows(ReceiptAggregates.Dimension dimension) {
+        return totals.rows(dimension);
+    }
+
+    // Return the groups of the dimension with the biggest value of the measure, at most the passed number of them
+    public synchronized List<ReceiptAggregates.Row> top(ReceiptAggregates.Dimension dimension, ReceiptAggregates.Measure measure, int limit) {
+        return totals.top(dimension, measure, limit);
+    }
+
+    // Return the old .ser files that were not seen yet and are not also in the segment store, every file is seen once
+    private List<Path> newLegacyFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(legacyFolder)) return files;
+        // The highest receipt ID of each shop in the segment store is kept in memory, a receipt above it is not in the
+        // store and is not looked up in the archives
+        Map<Integer, Integer> highestStoredIds = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(legacyFolder, "*_receipt_*.ser")) {
+            for (Path path : stream) {
+                if (!scannedLegacyFiles.add(path)) continue;
+                // The name of the file is the shop ID and the receipt ID, a receipt that is also in the store is only counted once
+                String fileName = path.getFileName().toString();
+                int separator = fileName.indexOf("_receipt_");
+                try {
+                    int shopId = Integer.parseInt(fileName.substring(0, separator));
+                    int receiptId = Integer.parseInt(fileName.substring(separator + "_receipt_".length(), fileName.length() - ".ser".length()));
+                    if (store != null && receiptId <= highestStoredIds.computeIfAbsent(shopId, store::highestReceiptId)
+                            && store.contains(shopId, receiptId)) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static ReceiptAggregates mergeAll(Iterable<? extends RecursiveTask<ReceiptAggregates>> tasks) {
+        ReceiptAggregates merged = new ReceiptAggregates();
+        for (RecursiveTask<ReceiptAggregates> task : tasks) {
+            merged.merge(task.join());
+        }
+        return merged;
+    }
+
+    // Scans the records of a segment that start at the offsets between from and to
+    private static final class SegmentScan extends RecursiveTask<ReceiptAggregates> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer segment;
+        private final long[] offsets;
+        private final int from;
+        private final int to;
+
+        SegmentScan(ByteBuffer segment, long[] offsets, int from, int to) {
+            this.segment = segment;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReceiptAggregates compute() {
+            if (to - from > RECORDS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                return mergeAll(invokeAll(List.of(new SegmentScan(segment, offsets, from, middle), new SegmentScan(segment, offsets, middle, to))));
+            }
+            ReceiptAggregates aggregates = new ReceiptAggregates();
+            for (int record = from; record < to; record++) {
+                try {
+                    ReceiptCodec.scan(ReceiptSegmentStore.encodedAt(segment, (int) offsets[record]), aggregates);
+                    // Skip a record that can't be decoded, the rest of the segment is still scanned
+                } catch (IOException e) {
+                    System.err.println("Error couldn't scan the receipt at " + offsets[record] + ": " + e.getMessage());
+                }
+            }
+            return aggregates;
+        }
+    }
+
+    // Scans the records of the blocks of an archive between from and to, without the receipts whose keys are in the
+    // sorted skipped keys
+    private static final class ArchiveScan extends RecursiveTask<ReceiptAggregates> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        // The most blocks one task decompresses before it splits its work in two
+        private static final int BLOCKS_PER_TASK = 64;
+
+        private final ReceiptArchive archive;
+        private final long[] skippedKeys;
+        private final int from;
+        private final int to;
+
+        ArchiveScan(ReceiptArchive archive, long[] skippedKeys, int from, int to) {
+            this.archive = archive;
+            this.skippedKeys = skippedKeys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReceiptAggregates compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                return mergeAll(invokeAll(List.of(new ArchiveScan(archive, skippedKeys, from, middle), new ArchiveScan(archive, skippedKeys, middle, to))));
+            }
+            ReceiptAggregates aggregates = new ReceiptAggregates();
+            for (int block = from; block < to; block++) {
+                try {
+                    ByteBuffer records = archive.block(block);
+                    for (long offset : ReceiptArchive.recordOffsets(records)) {
+                        if (skippedKeys != null && Arrays.binarySearch(skippedKeys, ReceiptIndex.key(
+                                records.getInt((int) offset + Integer.BYTES), records.getInt((int) offset + Integer.BYTES * 2))) >= 0) {
+                            continue;
+                        }
+                        ReceiptCodec.scan(ReceiptSegmentStore.encodedAt(records, (int) offset), aggregates);
+                    }
+                    // Skip a block that can't be decompressed or decoded, the rest of the archive is still scanned
+                } catch (IOException e) {
+                    System.err.println("Error couldn't scan block " + block + " of " + archive.getPath() + ": " + e.getMessage());
+                }
+            }
+            return aggregates;
+        }
+    }
+
+    // Reads the old .ser files between from and to, they are encoded receipts or Java serialized receipts
+    private static final class LegacyScan extends RecursiveTask<ReceiptAggregates> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        LegacyScan(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReceiptAggregates compute() {
+            if (to - from > FILES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                return mergeAll(invokeAll(List.of(new LegacyScan(files, from, middle), new LegacyScan(files, middle, to))));
+            }
+            ReceiptAggregates aggregates = new ReceiptAggregates();
+            for (int file = from; file < to; file++) {
+                try {
+                    byte[] bytes = Files.readAllBytes(files.get(file));
+                    if (bytes.length >= Integer.BYTES && ByteBuffer.wrap(bytes).getInt() == ReceiptCodec.MAGIC) {
+                        ReceiptCodec.scan(ByteBuffer.wrap(bytes), aggregates);
+                    } else {
+                        ReceiptCodec.scan(ReceiptCodec.read(new ByteArrayInputStream(bytes)), aggregates);
+                    }
+                    // Skip a file that can't be read, the rest of the files are still scanned
+                } catch (IOException | ClassNotFoundException e) {
+                    System.err.println("Error couldn't scan the receipt file " + files.get(file) + ": " + e.getMessage());
+                }
+            }
+            return aggregates;
+        }
+    }
+}
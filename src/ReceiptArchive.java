@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// This class holds one archive of the receipt store, the records of a sealed segment sorted by shop ID and receipt ID
+// and compressed with deflate in blocks of a few receipts. The footer at the end of the archive is a sparse index with
+// the first and last key, the place and the checksum of each block, so finding a receipt is a binary search over the
+// blocks and only the one block that holds the receipt is decompressed. The records keep the format of the segment
+// records, so the receipt store reads them the same way
+final class ReceiptArchive {
+    // Size of one index entry: first key, last key, offset, compressed length, uncompressed length and checksum of the
+    // compressed block, and of the footer end: block count, index offset, record count and magic
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES * 3 + Integer.BYTES * 3;
+    private static final int FOOTER_END_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES * 2;
+    private static final int FOOTER_MAGIC = 0x41524348;
+
+    private final Path path;
+    private final MappedByteBuffer bytes;
+    private final int recordCount;
+    // The sparse index, one entry for each block
+    private final long[] firstKeys;
+    private final long[] lastKeys;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] uncompressedLengths;
+    private final int[] checksums;
+    // The block that was decompressed last, reprints of receipts close to each other don't decompress it again
+    private int cachedBlock = -1;
+    private ByteBuffer cachedRecords;
+
+    private ReceiptArchive(Path path, MappedByteBuffer bytes, int blockCount, int recordCount) {
+        // Initialize the instance variables with an empty index of the passed size
+        this.path = path;
+        this.bytes = bytes;
+        this.recordCount = recordCount;
+        this.firstKeys = new long[blockCount];
+        this.lastKeys = new long[blockCount];
+        this.offsets = new long[blockCount];
+        this.compressedLengths = new int[blockCount];
+        this.uncompressedLengths = new int[blockCount];
+        this.checksums = new int[blockCount];
+    }
+
+    // Open the archive and read its sparse index, throw an exception if the archive has no complete footer
+    public static ReceiptArchive open(Path path) throws IOException {
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int end = bytes.limit();
+        if (end < FOOTER_END_SIZE || bytes.getInt(end - Integer.BYTES) != FOOTER_MAGIC) {
+            throw new IOException("The receipt archive " + path.getFileName() + " has no footer");
+        }
+        int blockCount = bytes.getInt(end - FOOTER_END_SIZE);
+        long indexOffset = bytes.getLong(end - FOOTER_END_SIZE + Integer.BYTES);
+        int recordCount = bytes.getInt(end - Integer.BYTES * 2);
+        if (blockCount < 0 || indexOffset + (long) blockCount * INDEX_ENTRY_SIZE + FOOTER_END_SIZE != end) {
+            throw new IOException("The footer of the receipt archive " + path.getFileName() + " is damaged");
+        }
+
+        ReceiptArchive archive = new ReceiptArchive(path, bytes, blockCount, recordCount);
+        for (int block = 0; block < blockCount; block++) {
+            int position = (int) indexOffset + block * INDEX_ENTRY_SIZE;
+            archive.firstKeys[block] = bytes.getLong(position);
+            archive.lastKeys[block] = bytes.getLong(position + Long.BYTES);
+            archive.offsets[block] = bytes.getLong(position + Long.BYTES * 2);
+            archive.compressedLengths[block] = bytes.getInt(position + Long.BYTES * 3);
+            archive.uncompressedLengths[block] = bytes.getInt(position + Long.BYTES * 3 + Integer.BYTES);
+            archive.checksums[block] = bytes.getInt(position + Long.BYTES * 3 + Integer.BYTES * 2);
+        }
+        return archive;
+    }
+
+    // Write the records of the segment that start at the offsets to a new archive with at most the passed number of
+    // records in each block. A block only holds the receipts of one shop, so the key range of a block never covers the
+    // receipts of its shop that are in another archive. The archive is written to a temporary file first and then moved to its place in one step, so an
+    // archive that exists is always complete. Return the size of the archive
+    public static long write(Path path, ByteBuffer segment, long[] recordOffsets, int recordsPerBlock) throws IOException {
+        // Sort the records by their key, a receipt that was written more than once keeps its last record
+        long[][] records = new long[recordOffsets.length][];
+        for (int record = 0; record < recordOffsets.length; record++) {
+            int offset = (int) recordOffsets[record];
+            records[record] = new long[]{ReceiptIndex.key(segment.getInt(offset + Integer.BYTES), segment.getInt(offset + Integer.BYTES * 2)), offset};
+        }
+        Arrays.sort(records, Comparator.comparingLong((long[] record) -> record[0]));
+        int count = 0;
+        for (int record = 0; record < records.length; record++) {
+            if (count > 0 && records[count - 1][0] == records[record][0]) {
+                count--;
+            }
+            records[count++] = records[record];
+        }
+
+        // Find the first record of each block, a new block starts when the block is full or the shop changes
+        int[] blockStarts = new int[count + 1];
+        int blockCount = 0;
+        for (int record = 0; record < count; record++) {
+            if (blockCount == 0 || record - blockStarts[blockCount - 1] == recordsPerBlock
+                    || records[record][0] >>> 32 != records[record - 1][0] >>> 32) {
+                blockStarts[blockCount++] = record;
+            }
+        }
+        blockStarts[blockCount] = count;
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE + FOOTER_END_SIZE);
+            byte[] block = new byte[64 * 1024];
+            byte[] compressed = new byte[64 * 1024];
+            long position = 0;
+            for (int blockNumber = 0; blockNumber < blockCount; blockNumber++) {
+                int first = blockStarts[blockNumber];
+                int last = blockStarts[blockNumber + 1];
+                // Copy the records of the block one after the other as they are in the segment
+                int length = 0;
+                for (int record = first; record < last; record++) {
+                    int offset = (int) records[record][1];
+                    int recordSize = ReceiptSegmentStore.nextRecord(segment, offset) - offset;
+                    if (length + recordSize > block.length) {
+                        block = Arrays.copyOf(block, Math.max(block.length * 2, length + recordSize));
+                    }
+                    segment.get(offset, block, length, recordSize);
+                    length += recordSize;
+                }
+
+                // Compress the block, the buffer grows until the whole compressed block fits in it
+                deflater.reset();
+                deflater.setInput(block, 0, length);
+                deflater.finish();
+                int compressedLength = 0;
+                while (!deflater.finished()) {
+                    if (compressedLength == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(compressed, 0, compressedLength);
+
+                ByteBuffer output = ByteBuffer.wrap(compressed, 0, compressedLength);
+                while (output.hasRemaining()) {
+                    channel.write(output);
+                }
+                index.putLong(records[first][0]).putLong(records[last - 1][0]).putLong(position)
+                        .putInt(compressedLength).putInt(length).putInt((int) crc.getValue());
+                position += compressedLength;
+            }
+            index.putInt(blockCount).putLong(position).putInt(count).putInt(FOOTER_MAGIC);
+            index.flip();
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            channel.force(true);
+            position = channel.size();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return position;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public Path getPath() { return path; }
+    public int getRecordCount() { return recordCount; }
+    public int getBlockCount() { return firstKeys.length; }
+    // Return the key of the last receipt of the block
+    public long getLastKey(int block) { return lastKeys[block]; }
+
+    // Return a view of the record of the receipt in its decompressed block, or null if the receipt is not in the archive
+    public ByteBuffer readRecord(int shopId, int receiptId) throws IOException {
+        long key = ReceiptIndex.key(shopId, receiptId);
+        // Find the last block that starts at or before the key
+        int low = 0;
+        int high = firstKeys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstKeys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int block = high;
+        if (block < 0 || key > lastKeys[block]) return null;
+
+        ByteBuffer records = cachedBlock(block);
+        for (int offset = 0; offset >= 0 && offset < records.limit(); offset = ReceiptSegmentStore.nextRecord(records, offset)) {
+            if (records.getInt(offset + Integer.BYTES) == shopId && records.getInt(offset + Integer.BYTES * 2) == receiptId) {
+                int next = ReceiptSegmentStore.nextRecord(records, offset);
+                return records.duplicate().position(offset).limit(next - Integer.BYTES).slice();
+            }
+        }
+        return null;
+    }
+
+    // Return the decompressed records of the block, the block is decompressed on each call so more threads can scan
+    // the archive at the same time
+    public ByteBuffer block(int block) throws IOException {
+        ByteBuffer compressed = bytes.duplicate().position((int) offsets[block]).limit((int) offsets[block] + compressedLengths[block]).slice();
+        CRC32 crc = new CRC32();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != checksums[block]) {
+            throw new IOException("Block " + block + " of the receipt archive " + path.getFileName() + " is damaged");
+        }
+        byte[] records = new byte[uncompressedLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < records.length && !inflater.finished()) {
+                int inflated = inflater.inflate(records, length, records.length - length);
+                if (inflated == 0 && inflater.needsInput()) break;
+                length += inflated;
+            }
+            if (length != records.length) {
+                throw new IOException("Block " + block + " of the receipt archive " + path.getFileName() + " is too short");
+            }
+            // Throw an exception in case the block is not valid deflate data
+        } catch (DataFormatException e) {
+            throw new IOException("Block " + block + " of the receipt archive " + path.getFileName() + " is damaged", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(records).asReadOnlyBuffer();
+    }
+
+    // Return the decompressed records of the block and keep them for the next receipt that is read from the same block
+    private synchronized ByteBuffer cachedBlock(int block) throws IOException {
+        if (block != cachedBlock) {
+            cachedRecords = block(block);
+            cachedBlock = block;
+        }
+        return cachedRecords.duplicate();
+    }
+
+    // Return the offsets of the records in the decompressed block
+    static long[] recordOffsets(ByteBuffer records) {
+        long[] recordOffsets = new long[64];
+        int count = 0;
+        for (int offset = 0; offset >= 0 && offset < records.limit(); offset = ReceiptSegmentStore.nextRecord(records, offset)) {
+            if (count == recordOffsets.length) {
+                recordOffsets = Arrays.copyOf(recordOffsets, count * 2);
+            }
+            recordOffsets[count++] = offset;
+        }
+        return Arrays.copyOf(recordOffsets, count);
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+// This class collects the lines of a basket while it is checked out. The goods, sold quantities and prices per piece
+// are kept in arrays that are reused for every basket the thread checks out, the same goods scanned again are added to
+// their first line so the lines stay in the order they were first scanned, and the receipt is created with arrays of
+// exactly the number of lines
+final class ReceiptBuilder {
+    // Each thread checks out its baskets in its own builder
+    private static final ThreadLocal<ReceiptBuilder> BUILDERS = ThreadLocal.withInitial(ReceiptBuilder::new);
+
+    private Goods[] goods;
+    private int[] quantities;
+    private long[] prices;
+    private int lineCount;
+    // The total price of the priced lines in minor units and the number of items on them
+    private long totalPrice;
+    private long soldItems;
+
+    ReceiptBuilder() {
+        // Initialize the arrays big enough for a basket with a few lines, they grow when a basket doesn't fit
+        this.goods = new Goods[8];
+        this.quantities = new int[8];
+        this.prices = new long[8];
+    }
+
+    // Return the empty builder of the current thread
+    public static ReceiptBuilder forCurrentThread() {
+        ReceiptBuilder builder = BUILDERS.get();
+        builder.clear();
+        return builder;
+    }
+
+    public int getLineCount() { return lineCount; }
+    public Goods goodsAt(int line) { return goods[line]; }
+    public int quantityAt(int line) { return quantities[line]; }
+    public long priceAt(int line) { return prices[line]; }
+    public long getTotalPrice() { return totalPrice; }
+    public long getSoldItems() { return soldItems; }
+
+    // Add the quantity of the goods to the basket and return its line, goods that are already in the basket get the
+    // quantity added to their line. Only positive quantities can be sold, a negative one would add to the stock
+    public int addLine(Goods lineGoods, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("The quantity of " + lineGoods.getName() + " must be positive: " + quantity);
+        }
+        for (int line = 0; line < lineCount; line++) {
+            if (goods[line].getId() == lineGoods.getId()) {
+                quantities[line] = Math.addExact(quantities[line], quantity);
+                return line;
+            }
+        }
+        if (lineCount == goods.length) {
+            goods = Arrays.copyOf(goods, lineCount * 2);
+            quantities = Arrays.copyOf(quantities, lineCount * 2);
+            prices = Arrays.copyOf(prices, lineCount * 2);
+        }
+        goods[lineCount] = lineGoods;
+        quantities[lineCount] = quantity;
+        prices[lineCount] = 0;
+        return lineCount++;
+    }
+
+    // Set the price per piece of the line and add the line to the total price and the sold items, each line is priced once
+    public void setPrice(int line, long price) {
+        prices[line] = price;
+        totalPrice = Math.addExact(totalPrice, Money.multiply(price, quantities[line]));
+        soldItems += quantities[line];
+    }
+
+    // Create the receipt with the lines of the basket
+    public Receipt build(Shop shop, Cashier cashier, int receiptId) {
+        return new Receipt(shop.getId(), shop.getName(), shop.getCurrency(), cashier, receiptId,
+                Arrays.copyOf(goods, lineCount), Arrays.copyOf(quantities, lineCount), Arrays.copyOf(prices, lineCount), totalPrice,
+                shop.getReceiptStore());
+    }
+
+    // Empty the builder, the goods are cleared so the builder doesn't keep them alive
+    private void clear() {
+        Arrays.fill(goods, 0, lineCount, null);
+        lineCount = 0;
+        totalPrice = 0;
+        soldItems = 0;
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// This class holds the compact binary format of the receipts. Only the header of the receipt and its lines are written,
+// the numbers are written as variable length integers so small ids and quantities take one byte. The format starts with
+// a magic number and a version so it can be told apart from the old Java serialized receipts and changed later.
+// Version 1 wrote the prices as doubles, version 2 writes them as variable length minor units
+final class ReceiptCodec {
+    // The first bytes of every encoded receipt and the version of the format that is written
+    static final int MAGIC = 0x52435054;
+    static final int VERSION = 2;
+    private static final int DOUBLE_PRICE_VERSION = 1;
+    // Java serialization streams start with these two bytes, they are used to recognise the old .ser files
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    private ReceiptCodec() {
+    }
+
+    // Encode the receipt to a new byte array
+    public static byte[] encode(Receipt receipt) {
+        Encoder encoder = new Encoder();
+        encoder.writeInt(MAGIC);
+        encoder.writeVarInt(VERSION);
+        encoder.writeVarInt(receipt.getShopId());
+        encoder.writeString(receipt.getShopName());
+        encoder.writeString(receipt.getCurrency());
+        encoder.writeVarInt(receipt.getReceiptId());
+        encoder.writeVarInt(receipt.getCashier().getId());
+        encoder.writeString(receipt.getCashier().getName());
+        // Write the date as seconds and nanoseconds, the time zone is not part of the receipt date
+        LocalDateTime dateTime = receipt.getDateTime();
+        encoder.writeVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+        encoder.writeVarInt(dateTime.getNano());
+
+        // Write the id, name, sold quantity and price per piece of each line
+        encoder.writeVarInt(receipt.getLineCount());
+        for (int line = 0; line < receipt.getLineCount(); line++) {
+            Goods goods = receipt.getLineGoods(line);
+            encoder.writeVarInt(goods.getId());
+            encoder.writeString(goods.getName());
+            encoder.writeVarInt(receipt.getLineQuantity(line));
+            encoder.writeVarLong(receipt.getLinePriceMinor(line));
+        }
+        return encoder.toByteArray();
+    }
+
+    // Encode the receipt and write it to the stream
+    public static void encode(Receipt receipt, OutputStream out) throws IOException {
+        out.write(encode(receipt));
+    }
+
+    // Decode a receipt from the buffer, the position of the buffer is moved after the receipt
+    public static Receipt decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("The data is not an encoded receipt");
+            }
+            int version = readVarInt(buffer);
+            if (version != VERSION && version != DOUBLE_PRICE_VERSION) {
+                throw new IOException("Unsupported receipt format version: " + version);
+            }
+            int shopId = readVarInt(buffer);
+            String shopName = readString(buffer);
+            String currency = readString(buffer);
+            int receiptId = readVarInt(buffer);
+            Cashier cashier = new Cashier(readVarInt(buffer), readString(buffer), 0);
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(readVarLong(buffer), readVarInt(buffer), ZoneOffset.UTC);
+
+            Receipt receipt = new Receipt(shopId, shopName, currency, cashier, receiptId, dateTime);
+            int lineCount = readVarInt(buffer);
+            for (int line = 0; line < lineCount; line++) {
+                int goodsId = readVarInt(buffer);
+                String goodsName = readString(buffer);
+                int quantity = readVarInt(buffer);
+                long price = version == DOUBLE_PRICE_VERSION ? Money.fromDouble(Double.longBitsToDouble(buffer.getLong())) : readVarLong(buffer);
+                // The receipt only knows the id and the name of the sold goods
+                receipt.addSaleOfGoods(Goods.ofReceiptLine(goodsId, goodsName), quantity, price);
+            }
+            return receipt;
+            // Throw an exception in case the data ends before the whole receipt is read
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The encoded receipt is incomplete");
+        }
+    }
+
+    // Read the numbers of the receipt in the buffer and pass them to the visitor without creating the receipt, the
+    // names are skipped without decoding them. The position of the buffer is moved after the receipt
+    public static void scan(ByteBuffer buffer, Visitor visitor) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("The data is not an encoded receipt");
+            }
+            int version = readVarInt(buffer);
+            if (version != VERSION && version != DOUBLE_PRICE_VERSION) {
+                throw new IOException("Unsupported receipt format version: " + version);
+            }
+            int shopId = readVarInt(buffer);
+            skipString(buffer);
+            skipString(buffer);
+            int receiptId = readVarInt(buffer);
+            int cashierId = readVarInt(buffer);
+            skipString(buffer);
+            long epochSecond = readVarLong(buffer);
+            readVarLong(buffer);
+
+            visitor.receipt(shopId, receiptId, cashierId, epochSecond);
+            int lineCount = readVarInt(buffer);
+            for (int line = 0; line < lineCount; line++) {
+                int goodsId = readVarInt(buffer);
+                skipString(buffer);
+                int quantity = readVarInt(buffer);
+                long price = version == DOUBLE_PRICE_VERSION ? Money.fromDouble(Double.longBitsToDouble(buffer.getLong())) : readVarLong(buffer);
+                visitor.line(goodsId, quantity, price);
+            }
+            visitor.end();
+            // Throw an exception in case the data ends before the whole receipt is read
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The encoded receipt is incomplete");
+        }
+    }
+
+    // Pass the fields of an already decoded receipt to the visitor the same way as scan
+    public static void scan(Receipt receipt, Visitor visitor) {
+        visitor.receipt(receipt.getShopId(), receipt.getReceiptId(), receipt.getCashier().getId(), receipt.getDateTime().toEpochSecond(ZoneOffset.UTC));
+        for (int line = 0; line < receipt.getLineCount(); line++) {
+            visitor.line(receipt.getLineGoods(line).getId(), receipt.getLineQuantity(line), receipt.getLinePriceMinor(line));
+        }
+        visitor.end();
+    }
+
+    // Read a receipt from the stream, the old Java serialized receipts are converted to the current receipt class
+    public static Receipt read(InputStream in) throws IOException, ClassNotFoundException {
+        return read(ByteBuffer.wrap(in.readAllBytes()));
+    }
+
+    // Read a receipt from the buffer, the old Java serialized receipts are copied out of it and converted
+    public static Receipt read(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+        int start = buffer.position();
+        if (buffer.remaining() >= 2 && ((buffer.get(start) & 0xFF) << 8 | (buffer.get(start + 1) & 0xFF)) == JAVA_SERIALIZATION_MAGIC) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return LegacyReceiptReader.read(bytes);
+        }
+        return decode(buffer);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        if (value != (int) value) {
+            throw new IOException("The encoded number is too big");
+        }
+        return (int) value;
+    }
+
+    // Read a variable length number where each byte holds 7 bits and the highest bit says if more bytes follow
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte current = buffer.get();
+            result |= (long) (current & 0x7F) << shift;
+            if (current >= 0) {
+                // The numbers are zigzag encoded so small negative numbers also take few bytes
+                return (result >>> 1) ^ -(result & 1);
+            }
+        }
+        throw new IOException("The encoded number is too long");
+    }
+
+    private static void skipString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("The encoded text is incomplete");
+        }
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("The encoded text is incomplete");
+        }
+        // Decode the text directly from the array of the buffer when it has one
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] encoded = new byte[length];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    // Receives the numbers of a scanned receipt, first the header, then each line and then the end of the receipt.
+    // The date is in seconds from the epoch of the local date and time of the receipt
+    interface Visitor {
+        void receipt(int shopId, int receiptId, int cashierId, long epochSecond);
+        void line(int goodsId, int quantity, long price);
+        void end();
+    }
+
+    // Growable byte array that the receipt is encoded in
+    private static final class Encoder {
+        private byte[] bytes = new byte[128];
+        private int length;
+
+        void writeInt(int value) {
+            ensureCapacity(Integer.BYTES);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(Long.BYTES);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value);
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[length++] = (byte) zigzag;
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
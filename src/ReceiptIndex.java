@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+// This class holds the index of the receipt store that maps a shop ID and receipt ID to the place of the receipt in
+// the segment files. Both are packed in primitive longs and kept in an open addressing hash table so there is no boxing
+class ReceiptIndex {
+    // The value that marks an empty slot, the stored locations are never negative
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private long[] locations;
+    private int size;
+
+    public ReceiptIndex() {
+        // Initialize the arrays with the smallest table
+        this.keys = new long[64];
+        this.locations = new long[64];
+        Arrays.fill(locations, EMPTY);
+    }
+
+    public int size() { return size; }
+
+    // Pack the shop ID and the receipt ID in one key
+    public static long key(int shopId, int receiptId) {
+        return (long) shopId << 32 | (receiptId & 0xFFFFFFFFL);
+    }
+
+    // Pack the number of the segment and the offset of the record in it in one location
+    public static long location(int segment, long offset) {
+        return (long) segment << 40 | offset;
+    }
+
+    public static int segmentOf(long location) { return (int) (location >>> 40); }
+    public static long offsetOf(long location) { return location & ((1L << 40) - 1); }
+
+    // Return the location of the receipt or -1 if the receipt is not in the index
+    public long get(int shopId, int receiptId) {
+        long key = key(shopId, receiptId);
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (locations[slot] == EMPTY) return EMPTY;
+            if (keys[slot] == key) return locations[slot];
+        }
+    }
+
+    // Add the receipt with its location to the index or replace the location if it was already added
+    public void put(int shopId, int receiptId, long location) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        long key = key(shopId, receiptId);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (locations[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (locations[slot] == EMPTY) size++;
+        keys[slot] = key;
+        locations[slot] = location;
+    }
+
+    // Double the size of the table and put all entries again
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldLocations = locations;
+        keys = new long[oldKeys.length * 2];
+        locations = new long[oldKeys.length * 2];
+        Arrays.fill(locations, EMPTY);
+        int mask = keys.length - 1;
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldLocations[index] == EMPTY) continue;
+            int slot = hash(oldKeys[index]) & mask;
+            while (locations[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[index];
+            locations[slot] = oldLocations[index];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,199 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+// This class writes the text of a receipt straight into a byte buffer that is reused for every receipt of the thread.
+// The fixed parts of the text are encoded once, the numbers, amounts and the date are written digit by digit and the
+// names of the goods and the cashier keep their encoded bytes, so rendering a receipt doesn't create any Strings.
+// The bytes are the same as the text of the receipt files that were written before, so they can be read the same way
+final class ReceiptRenderer {
+    // The fixed parts of the receipt text
+    private static final byte[] RECEIPT_NUMBER = ascii("Receipt number: ");
+    private static final byte[] CASHIER_ID = ascii("Cashier ID: ");
+    private static final byte[] CASHIER_NAME = ascii(", Name: ");
+    private static final byte[] DATE = ascii("Date: ");
+    private static final byte[] ITEMS = ascii("Items: \n");
+    private static final byte[] QUANTITY = ascii(" x ");
+    private static final byte[] PRICE = ascii(" # ");
+    private static final byte[] PER_PIECE = ascii(" per piece\n");
+    private static final byte[] TOTAL_PRICE = ascii("Total Price: ");
+
+    // Each thread renders its receipts in its own renderer
+    private static final ThreadLocal<ReceiptRenderer> RENDERERS = ThreadLocal.withInitial(ReceiptRenderer::new);
+
+    private byte[] buffer;
+    private int length;
+
+    // The encoded shop name and currency of the last receipt, they only change when the thread renders another shop
+    private String shopName;
+    private byte[] shopNameBytes;
+    private String currency;
+    private byte[] currencyBytes;
+
+    private ReceiptRenderer() {
+        // Initialize the buffer big enough for a receipt with a few items, it grows when a receipt doesn't fit
+        this.buffer = new byte[1024];
+    }
+
+    // Return the renderer of the current thread
+    public static ReceiptRenderer forCurrentThread() {
+        return RENDERERS.get();
+    }
+
+    // Return the buffer with the text of the last rendered receipt and the number of bytes of the text in it,
+    // the buffer is overwritten by the next receipt rendered in the same thread
+    public byte[] buffer() { return buffer; }
+    public int length() { return length; }
+
+    // Write the text of the receipt in the buffer and return the number of bytes of the text
+    public int render(Receipt receipt) {
+        length = 0;
+        String currency = receipt.getCurrency();
+        byte[] currencyBytes = currencyBytes(currency);
+
+        // Write the header of the receipt
+        put(shopNameBytes(receipt.getShopName()));
+        put((byte) '\n');
+        put(RECEIPT_NUMBER);
+        putLong(receipt.getReceiptId());
+        put((byte) '\n');
+        put(CASHIER_ID);
+        putLong(receipt.getCashier().getId());
+        put(CASHIER_NAME);
+        put(receipt.getCashier().getNameBytes());
+        put((byte) '\n');
+        put(DATE);
+        putDate(receipt.getDateTime());
+        put((byte) '\n');
+        put(ITEMS);
+
+        // Write each sold item with its sold quantity and the price it was sold for in the order they were scanned
+        for (int line = 0; line < receipt.getLineCount(); line++) {
+            put(receipt.getLineGoods(line).getNameBytes());
+            put(QUANTITY);
+            putLong(receipt.getLineQuantity(line));
+            put(PRICE);
+            putMoney(receipt.getLinePriceMinor(line));
+            put((byte) ' ');
+            put(currencyBytes);
+            put(PER_PIECE);
+        }
+
+        // Write the total price of all the sold goods
+        put(TOTAL_PRICE);
+        putMoney(receipt.getTotalPriceMinor());
+        put((byte) ' ');
+        put(currencyBytes);
+        put((byte) '\n');
+        return length;
+    }
+
+    // Return a copy of the text of the receipt, it is used where the text has to outlive the next render
+    public byte[] toBytes(Receipt receipt) {
+        render(receipt);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private byte[] shopNameBytes(String name) {
+        if (name != shopName) {
+            shopName = name;
+            shopNameBytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+        return shopNameBytes;
+    }
+
+    private byte[] currencyBytes(String name) {
+        if (name != currency) {
+            currency = name;
+            currencyBytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+        return currencyBytes;
+    }
+
+    // Write the date as dd-MM-yyyy HH:mm:ss
+    private void putDate(LocalDateTime dateTime) {
+        putDigits(dateTime.getDayOfMonth(), 2);
+        put((byte) '-');
+        putDigits(dateTime.getMonthValue(), 2);
+        put((byte) '-');
+        putDigits(dateTime.getYear(), 4);
+        put((byte) ' ');
+        putDigits(dateTime.getHour(), 2);
+        put((byte) ':');
+        putDigits(dateTime.getMinute(), 2);
+        put((byte) ':');
+        putDigits(dateTime.getSecond(), 2);
+    }
+
+    // Write the amount in minor units with two decimals like 426.00, the same way as Money.format
+    private void putMoney(long amount) {
+        long units = amount / Money.MINOR_UNITS;
+        int cents = (int) Math.abs(amount % Money.MINOR_UNITS);
+        if (amount < 0 && units == 0) {
+            put((byte) '-');
+        }
+        putLong(units);
+        put((byte) '.');
+        putDigits(cents, 2);
+    }
+
+    // Write the number in decimal, the digits are taken from the negative value so the smallest long works too
+    private void putLong(long value) {
+        if (value < 0) {
+            put((byte) '-');
+        } else {
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int index = length + digits - 1; index >= length; index--) {
+            buffer[index] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    // Write the positive number with at least the passed number of digits, padded with zeros
+    private void putDigits(int value, int width) {
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, width);
+        ensureCapacity(digits);
+        for (int index = length + digits - 1; index >= length; index--) {
+            buffer[index] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void put(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+
+    private void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    // Double the buffer until the passed number of bytes fits after the text, the bigger buffer is kept for later
+    private void ensureCapacity(int count) {
+        if (length + count > buffer.length) {
+            int capacity = buffer.length;
+            while (length + count > capacity) {
+                capacity *= 2;
+            }
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,581 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// This class holds the receipts of all shops in a few large segment files instead of two small files per receipt, it is
+// the memory mapped backend of the receipt store.
+// Each receipt is appended as one record with its text and its encoded form, and the index maps the shop ID and
+// receipt ID to the record. When a segment reaches its size limit a footer with the index entries of the segment is
+// written at its end and a new segment is started, so on startup the index is rebuilt from the footers and only the
+// last segment has to be scanned. The records are read through memory mapped segments without copying them. Sealed
+// segments whose receipts are older than the archive age are moved to compressed archives in the same folder, the
+// receipts in them are read the same way only slower
+class ReceiptSegmentStore implements ReceiptStore {
+    // The name of the folder the segments are saved in and the default size after which a new segment is started
+    static final String SEGMENT_FOLDER = "Receipts_segments";
+    static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    // The system properties with the age in days after which a segment is archived, the minutes between two runs of the
+    // archiving of the default store, an hour by default and 0 runs it never, and the number of receipts in each
+    // compressed block
+    static final String ARCHIVE_AGE_PROPERTY = "shop.archive.ageDays";
+    static final String ARCHIVE_INTERVAL_PROPERTY = "shop.archive.intervalMinutes";
+    static final String ARCHIVE_BLOCK_PROPERTY = "shop.archive.blockSize";
+    static final Duration ARCHIVE_AGE = Duration.ofDays(Long.getLong(ARCHIVE_AGE_PROPERTY, 30));
+    private static final long ARCHIVE_INTERVAL_MINUTES = Long.getLong(ARCHIVE_INTERVAL_PROPERTY, 60);
+    static final int ARCHIVE_BLOCK_SIZE = Integer.getInteger(ARCHIVE_BLOCK_PROPERTY, 64);
+
+    // Size of the record header: magic, shop ID, receipt ID, text length and encoded length, and of the checksum after it
+    static final int RECORD_HEADER_SIZE = Integer.BYTES * 5;
+    static final int RECORD_MAGIC = 0x52454344;
+    // Size of one footer entry: shop ID, receipt ID and offset, and of the footer end: entry count, offset and magic
+    private static final int FOOTER_ENTRY_SIZE = Integer.BYTES * 2 + Long.BYTES;
+    private static final int FOOTER_END_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int FOOTER_MAGIC = 0x464F4F54;
+
+    // The store that the receipts of the program are saved in, it is opened the first time it is needed
+    private static ReceiptSegmentStore defaultStore;
+    private static ScheduledExecutorService archiveExecutor;
+
+    private final Path folder;
+    private final long segmentSize;
+    private final ReceiptIndex index;
+    // The highest receipt ID of each shop in the segments and the archives
+    private final Map<Integer, Integer> highestReceiptIds;
+    // The memory mapped sealed segments that were already read from, each is mapped once as its size doesn't change
+    private final List<MappedByteBuffer> mappedSegments;
+    // The segment that new records are appended to and the index entries of its records for its footer. It is never
+    // mapped because it still grows, its records are read with positional reads on its own read channel
+    private int activeSegment;
+    private FileChannel activeChannel;
+    private FileChannel activeReader;
+    private long activeSize;
+    private final List<long[]> activeEntries;
+    // The archives by the number of the segment they were made from, the segments that were archived while the store
+    // is open and all archives with the newest first for the receipts that are not in the index
+    private final TreeMap<Integer, ReceiptArchive> archives;
+    private final BitSet archivedSegments;
+    private volatile ReceiptArchive[] newestArchivesFirst;
+    // Only one archiving runs at a time
+    private final Object archiveLock = new Object();
+    // Reusable buffer for the record headers, it is only used while holding the lock of the store
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    private ReceiptSegmentStore(Path folder, long segmentSize) {
+        // Initialize the instance variables
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        this.index = new ReceiptIndex();
+        this.highestReceiptIds = new HashMap<>();
+        this.mappedSegments = new ArrayList<>();
+        this.activeEntries = new ArrayList<>();
+        this.archives = new TreeMap<>();
+        this.archivedSegments = new BitSet();
+        this.newestArchivesFirst = new ReceiptArchive[0];
+    }
+
+    // Open the store in the folder and rebuild its index from the segments
+    public static ReceiptSegmentStore open(Path folder, long segmentSize) throws IOException {
+        // The records are read through one mapped buffer per segment, so a segment can't be bigger than a buffer
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The segment size must be between 1 and " + Integer.MAX_VALUE + " bytes");
+        }
+        Files.createDirectories(folder);
+        ReceiptSegmentStore store = new ReceiptSegmentStore(folder, segmentSize);
+        store.rebuildIndex();
+        return store;
+    }
+
+    // Return the store in the segment folder of the working directory, open it the first time it is needed. The old
+    // segments of the default store are archived in the background unless the archive interval is 0
+    public static synchronized ReceiptSegmentStore getDefault() throws IOException {
+        if (defaultStore == null) {
+            defaultStore = open(DataFolder.resolve(SEGMENT_FOLDER), DEFAULT_SEGMENT_SIZE);
+            if (ARCHIVE_INTERVAL_MINUTES > 0) {
+                ReceiptSegmentStore store = defaultStore;
+                archiveExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "receipt-archiver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                archiveExecutor.scheduleWithFixedDelay(() -> {
+                    try {
+                        store.archiveOlderThan(ARCHIVE_AGE, ARCHIVE_BLOCK_SIZE);
+                        // Throw an exception in case the segments couldn't be archived, they are tried again next time
+                    } catch (IOException e) {
+                        System.err.println("Error couldn't archive the receipt segments: " + e.getMessage());
+                    }
+                }, ARCHIVE_INTERVAL_MINUTES, ARCHIVE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+            }
+        }
+        return defaultStore;
+    }
+
+    // Append the text and the encoded form of the receipt as one record, the record is durable after the next sync
+    @Override
+    public void append(int shopId, int receiptId, byte[] text, byte[] encoded) throws IOException {
+        append(shopId, receiptId, text, text.length, encoded);
+    }
+
+    // Save the receipt as one record in the active segment, it is durable after the next sync like the appended records
+    @Override
+    public void save(int shopId, int receiptId, byte[] text, int textLength, byte[] encoded) throws IOException {
+        append(shopId, receiptId, text, textLength, encoded);
+    }
+
+    // Append the record with the text taken from the first bytes of the passed buffer
+    public synchronized void append(int shopId, int receiptId, byte[] text, int textLength, byte[] encoded) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + textLength + encoded.length + Integer.BYTES;
+        // Start a new segment if the record doesn't fit in the current one, a segment always gets at least one record
+        if (activeSize > 0 && activeSize + recordSize > segmentSize) {
+            sealActiveSegment();
+        }
+
+        headerBuffer.clear();
+        headerBuffer.putInt(RECORD_MAGIC).putInt(shopId).putInt(receiptId).putInt(textLength).putInt(encoded.length);
+        headerBuffer.flip();
+        CRC32 crc = new CRC32();
+        crc.update(headerBuffer.array(), 0, RECORD_HEADER_SIZE);
+        crc.update(text, 0, textLength);
+        crc.update(encoded);
+        ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).flip();
+
+        // Write the whole record with one gathering write
+        ByteBuffer[] record = {headerBuffer, ByteBuffer.wrap(text, 0, textLength), ByteBuffer.wrap(encoded), checksum};
+        long offset = activeSize;
+        while (checksum.hasRemaining()) {
+            activeChannel.write(record);
+        }
+        activeSize += recordSize;
+
+        indexRecord(shopId, receiptId, ReceiptIndex.location(activeSegment, offset));
+        activeEntries.add(new long[]{ReceiptIndex.key(shopId, receiptId), offset});
+    }
+
+    // Append all records of the batch, the records that fit in the active segment are written with one write
+    @Override
+    public synchronized void append(Batch batch) throws IOException {
+        int first = 0;
+        while (first < batch.count) {
+            // Start a new segment if the first record doesn't fit in the current one
+            if (activeSize > 0 && activeSize + batch.recordEnd(first) - batch.starts[first] > segmentSize) {
+                sealActiveSegment();
+            }
+            // Take every next record that still fits in the segment, the first one is always taken
+            int start = batch.starts[first];
+            int last = first + 1;
+            while (last < batch.count && activeSize + batch.recordEnd(last) - start <= segmentSize) {
+                last++;
+            }
+            int end = batch.recordEnd(last - 1);
+
+            ByteBuffer bytes = ByteBuffer.wrap(batch.buffer, start, end - start);
+            while (bytes.hasRemaining()) {
+                activeChannel.write(bytes);
+            }
+            for (int record = first; record < last; record++) {
+                long key = batch.keys[record];
+                long offset = activeSize + batch.starts[record] - start;
+                indexRecord((int) (key >>> 32), (int) key, ReceiptIndex.location(activeSegment, offset));
+                activeEntries.add(new long[]{key, offset});
+            }
+            activeSize += end - start;
+            first = last;
+        }
+    }
+
+    // Return the text of the receipt or null if the receipt is not in the store, the buffer is a view of the sealed
+    // segment or a copy of the record of the active segment
+    @Override
+    public ByteBuffer readText(int shopId, int receiptId) throws IOException {
+        ByteBuffer record = readRecord(shopId, receiptId);
+        if (record == null) return null;
+        int textLength = record.getInt(Integer.BYTES * 3);
+        return record.position(RECORD_HEADER_SIZE).limit(RECORD_HEADER_SIZE + textLength).slice();
+    }
+
+    // Return the encoded receipt or null if the receipt is not in the store, the buffer is a view of the sealed segment
+    // or a copy of the record of the active segment
+    @Override
+    public ByteBuffer readEncoded(int shopId, int receiptId) throws IOException {
+        ByteBuffer record = readRecord(shopId, receiptId);
+        if (record == null) return null;
+        int textLength = record.getInt(Integer.BYTES * 3);
+        int encodedLength = record.getInt(Integer.BYTES * 4);
+        int start = RECORD_HEADER_SIZE + textLength;
+        return record.position(start).limit(start + encodedLength).slice();
+    }
+
+    // Force the appended records to the disk
+    @Override
+    public synchronized void sync() throws IOException {
+        activeChannel.force(false);
+    }
+
+    public synchronized int size() { return index.size(); }
+
+    // Return if the receipt is in the store, in one of its segments or in one of its archives
+    @Override
+    public boolean contains(int shopId, int receiptId) throws IOException {
+        return readRecord(shopId, receiptId) != null;
+    }
+
+    @Override
+    public synchronized int highestReceiptId(int shopId) {
+        return highestReceiptIds.getOrDefault(shopId, 0);
+    }
+
+    // Return the paths of all segments in the order they were written, the last one is the active segment
+    public synchronized List<Path> segmentPaths() {
+        List<Path> paths = new ArrayList<>(activeSegment + 1);
+        for (int segment = 0; segment <= activeSegment; segment++) {
+            Path path = segmentPath(segment);
+            if (Files.exists(path)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    // Return the archives of the store ordered by the segments they were made from
+    public synchronized List<ReceiptArchive> archives() {
+        return new ArrayList<>(archives.values());
+    }
+
+    // Move every sealed segment whose newest receipt is older than the passed age to a compressed archive with the
+    // passed number of receipts in each block, and return the number of segments that were archived. The archive is
+    // complete before the segment is deleted, after a crash in between the segment is deleted when the store is opened
+    public int archiveOlderThan(Duration age, int recordsPerBlock) throws IOException {
+        if (recordsPerBlock < 1) {
+            throw new IllegalArgumentException("An archive block must hold at least one receipt");
+        }
+        // The receipts keep their local time as if it was UTC, so the cutoff is compared the same way
+        long cutoff = LocalDateTime.now().minus(age).toEpochSecond(ZoneOffset.UTC);
+        synchronized (archiveLock) {
+            List<Integer> sealedSegments = new ArrayList<>();
+            synchronized (this) {
+                for (int segment = 0; segment < activeSegment; segment++) {
+                    if (!archivedSegments.get(segment) && Files.exists(segmentPath(segment))) {
+                        sealedSegments.add(segment);
+                    }
+                }
+            }
+
+            int archived = 0;
+            for (int segment : sealedSegments) {
+                ByteBuffer bytes;
+                try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                // The records are appended in the order they were sold, so the last record is the newest receipt
+                long[] offsets = footerOffsets(bytes);
+                if (offsets == null || offsets.length == 0 || receiptTime(encodedAt(bytes, (int) offsets[offsets.length - 1])) >= cutoff) continue;
+
+                Path archivePath = archivePath(segment);
+                ReceiptArchive.write(archivePath, bytes, offsets, recordsPerBlock);
+                ReceiptArchive archive = ReceiptArchive.open(archivePath);
+                synchronized (this) {
+                    addArchive(segment, archive);
+                    archivedSegments.set(segment);
+                    if (segment < mappedSegments.size()) {
+                        mappedSegments.set(segment, null);
+                    }
+                }
+                Files.delete(segmentPath(segment));
+                archived++;
+            }
+            return archived;
+        }
+    }
+
+    // Return the offsets of the records from the footer of a sealed segment, or null if the segment has no footer yet
+    static long[] footerOffsets(ByteBuffer segment) {
+        int end = segment.limit();
+        if (end < FOOTER_END_SIZE || segment.getInt(end - Integer.BYTES) != FOOTER_MAGIC) return null;
+        int entryCount = segment.getInt(end - FOOTER_END_SIZE);
+        long footerStart = segment.getLong(end - FOOTER_END_SIZE + Integer.BYTES);
+        if (footerStart + (long) entryCount * FOOTER_ENTRY_SIZE + FOOTER_END_SIZE != end) return null;
+
+        long[] offsets = new long[entryCount];
+        for (int entry = 0; entry < entryCount; entry++) {
+            offsets[entry] = segment.getLong((int) footerStart + entry * FOOTER_ENTRY_SIZE + Long.BYTES);
+        }
+        return offsets;
+    }
+
+    // Return the offset after the record that starts at the offset, or -1 if no complete record starts there.
+    // The checksum is not checked, the records are only read and a torn record at the end is cut off by its length
+    static int nextRecord(ByteBuffer segment, int offset) {
+        if (offset + RECORD_HEADER_SIZE > segment.limit() || segment.getInt(offset) != RECORD_MAGIC) return -1;
+        int bodyLength = segment.getInt(offset + Integer.BYTES * 3) + segment.getInt(offset + Integer.BYTES * 4);
+        int recordSize = RECORD_HEADER_SIZE + bodyLength + Integer.BYTES;
+        if (bodyLength < 0 || offset + recordSize > segment.limit()) return -1;
+        return offset + recordSize;
+    }
+
+    // Return a view of the encoded receipt of the record that starts at the offset
+    static ByteBuffer encodedAt(ByteBuffer segment, int offset) {
+        int textLength = segment.getInt(offset + Integer.BYTES * 3);
+        int encodedLength = segment.getInt(offset + Integer.BYTES * 4);
+        int start = offset + RECORD_HEADER_SIZE + textLength;
+        return segment.duplicate().position(start).limit(start + encodedLength).slice();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        activeReader.close();
+    }
+
+    // Return a view of the whole record of the receipt in its mapped segment or in its decompressed archive block
+    private ByteBuffer readRecord(int shopId, int receiptId) throws IOException {
+        ReceiptArchive[] searched;
+        synchronized (this) {
+            long location = index.get(shopId, receiptId);
+            if (location >= 0 && !archivedSegments.get(ReceiptIndex.segmentOf(location))) {
+                return readSegmentRecord(location);
+            }
+            // The segment of the receipt was archived while the store is open, or the receipt was archived before the
+            // store was opened and is searched in all the archives
+            searched = location >= 0 ? new ReceiptArchive[]{archives.get(ReceiptIndex.segmentOf(location))} : newestArchivesFirst;
+        }
+        // The blocks are decompressed outside the lock of the store so the cashiers are not held up by them
+        for (ReceiptArchive archive : searched) {
+            ByteBuffer record = archive.readRecord(shopId, receiptId);
+            if (record != null) return record;
+        }
+        return null;
+    }
+
+    // Return the whole record at the location, a view of its mapped segment if the segment is sealed or a copy read
+    // from the active segment. It is only called while holding the lock
+    private ByteBuffer readSegmentRecord(long location) throws IOException {
+        int segmentNumber = ReceiptIndex.segmentOf(location);
+        int offset = (int) ReceiptIndex.offsetOf(location);
+        if (segmentNumber == activeSegment) {
+            return readActiveRecord(offset);
+        }
+        MappedByteBuffer segment = mappedSegment(segmentNumber);
+        int recordLength = RECORD_HEADER_SIZE + segment.getInt(offset + Integer.BYTES * 3) + segment.getInt(offset + Integer.BYTES * 4);
+        return segment.duplicate().position(offset).limit(offset + recordLength).slice();
+    }
+
+    // Read the record at the offset of the active segment with two positional reads, first the header for the length
+    // of the record and then the whole record
+    private ByteBuffer readActiveRecord(int offset) throws IOException {
+        headerBuffer.clear();
+        readFully(activeReader, headerBuffer, offset);
+        int recordLength = RECORD_HEADER_SIZE + headerBuffer.getInt(Integer.BYTES * 3) + headerBuffer.getInt(Integer.BYTES * 4);
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        readFully(activeReader, record, offset);
+        return record.flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The receipt segment ends before the end of the record");
+            }
+            position += read;
+        }
+    }
+
+    // Add the archive of the segment and put it first in the archives that are searched
+    private void addArchive(int segment, ReceiptArchive archive) {
+        archives.put(segment, archive);
+        // The receipts of an archive that was opened with the store are not in the index, the last key of each block
+        // is enough to know the highest receipt ID of every shop in it
+        for (int block = 0; block < archive.getBlockCount(); block++) {
+            long key = archive.getLastKey(block);
+            highestReceiptIds.merge((int) (key >>> 32), (int) key, Math::max);
+        }
+        newestArchivesFirst = archives.descendingMap().values().toArray(new ReceiptArchive[0]);
+    }
+
+    // Put the location of the record in the index and keep the highest receipt ID of its shop
+    private void indexRecord(int shopId, int receiptId, long location) {
+        index.put(shopId, receiptId, location);
+        highestReceiptIds.merge(shopId, receiptId, Math::max);
+    }
+
+    // Return the time of the receipt in seconds from the epoch
+    private static long receiptTime(ByteBuffer encoded) throws IOException {
+        long[] time = new long[1];
+        ReceiptCodec.scan(encoded, new ReceiptCodec.Visitor() {
+            @Override
+            public void receipt(int shopId, int receiptId, int cashierId, long epochSecond) {
+                time[0] = epochSecond;
+            }
+
+            @Override
+            public void line(int goodsId, int quantity, long price) {
+            }
+
+            @Override
+            public void end() {
+            }
+        });
+        return time[0];
+    }
+
+    // Return the mapped sealed segment, it is mapped the first time it is read from
+    private MappedByteBuffer mappedSegment(int segment) throws IOException {
+        while (mappedSegments.size() <= segment) {
+            mappedSegments.add(null);
+        }
+        MappedByteBuffer mapped = mappedSegments.get(segment);
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mappedSegments.set(segment, mapped);
+        }
+        return mapped;
+    }
+
+    // Write the footer with the index entries of the active segment at its end and start a new segment
+    private void sealActiveSegment() throws IOException {
+        ByteBuffer footer = ByteBuffer.allocate(activeEntries.size() * FOOTER_ENTRY_SIZE + FOOTER_END_SIZE);
+        for (long[] entry : activeEntries) {
+            footer.putLong(entry[0]).putLong(entry[1]);
+        }
+        footer.putInt(activeEntries.size()).putLong(activeSize).putInt(FOOTER_MAGIC);
+        footer.flip();
+        while (footer.hasRemaining()) {
+            activeChannel.write(footer);
+        }
+        activeChannel.force(false);
+        activeChannel.close();
+        activeReader.close();
+        openSegment(activeSegment + 1);
+    }
+
+    // Open the archives, read the index entries from the footer of every sealed segment and scan the records of the
+    // last segment
+    private void rebuildIndex() throws IOException {
+        // A segment that also has an archive was archived just before a crash, the archive is complete so the segment is deleted
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "segment_*.arc")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                int segment = Integer.parseInt(fileName.substring("segment_".length(), fileName.length() - ".arc".length()));
+                addArchive(segment, ReceiptArchive.open(path));
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "segment_*.seg")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                segments.add(Integer.parseInt(fileName.substring("segment_".length(), fileName.length() - ".seg".length())));
+            }
+        }
+        segments.sort(null);
+
+        boolean isLastSealed = true;
+        int lastSegment = 0;
+        long lastValidSize = 0;
+        for (int segment : segments) {
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                isLastSealed = readFooter(segment, bytes);
+                if (!isLastSealed) {
+                    activeEntries.clear();
+                    lastValidSize = scanRecords(segment, bytes);
+                }
+            }
+            lastSegment = segment;
+        }
+
+        if (segments.isEmpty()) {
+            // Continue after the last archived segment, the numbers of the segments are never used again
+            openSegment(archives.isEmpty() ? 0 : archives.lastKey() + 1);
+        } else if (isLastSealed) {
+            openSegment(lastSegment + 1);
+        } else {
+            // Drop a record that was cut off by a crash and continue appending to the last segment
+            try (FileChannel channel = FileChannel.open(segmentPath(lastSegment), StandardOpenOption.WRITE)) {
+                channel.truncate(lastValidSize);
+            }
+            activeSegment = lastSegment;
+            activeChannel = FileChannel.open(segmentPath(lastSegment), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            activeReader = FileChannel.open(segmentPath(lastSegment), StandardOpenOption.READ);
+            activeSize = lastValidSize;
+        }
+    }
+
+    // Read the index entries from the footer of the segment, return false if the segment has no footer
+    private boolean readFooter(int segment, ByteBuffer bytes) {
+        int end = bytes.limit();
+        if (end < FOOTER_END_SIZE || bytes.getInt(end - Integer.BYTES) != FOOTER_MAGIC) return false;
+        int entryCount = bytes.getInt(end - FOOTER_END_SIZE);
+        long footerStart = bytes.getLong(end - FOOTER_END_SIZE + Integer.BYTES);
+        if (footerStart + (long) entryCount * FOOTER_ENTRY_SIZE + FOOTER_END_SIZE != end) return false;
+
+        for (int entry = 0; entry < entryCount; entry++) {
+            int position = (int) footerStart + entry * FOOTER_ENTRY_SIZE;
+            long key = bytes.getLong(position);
+            indexRecord((int) (key >>> 32), (int) key, ReceiptIndex.location(segment, bytes.getLong(position + Long.BYTES)));
+        }
+        return true;
+    }
+
+    // Add every complete record of the segment to the index and return the size of the segment that holds them
+    private long scanRecords(int segment, ByteBuffer bytes) {
+        int offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= bytes.limit() && bytes.getInt(offset) == RECORD_MAGIC) {
+            int shopId = bytes.getInt(offset + Integer.BYTES);
+            int receiptId = bytes.getInt(offset + Integer.BYTES * 2);
+            int bodyLength = bytes.getInt(offset + Integer.BYTES * 3) + bytes.getInt(offset + Integer.BYTES * 4);
+            int recordSize = RECORD_HEADER_SIZE + bodyLength + Integer.BYTES;
+            if (bodyLength < 0 || offset + recordSize > bytes.limit()) break;
+
+            // Check the checksum so a record that was only partly written is not used
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate().position(offset).limit(offset + RECORD_HEADER_SIZE + bodyLength));
+            if ((int) crc.getValue() != bytes.getInt(offset + RECORD_HEADER_SIZE + bodyLength)) break;
+
+            indexRecord(shopId, receiptId, ReceiptIndex.location(segment, offset));
+            activeEntries.add(new long[]{ReceiptIndex.key(shopId, receiptId), offset});
+            offset += recordSize;
+        }
+        return offset;
+    }
+
+    private void openSegment(int segment) throws IOException {
+        activeSegment = segment;
+        activeChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeReader = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+        activeSize = activeChannel.size();
+        activeEntries.clear();
+    }
+
+    private Path segmentPath(int segment) {
+        return folder.resolve(String.format("segment_%08d.seg", segment));
+    }
+
+    private Path archivePath(int segment) {
+        return folder.resolve(String.format("segment_%08d.arc", segment));
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// This class holds the receipt numbers and the total value of a shop in memory. The next receipt number is given
+// out atomically so more cashiers never get the same number, and every sold receipt is later written to the journal
+// of the shop by the receipt writer so the numbers and the total value can be recovered after a restart
+class ReceiptSequencer implements AutoCloseable {
+    // Declare the last given receipt number and the total value of all sold receipts in minor units
+    private final AtomicInteger receiptNumber;
+    private final LongAdder totalValue;
+    // Declare the journal that makes the sold receipts durable, it is null if the journal couldn't be opened
+    private final ShopStateStore.Journal journal;
+
+    private ReceiptSequencer(ShopStateStore.Journal journal, int receiptNumber, long totalValue) {
+        // Initialize the instance variables
+        this.journal = journal;
+        this.receiptNumber = new AtomicInteger(receiptNumber);
+        this.totalValue = new LongAdder();
+        this.totalValue.add(totalValue);
+    }
+
+    // Open the journal of the shop in the store and continue from the receipt number and total value recovered from it.
+    // The receipt writer saves a receipt in the receipt store before its journal record, so after a crash between the
+    // two the receipt store can hold receipts the journal doesn't know. They are journaled again from the store and
+    // the numbers continue after the highest of them, so no receipt number is given out twice
+    public static ReceiptSequencer open(ShopStateStore store, ReceiptStore receiptStore, int shopId, String shopName, String currency) {
+        ShopStateStore.Journal journal;
+        try {
+            journal = store.openJournal(shopId, shopName, currency);
+            // Throw an exception in case the journal couldn't be opened and continue without saving the receipts
+        } catch (IOException e) {
+            System.err.println("Error couldn't open the journal of the shop " + e.getMessage());
+            journal = null;
+        }
+        int receiptNumber = journal != null ? journal.getReceiptNumber() : 0;
+        long totalValue = journal != null ? journal.getTotalValue() : 0;
+        int storedReceiptNumber = 0;
+        try {
+            storedReceiptNumber = receiptStore.highestReceiptId(shopId);
+            for (int missed = receiptNumber + 1; missed <= storedReceiptNumber; missed++) {
+                // The numbers that were given back or whose receipts failed to save are not in the store
+                ByteBuffer encoded = receiptStore.readEncoded(shopId, missed);
+                if (encoded == null) continue;
+                long receiptTotalPrice = ReceiptCodec.read(encoded).getTotalPriceMinor();
+                if (journal != null) {
+                    journal.append(missed, receiptTotalPrice);
+                }
+                totalValue += receiptTotalPrice;
+            }
+            if (journal != null && storedReceiptNumber > receiptNumber) {
+                journal.sync();
+            }
+            // Throw an exception in case the receipts the journal missed couldn't be read or journaled, their income
+            // is missing but their numbers are still not given out again
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            System.err.println("Error couldn't recover the receipts the journal of the shop missed " + e.getMessage());
+        }
+        receiptNumber = Math.max(receiptNumber, storedReceiptNumber);
+        return new ReceiptSequencer(journal, receiptNumber, totalValue);
+    }
+
+    // Return the number for the next receipt
+    public int nextReceiptNumber() {
+        return receiptNumber.incrementAndGet();
+    }
+
+    // Take the passed number of receipt numbers as one range and return the first of them
+    public int nextReceiptNumbers(int count) {
+        return receiptNumber.getAndAdd(count) + 1;
+    }
+
+    // Give back the range of receipt numbers that starts with the passed number when its receipts couldn't be saved, it
+    // only works if no numbers were taken after the range, otherwise the numbers stay unused so no number is given twice
+    public boolean giveBack(int firstReceiptNumber, int count) {
+        return receiptNumber.compareAndSet(firstReceiptNumber + count - 1, firstReceiptNumber - 1);
+    }
+
+    // Add the total price of a sold receipt to the total value in memory
+    public void commit(long receiptTotalPrice) {
+        totalValue.add(receiptTotalPrice);
+    }
+
+    // Write a sold receipt to the journal, the record is durable only after the next sync
+    public void append(int soldReceiptNumber, long receiptTotalPrice) throws IOException {
+        if (journal != null) {
+            journal.append(soldReceiptNumber, receiptTotalPrice);
+        }
+    }
+
+    // Write the buying price of delivered goods or the salary of a new cashier to the journal, they are durable after the
+    // next sync like the sold receipts
+    public void appendCostOfGoods(long cost) throws IOException {
+        if (journal != null) {
+            journal.appendCostOfGoods(cost);
+        }
+    }
+
+    public void appendSalary(long salary) throws IOException {
+        if (journal != null) {
+            journal.appendSalary(salary);
+        }
+    }
+
+    // Force the records written to the journal to the disk
+    public void sync() throws IOException {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    public int getReceiptNumber() { return receiptNumber.get(); }
+    public long getTotalValue() { return totalValue.sum(); }
+    // Return the costs of the goods and the salaries that were written to the journal, 0 without a journal
+    public long getJournaledCostOfGoods() { return journal != null ? journal.getCostOfGoods() : 0; }
+    public long getJournaledSalaries() { return journal != null ? journal.getSalaries() : 0; }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// The place the sold receipts are saved in, each receipt with its printed text and its encoded form. The receipt
+// writer appends the receipts in batches and forces them to the disk with sync, the receipts are read back by the shop
+// ID and receipt ID. The receipts are kept in memory, in a txt and a .ser file each or in memory mapped segments, see
+// StorageBackend
+interface ReceiptStore extends AutoCloseable {
+    // Append all records of the batch, they are durable after the next sync
+    void append(Batch batch) throws IOException;
+
+    // Append the text and the encoded form of one receipt
+    default void append(int shopId, int receiptId, byte[] text, byte[] encoded) throws IOException {
+        Batch batch = new Batch();
+        batch.add(shopId, receiptId, text, text.length, encoded);
+        append(batch);
+    }
+
+    // Save one receipt outside the receipt writer, with the text taken from the first bytes of the passed buffer. The
+    // receipt is not forced to the disk and nothing is left for the next sync to close
+    default void save(int shopId, int receiptId, byte[] text, int textLength, byte[] encoded) throws IOException {
+        Batch batch = new Batch();
+        batch.add(shopId, receiptId, text, textLength, encoded);
+        append(batch);
+    }
+
+    // Force the appended records to the disk
+    void sync() throws IOException;
+
+    // Return the text or the encoded form of the receipt, or null if the receipt is not in the store
+    ByteBuffer readText(int shopId, int receiptId) throws IOException;
+    ByteBuffer readEncoded(int shopId, int receiptId) throws IOException;
+
+    // Return if the receipt is in the store
+    boolean contains(int shopId, int receiptId) throws IOException;
+
+    // Return the highest receipt ID of the shop in the store or 0 if the store has no receipts of the shop, the shop
+    // continues its receipt numbers after it even if the journal missed the last receipts
+    int highestReceiptId(int shopId) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    // Records that are put together in memory and then appended to the store at once. The records are laid out like
+    // the records of the segment store, so the segment store writes the whole batch with one write. A batch is not
+    // thread safe, it is filled and appended by one thread and cleared to be used again
+    final class Batch {
+        byte[] buffer = new byte[64 * 1024];
+        int length;
+        // The key and the start in the buffer of each record
+        long[] keys = new long[64];
+        int[] starts = new int[64];
+        int count;
+
+        // Add the record with the text taken from the first bytes of the passed buffer
+        public void add(int shopId, int receiptId, byte[] text, int textLength, byte[] encoded) {
+            int recordSize = ReceiptSegmentStore.RECORD_HEADER_SIZE + textLength + encoded.length + Integer.BYTES;
+            if (length + recordSize > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + recordSize));
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+
+            // Write the record the same way as a single append, with the checksum of everything before it at its end
+            ByteBuffer record = ByteBuffer.wrap(buffer, length, recordSize);
+            record.putInt(ReceiptSegmentStore.RECORD_MAGIC).putInt(shopId).putInt(receiptId).putInt(textLength).putInt(encoded.length);
+            record.put(text, 0, textLength).put(encoded);
+            CRC32 crc = new CRC32();
+            crc.update(buffer, length, recordSize - Integer.BYTES);
+            record.putInt((int) crc.getValue());
+
+            keys[count] = ReceiptIndex.key(shopId, receiptId);
+            starts[count] = length;
+            count++;
+            length += recordSize;
+        }
+
+        public int size() { return count; }
+
+        public void clear() {
+            length = 0;
+            count = 0;
+        }
+
+        public int shopIdAt(int record) { return (int) (keys[record] >>> 32); }
+        public int receiptIdAt(int record) { return (int) keys[record]; }
+
+        // Return a view of the text or the encoded form of the record in the buffer of the batch
+        public ByteBuffer textAt(int record) {
+            int textLength = ByteBuffer.wrap(buffer).getInt(starts[record] + Integer.BYTES * 3);
+            return ByteBuffer.wrap(buffer, starts[record] + ReceiptSegmentStore.RECORD_HEADER_SIZE, textLength).slice();
+        }
+
+        public ByteBuffer encodedAt(int record) {
+            return ReceiptSegmentStore.encodedAt(ByteBuffer.wrap(buffer), starts[record]);
+        }
+
+        // Return the end of the record in the buffer
+        int recordEnd(int record) {
+            return record + 1 < count ? starts[record + 1] : length;
+        }
+    }
+}
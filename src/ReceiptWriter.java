@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// This class holds the asynchronous saving of the sold receipts. The cashiers only put the finished receipt in a
+// bounded queue and a single writer thread appends the receipts in batches to the receipt store with one write, writes
+// them to the journal of the shop and forces both to the disk once per batch (group commit) or as the durability policy
+// says. Each receipt gets a future that is completed when the receipt is durable, so the callers that need to can wait for it
+class ReceiptWriter implements AutoCloseable {
+    // The number of submits that can wait in the queue before the cashiers have to wait for the writer
+    private static final int QUEUE_CAPACITY = 4096;
+    // The most submits that are written together in one batch
+    private static final int MAX_BATCH_SIZE = 256;
+    // How often the journal is forced to the disk with the timed policy
+    private static final long SYNC_INTERVAL_MILLIS = 50;
+
+    private final ReceiptStore store;
+    private final ReceiptSequencer sequencer;
+    private final DurabilityPolicy policy;
+    private final ShopMetrics metrics;
+    // Each submit is one list of receipts, so the receipts of a batch checkout are written together
+    private final BlockingQueue<List<Receipt>> queue;
+    // The number of receipts in the queue, one submit can hold many receipts
+    private final AtomicInteger queuedReceipts;
+    private final Thread writerThread;
+    private volatile boolean isClosed;
+    // The submits hold the read lock while they check the flag and put their receipts in the queue, close takes the
+    // write lock to set the flag, so no receipt is put in the queue after the writer thread was told to stop
+    private final ReadWriteLock closeLock;
+
+    // Receipts that are written but not yet forced to the disk and the time of the last force
+    private final List<Receipt> unsyncedReceipts;
+    private long lastSyncNanos;
+    // The records of the batch that is being written, it is only used by the writer thread
+    private final ReceiptStore.Batch records;
+    // The receipts of the batch that the writer saves itself, the ones that were not saved by hand before
+    private final List<Receipt> claimedReceipts;
+
+    public ReceiptWriter(String name, ReceiptStore store, ReceiptSequencer sequencer, DurabilityPolicy policy, ShopMetrics metrics) {
+        // Initialize the instance variables
+        this.store = store;
+        this.sequencer = sequencer;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.queuedReceipts = new AtomicInteger();
+        this.closeLock = new ReentrantReadWriteLock();
+        this.unsyncedReceipts = new ArrayList<>();
+        this.records = new ReceiptStore.Batch();
+        this.claimedReceipts = new ArrayList<>();
+        this.lastSyncNanos = System.nanoTime();
+        // Start the writer thread, it doesn't stop the program from exiting so the shop must be closed to save everything
+        this.writerThread = new Thread(this::run, name + "-receipt-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Put the receipt in the queue and return the future that is completed when the receipt is durable,
+    // if the queue is full the cashier waits until there is space in it
+    public CompletableFuture<Receipt> submit(Receipt receipt) throws InterruptedException {
+        put(List.of(receipt));
+        return receipt.getPersistedFuture();
+    }
+
+    // Put all the receipts in the queue as one submit, they are appended to the receipt store with one write
+    public void submitAll(List<Receipt> receipts) throws InterruptedException {
+        if (!receipts.isEmpty()) {
+            put(receipts);
+        }
+    }
+
+    private void put(List<Receipt> receipts) throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if (isClosed) {
+                throw new IllegalStateException("The receipt writer is closed");
+            }
+            queue.put(receipts);
+            queuedReceipts.addAndGet(receipts.size());
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    // Return the number of receipts that wait in the queue
+    public int getQueueSize() { return queuedReceipts.get(); }
+
+    // Return if more receipts wait than three quarters of the queue holds, the receipts are then sold faster than they
+    // are saved. The receipts are counted and not the submits, so one big batch counts with all its receipts
+    public boolean isFallingBehind() {
+        return queuedReceipts.get() > QUEUE_CAPACITY / 4 * 3 || queue.remainingCapacity() < QUEUE_CAPACITY / 4;
+    }
+
+    // Save every receipt still in the queue, force them to the disk and stop the writer thread
+    @Override
+    public void close() {
+        // The writer thread notices the flag the next time its wait for a receipt times out, the submits that already
+        // passed the check are in the queue before the flag is set
+        closeLock.writeLock().lock();
+        try {
+            isClosed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<List<Receipt>> submits = new ArrayList<>(MAX_BATCH_SIZE);
+        List<Receipt> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (!isClosed || !queue.isEmpty()) {
+            try {
+                // Wait for the next receipt, at most until the next timed sync is due
+                List<Receipt> first = queue.poll(SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    submits.add(first);
+                    queue.drainTo(submits, MAX_BATCH_SIZE - 1);
+                    for (List<Receipt> receipts : submits) {
+                        batch.addAll(receipts);
+                    }
+                    queuedReceipts.addAndGet(-batch.size());
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                // Keep saving, the writer only stops when it is closed so no submit is left in the queue without a writer
+                System.err.println("Error the receipt writer was interrupted, it stops when it is closed");
+                // Catch any other exception of a batch so the writer thread keeps saving the next batches, the receipts
+                // of the failed batch that are not saved yet fail
+            } catch (RuntimeException e) {
+                System.err.println("Error couldn't save " + batch.size() + " receipts: " + e);
+                for (Receipt receipt : batch) {
+                    receipt.getPersistedFuture().completeExceptionally(e);
+                }
+                unsyncedReceipts.removeIf(receipt -> receipt.getPersistedFuture().isDone());
+            } finally {
+                submits.clear();
+                batch.clear();
+            }
+            if (policy == DurabilityPolicy.TIMED && System.nanoTime() - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MILLIS)) {
+                sync();
+            }
+        }
+        // Force whatever is left before the writer stops
+        sync();
+    }
+
+    // Write the receipts of the batch and force them to the disk as the durability policy says
+    private void writeBatch(List<Receipt> batch) {
+        if (policy == DurabilityPolicy.PER_RECEIPT) {
+            for (int receipt = 0; receipt < batch.size(); receipt++) {
+                write(batch.subList(receipt, receipt + 1));
+                sync();
+            }
+            return;
+        }
+        write(batch);
+        if (policy == DurabilityPolicy.PER_BATCH) {
+            sync();
+        }
+    }
+
+    // Append the receipts to the receipt store with one write and write the journal record of each of them
+    private void write(List<Receipt> receipts) {
+        ReceiptRenderer renderer = ReceiptRenderer.forCurrentThread();
+        records.clear();
+        claimedReceipts.clear();
+        try {
+            // Put the text and the encoded receipt of each receipt in one record of the batch, the text is rendered
+            // in the buffer of the writer thread and copied from there. A receipt that was already saved by hand is
+            // only journaled
+            for (Receipt receipt : receipts) {
+                if (!receipt.claimSave()) continue;
+                claimedReceipts.add(receipt);
+                long stageStart = metrics.start();
+                int textLength = renderer.render(receipt);
+                stageStart = metrics.record(CheckoutStage.RENDER, stageStart);
+                byte[] encoded = ReceiptCodec.encode(receipt);
+                metrics.record(CheckoutStage.ENCODE, stageStart);
+                records.add(receipt.getShopId(), receipt.getReceiptId(), renderer.buffer(), textLength, encoded);
+            }
+            long stageStart = metrics.start();
+            store.append(records);
+            metrics.record(CheckoutStage.STORE_APPEND, stageStart);
+            // Throw an exception in case the receipts couldn't be rendered, encoded or saved
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error couldn't save " + receipts.size() + " receipts: " + e.getMessage());
+            for (Receipt receipt : claimedReceipts) {
+                receipt.saveFailed();
+            }
+            for (Receipt receipt : receipts) {
+                receipt.getPersistedFuture().completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (Receipt receipt : receipts) {
+            try {
+                // Write the receipt to the journal of the shop
+                long stageStart = metrics.start();
+                sequencer.append(receipt.getReceiptId(), receipt.getTotalPriceMinor());
+                metrics.record(CheckoutStage.JOURNAL_APPEND, stageStart);
+                unsyncedReceipts.add(receipt);
+                // Throw an exception in case the journal record couldn't be written
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error couldn't save receipt " + receipt.getReceiptId() + ": " + e.getMessage());
+                receipt.getPersistedFuture().completeExceptionally(e);
+            }
+        }
+    }
+
+    // Force the store and the journal to the disk and complete the futures of the receipts that are now durable
+    private void sync() {
+        lastSyncNanos = System.nanoTime();
+        if (unsyncedReceipts.isEmpty()) return;
+        try {
+            long syncStart = metrics.start();
+            store.sync();
+            sequencer.sync();
+            metrics.record(CheckoutStage.SYNC, syncStart);
+            for (Receipt receipt : unsyncedReceipts) {
+                receipt.getPersistedFuture().complete(receipt);
+            }
+            // Throw an exception in case the journal couldn't be forced to the disk
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error couldn't force the receipts to the disk: " + e.getMessage());
+            for (Receipt receipt : unsyncedReceipts) {
+                receipt.getPersistedFuture().completeExceptionally(e);
+            }
+        }
+        unsyncedReceipts.clear();
+    }
+}
@@ -1,11 +1,18 @@
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
 import Exceptions.InsufficientFundsException;
+import Exceptions.InsufficientQuantityException;
 
-// This class holds the management of the shop
-class Shop implements Serializable {
+// This class holds the management of the shop. More cashiers can sell goods at the same time, the stock is reserved
+// per goods without locking, the receipt numbers and total income are kept in memory by the receipt sequencer and
+// the receipts are saved in the background by the receipt writer
+class Shop implements Serializable, AutoCloseable {
     // Create a unique identifier for the serialized class
     @Serial
     private static final long serialVersionUID = 1L;
@@ -14,185 +21,530 @@ class Shop implements Serializable {
     private final String name;
     // Declare string to store the shops currency
     private final String shopCurrency;
-    // Declare list with the goods the shop has
-    private final List<Goods> allGoods;
+    // Declare the inventory with the goods the shop has, it finds the goods by their id and gives their selling price
+    private final transient Inventory inventory;
     // Declare list for the cashiers as one shop can have multiple cashiers
     private final List<Cashier> cashiers;
-    // Variables for the total income and total cost of the store that are used to create the stores total profit
-    private double totalIncome;
-    private double totalCosts;
-
-    // Set the variables for the overcharge, discounts and days the goods are not expired for food and non-food goods
-    private final double percentageOverchargeFood;
-    private final double percentageOverchargeNonFood;
-    private final double percentageDecreaseFood;
-    private final double percentageDecreaseNonFood;
+    // The ledger adds up the income, the costs of the goods, the salaries and the discounts of the shop as they happen,
+    // the costs are used with the total income to create the stores total profit
+    private final transient ProfitLedger ledger;
+    // The sequencer gives each receipt its number and holds the total income of the shop, it is backed by the journal
+    // in the shop state store so it is not saved together with the shop object
+    private final transient ReceiptSequencer sequencer;
+    // The writer saves the sold receipts to the receipt store in the background so the cashier doesn't wait for it,
+    // the receipts that are saved by hand go to the same store
+    private final transient ReceiptWriter writer;
+    private final transient ReceiptStore receiptStore;
+    // The latencies of the stages of the checkout and the counters of the sold and failed checkouts
+    private final transient ShopMetrics metrics;
+
+    // Set the variables for the overcharge and discounts in basis points and days the goods are not expired for food and non-food goods
+    private final long overchargeFoodBasisPoints;
+    private final long overchargeNonFoodBasisPoints;
+    private final long decreaseFoodBasisPoints;
+    private final long decreaseNonFoodBasisPoints;
     private final int daysTillExpiryFood;
     private final int daysTillExpiryNonFood;
-
-    // Create the name of the folder that the information of the shop file will be stored in
-    private static final String SHOP_INFO_FOLDER = "Shop_Info";
+    // Declare when the saved receipts are forced to the disk and how the goods are kept in memory, the shop registry
+    // saves them so the shop is loaded the same way
+    private final DurabilityPolicy durabilityPolicy;
+    private final InventoryLayout inventoryLayout;
 
 
     public Shop(int id, String name, String shopCurrency, double percentageOverchargeFood, double percentageOverchargeNonFood,
                 double percentageDecreaseFood, double percentageDecreaseNonFood,
                 int daysTillExpiryFood, int daysTillExpiryNonFood) {
+        this(id, name, shopCurrency, percentageOverchargeFood, percentageOverchargeNonFood, percentageDecreaseFood,
+                percentageDecreaseNonFood, daysTillExpiryFood, daysTillExpiryNonFood, DurabilityPolicy.PER_BATCH);
+    }
+
+    public Shop(int id, String name, String shopCurrency, double percentageOverchargeFood, double percentageOverchargeNonFood,
+                double percentageDecreaseFood, double percentageDecreaseNonFood,
+                int daysTillExpiryFood, int daysTillExpiryNonFood, DurabilityPolicy durabilityPolicy) {
+        this(id, name, shopCurrency, percentageOverchargeFood, percentageOverchargeNonFood, percentageDecreaseFood,
+                percentageDecreaseNonFood, daysTillExpiryFood, daysTillExpiryNonFood, durabilityPolicy, InventoryLayout.OBJECTS);
+    }
+
+    public Shop(int id, String name, String shopCurrency, double percentageOverchargeFood, double percentageOverchargeNonFood,
+                double percentageDecreaseFood, double percentageDecreaseNonFood,
+                int daysTillExpiryFood, int daysTillExpiryNonFood, DurabilityPolicy durabilityPolicy, InventoryLayout inventoryLayout) {
+        this(id, name, shopCurrency, percentageOverchargeFood, percentageOverchargeNonFood, percentageDecreaseFood,
+                percentageDecreaseNonFood, daysTillExpiryFood, daysTillExpiryNonFood, durabilityPolicy, inventoryLayout,
+                openReceiptStore(), openShopStateStore());
+    }
+
+    // Create the shop with the stores it saves its receipts and its state in, the other constructors use the stores of
+    // the backend that is set in Storage
+    public Shop(int id, String name, String shopCurrency, double percentageOverchargeFood, double percentageOverchargeNonFood,
+                double percentageDecreaseFood, double percentageDecreaseNonFood,
+                int daysTillExpiryFood, int daysTillExpiryNonFood, DurabilityPolicy durabilityPolicy, InventoryLayout inventoryLayout,
+                ReceiptStore receiptStore, ShopStateStore stateStore) {
         // Initialize the instance variables
         this.id = id;
         this.name = name;
         this.shopCurrency = shopCurrency;
-        this.allGoods = new ArrayList<>();
-        this.cashiers = new ArrayList<>();
-        // Initialize the total income by getting it from the file
-        this.totalIncome = readTotalValueFromFile();
-        this.totalCosts = 0;
+        this.inventory = inventoryLayout == InventoryLayout.COLUMNS ? new ColumnarInventory(this) : new CatalogInventory(this);
+        this.cashiers = new CopyOnWriteArrayList<>();
+        // Initialize the total income and the receipt number by recovering them from the journal of the shop
+        this.sequencer = ReceiptSequencer.open(stateStore, receiptStore, id, name, shopCurrency);
+        this.metrics = new ShopMetrics(id, name);
+        // Read the ledger the shop saved when it was closed and catch it up with the income and costs of the journal, which
+        // are ahead of it if the shop stopped without closing
+        this.ledger = ProfitLedger.open(stateStore, this);
+        ledger.catchUp(ProfitLedger.Measure.INCOME, sequencer.getTotalValue());
+        ledger.catchUp(ProfitLedger.Measure.COST_OF_GOODS, sequencer.getJournaledCostOfGoods());
+        ledger.catchUp(ProfitLedger.Measure.SALARIES, sequencer.getJournaledSalaries());
+        metrics.register(ledger, "type=Ledger,shop=" + id);
+        this.writer = new ReceiptWriter(name, receiptStore, sequencer, durabilityPolicy, metrics);
+        this.receiptStore = receiptStore;
 
         // Initialize the instance variables
-        this.percentageOverchargeFood = percentageOverchargeFood;
-        this.percentageOverchargeNonFood = percentageOverchargeNonFood;
-        this.percentageDecreaseFood = percentageDecreaseFood;
-        this.percentageDecreaseNonFood = percentageDecreaseNonFood;
+        this.overchargeFoodBasisPoints = Money.percentageToBasisPoints(percentageOverchargeFood);
+        this.overchargeNonFoodBasisPoints = Money.percentageToBasisPoints(percentageOverchargeNonFood);
+        this.decreaseFoodBasisPoints = Money.percentageToBasisPoints(percentageDecreaseFood);
+        this.decreaseNonFoodBasisPoints = Money.percentageToBasisPoints(percentageDecreaseNonFood);
         this.daysTillExpiryFood = daysTillExpiryFood;
         this.daysTillExpiryNonFood = daysTillExpiryNonFood;
+        this.durabilityPolicy = durabilityPolicy;
+        this.inventoryLayout = inventoryLayout;
+    }
+
+    private static ReceiptStore openReceiptStore() {
+        try {
+            return Storage.receipts();
+            // Throw an exception in case the receipt store couldn't be opened, the shop can't save any receipts without it
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open the receipt store", e);
+        }
+    }
+
+    private static ShopStateStore openShopStateStore() {
+        try {
+            return Storage.shopState();
+            // Throw an exception in case the shop state store couldn't be opened
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open the shop state store", e);
+        }
     }
 
     // Create setters for the overcharge/discount variables
-    public double getPercentageOverchargeFood() { return percentageOverchargeFood; }
-    public double getPercentageOverchargeNonFood() { return percentageOverchargeNonFood; }
-    public double getPercentageDecreaseFood() { return percentageDecreaseFood; }
-    public double getPercentageDecreaseNonFood() { return percentageDecreaseNonFood; }
+    public double getPercentageOverchargeFood() { return overchargeFoodBasisPoints / 100.0; }
+    public double getPercentageOverchargeNonFood() { return overchargeNonFoodBasisPoints / 100.0; }
+    public double getPercentageDecreaseFood() { return decreaseFoodBasisPoints / 100.0; }
+    public double getPercentageDecreaseNonFood() { return decreaseNonFoodBasisPoints / 100.0; }
+    public long getOverchargeFoodBasisPoints() { return overchargeFoodBasisPoints; }
+    public long getOverchargeNonFoodBasisPoints() { return overchargeNonFoodBasisPoints; }
+    public long getDecreaseFoodBasisPoints() { return decreaseFoodBasisPoints; }
+    public long getDecreaseNonFoodBasisPoints() { return decreaseNonFoodBasisPoints; }
     public int getDaysTillExpiryFood() { return daysTillExpiryFood; }
     public int getDaysTillExpiryNonFood() { return daysTillExpiryNonFood; }
+    public DurabilityPolicy getDurabilityPolicy() { return durabilityPolicy; }
+    public InventoryLayout getInventoryLayout() { return inventoryLayout; }
 
     // Create getters for the variables
+    public int getId() { return id; }
     public String getName() { return name; }
     public String getCurrency() {
         return this.shopCurrency;
     }
 
-    // Add the item to the list of goods the shop has and the goods total buying price to the total costs of the shop
+    // Add the item to the list of goods the shop has and the goods total buying price to the costs of the goods in the ledger
     public void addGoodsToList(Goods goods) {
-        allGoods.add(goods);
-        totalCosts += goods.getBuyingPrice() * goods.getQuantity();
+        inventory.put(goods);
+        stockAdded(Money.multiply(goods.getBuyingPriceMinor(), goods.getQuantity()));
+    }
+
+    // Add many goods at once to the catalog of the shop and their total buying price to the costs of the goods in the ledger
+    public void addAllGoodsToList(Collection<Goods> goods) {
+        inventory.putAll(goods);
+        long cost = 0;
+        for (Goods current : goods) {
+            cost += Money.multiply(current.getBuyingPriceMinor(), current.getQuantity());
+        }
+        stockAdded(cost);
+    }
+
+    // Add the cost of delivered goods to the ledger and write it to the journal so it isn't lost in a crash
+    private void stockAdded(long cost) {
+        ledger.stockAdded(cost);
+        try {
+            sequencer.appendCostOfGoods(cost);
+            // Throw an exception in case the cost couldn't be journaled, it is still in the ledger that is saved on close
+        } catch (IOException e) {
+            System.err.println("Error couldn't journal the cost of the goods " + e.getMessage());
+        }
     }
 
-    // Add a new cashier to the list of cashiers the shop has and the cashiers salary to the total costs of the shop
+    // Put the goods and cashiers of a saved snapshot back in the shop. Their buying prices and salaries were already
+    // counted in the total costs that were saved with them, so the ledger is caught up with them. A shop with its own
+    // saved ledger or journaled costs already holds them and nothing is added twice
+    void restore(Collection<Goods> goods, Collection<Cashier> savedCashiers, long savedTotalCosts) {
+        inventory.putAll(goods);
+        cashiers.addAll(savedCashiers);
+        long salaries = 0;
+        for (Cashier cashier : savedCashiers) {
+            salaries += Money.fromDouble(cashier.getSalary());
+        }
+        ledger.catchUp(ProfitLedger.Measure.SALARIES, salaries);
+        ledger.catchUp(ProfitLedger.Measure.COST_OF_GOODS, savedTotalCosts - salaries);
+    }
+
+    // Remove the goods with the passed id from the catalog of the shop and return them, or null if there are no such goods
+    public Goods removeGoodsFromList(int goodsId) {
+        return inventory.remove(goodsId);
+    }
+
+    // Return the index of the goods of the shop by their date of expiry, it answers which goods expire soon, which are
+    // sold with a discount and which have to be written off
+    public ExpiryIndex getExpiryIndex() {
+        return inventory.getExpiryIndex();
+    }
+
+    // Return the goods with the passed id or null if the shop doesn't have them
+    public Goods findGoods(int goodsId) {
+        return inventory.get(goodsId);
+    }
+
+    // Return all the goods of the catalog, they are used when the shop is saved in a snapshot
+    List<Goods> getAllGoods() {
+        List<Goods> goods = new ArrayList<>(inventory.size());
+        inventory.forEach(goods::add);
+        return goods;
+    }
+
+    // Return the cashiers of the shop and the total costs in minor units
+    List<Cashier> getCashiers() { return List.copyOf(cashiers); }
+    long getTotalCostsMinor() { return ledger.getTotalCosts(); }
+
+    // Return the ledger with the income, costs and discounts of the shop by hour and by day
+    public ProfitLedger getLedger() { return ledger; }
+    // Return the store the receipts of the shop are saved in
+    ReceiptStore getReceiptStore() { return receiptStore; }
+
+    // Return the cashier with the passed id or null if the shop doesn't have such a cashier
+    public Cashier findCashier(int cashierId) {
+        for (Cashier cashier : cashiers) {
+            if (cashier.getId() == cashierId) return cashier;
+        }
+        return null;
+    }
+
+    // Return if the receipts of the shop are sold faster than the receipt writer saves them
+    public boolean isPersistenceFallingBehind() {
+        return writer.isFallingBehind();
+    }
+
+    // Return the metrics of the checkouts of the shop
+    public ShopMetrics getMetrics() { return metrics; }
+
+    // Add a new cashier to the list of cashiers the shop has and the cashiers salary to the salaries in the ledger
     public void addCashierToList(Cashier cashier) {
         cashiers.add(cashier);
-        totalCosts += cashier.getSalary();
+        long salary = Money.fromDouble(cashier.getSalary());
+        ledger.salaryAdded(salary);
+        try {
+            sequencer.appendSalary(salary);
+            // Throw an exception in case the salary couldn't be journaled, it is still in the ledger that is saved on close
+        } catch (IOException e) {
+            System.err.println("Error couldn't journal the salary of the cashier " + e.getMessage());
+        }
     }
 
-    // This method returns the receipt object
+    // This method returns the receipt object, it can be called by more cashiers at the same time. The basket is sold
+    // as a whole, if any of the goods are not enough nothing is taken from the stock and the error is printed
     public Receipt sellGoods(Cashier cashier, Map<Integer, Integer> items, Client client) {
-        // Declare the variable that will store the receipt
-        Receipt receipt = null;
+        CheckoutResult result = checkout(cashier, items, client);
+        switch (result.getStatus()) {
+            case INSUFFICIENT_FUNDS -> System.err.println("Insufficient funds error: " + result.getMessage());
+            case INSUFFICIENT_QUANTITY -> System.err.println("Insufficient quantity error: " + result.getMessage());
+            case FAILED, REJECTED -> System.err.println("Error: " + result.getMessage());
+        }
+        return result.getReceipt();
+    }
+
+    // Sell one basket like sellGoods and return the receipt or the reason the basket couldn't be sold with the message
+    // of the error, nothing is printed. It is the checkout of one basket for callers that report the result themselves
+    public CheckoutResult checkout(Cashier cashier, Map<Integer, Integer> items, Client client) {
+        // Declare the variable that will store the result
+        CheckoutResult result;
+        // Each stage of the sale is timed from the end of the stage before it
+        long checkoutStart = metrics.start();
+        long stageStart = checkoutStart;
         try {
-            // Calculate the total price of the receipt first
-            double totalPrice = 0.0;
-            // Iterate through the items in the goods map
-            for (Map.Entry<Integer, Integer> entry : items.entrySet()) {
-                // Search for an item in the list with the current id and throw exception if the item is not in the map
-                Goods goods = allGoods.stream().filter(g -> g.getId() == entry.getKey()).findFirst().orElse(null);
-                // Use IllegalArgumentException for the exception as it is expected for the goods to exist
-                if (goods == null) throw new IllegalArgumentException("Goods not found");
-
-                // Calculate the selling price of the goods using the specific percentages of the current shop
-                double sellingPrice = goods.calcSellingPrice(this);
-                // Calculate the Total price of the receipt by multiplying calculated selling price by the quantity of the goods
-                totalPrice += sellingPrice * entry.getValue();
-            }
+            // Find the goods of every line in the catalog so every line is looked up only once
+            ReceiptBuilder basket = lookUp(items, ReceiptBuilder.forCurrentThread());
+            stageStart = metrics.record(CheckoutStage.LOOKUP, stageStart);
+
+            // Calculate the selling price of every line and the total price of the receipt
+            price(basket);
+            stageStart = metrics.record(CheckoutStage.PRICING, stageStart);
 
             // Call method that checks if the client has enough money based on the receipts total price
             // and throws an exception if the money are not enough
-            client.checkIsEnoughMoney(totalPrice);
-
-            // Create the file path and an object pointing to the shop info file
-            String fileName = SHOP_INFO_FOLDER + "/" + id + "_shop_info.txt";
-            File file = new File(fileName);
-            int currentReceiptNumber = 0;
-
-            // Check if the file exists and read the current receipt number from the shop information file
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-                    String line;
-                    // Read each file of the line until the line that starts with Receipt number is found
-                    while ((line = reader.readLine()) != null) {
-                        if (line.startsWith("Receipt number: ")) {
-                            // Get the number after the : and turn it int an integer
-                            currentReceiptNumber = Integer.parseInt(line.split(":")[1].trim());
-                        }
+            client.checkIsEnoughMoney(basket.getTotalPrice());
+            stageStart = metrics.record(CheckoutStage.FUNDS_CHECK, stageStart);
+
+            // Take the quantity of all lines out of the stock, if one of them is not enough all are returned
+            reserveAll(basket);
+            stageStart = metrics.record(CheckoutStage.RESERVE, stageStart);
+            boolean isSubmitted = false;
+            int receiptNumber = 0;
+            Receipt receipt;
+            try {
+                // Create the new receipt with the next receipt number and all the lines of the basket
+                receiptNumber = sequencer.nextReceiptNumber();
+                receipt = createReceipt(cashier, receiptNumber, basket);
+                stageStart = metrics.record(CheckoutStage.RECEIPT, stageStart);
+
+                // Hand the receipt to the writer that saves it in the receipt store and the journal record in the background,
+                // use the persisted future of the receipt to wait until it is saved
+                writer.submit(receipt);
+                isSubmitted = true;
+                stageStart = metrics.record(CheckoutStage.SUBMIT, stageStart);
+            } finally {
+                // Return the reserved goods to the stock and the receipt number if the receipt was not handed to the
+                // writer, a submitted receipt is saved and journaled so the basket is sold
+                if (!isSubmitted) {
+                    releaseAll(basket, basket.getLineCount());
+                    if (receiptNumber > 0) {
+                        giveBack(receiptNumber, 1);
                     }
                 }
             }
 
-            // Create the new receipt with the next receipt number and pass the arguments:
-            // Shop ID, Shop Name, Cashier object, the current extracted receipt number + 1, Shop object
-            receipt = new Receipt(id, name, cashier, currentReceiptNumber + 1, this);
-
-            // Iterate through the items in the goods map
-            for (Map.Entry<Integer, Integer> entry : items.entrySet()) {
-                // Search for an item in the list with the current id and throw exception if the item is not in the map
-                Goods goods = allGoods.stream().filter(g -> g.getId() == entry.getKey()).findFirst().orElse(null);
-                // Use IllegalArgumentException for the exception as it is expected for the goods to exist
-                if (goods == null) throw new IllegalArgumentException("Goods not found");
-                // Calculate the selling price of the goods using the specific percentages of the current shop
-                double sellingPrice = goods.calcSellingPrice(this);
-                // Add the sold goods to the receipt and the calculated selling price
-                receipt.addSaleOfGoods(goods, entry.getValue(), sellingPrice);
-            }
+            // Add the total price of the receipt to the total income of the shop and to the ledger
+            addToTotals(receipt);
+            metrics.record(CheckoutStage.TOTAL_UPDATE, stageStart);
+            metrics.record(CheckoutStage.CHECKOUT, checkoutStart);
+            metrics.sold(cashier, basket.getSoldItems());
+            result = CheckoutResult.sold(receipt);
 
-            // Call method from the receipt class that saves the receipts details to a txt format file
-            receipt.saveReceiptToFile();
+            // Throw an insufficient funds custom exception in case the client doesn't have enough money
+        } catch (InsufficientFundsException e) {
+            metrics.insufficientFunds(cashier);
+            result = CheckoutResult.failed(CheckoutResult.Status.INSUFFICIENT_FUNDS, e.getMessage());
+            // Throw an insufficient quantity custom exception in case the shop doesn't have enough of the goods
+        } catch (InsufficientQuantityException e) {
+            metrics.insufficientQuantity(cashier);
+            result = CheckoutResult.failed(CheckoutResult.Status.INSUFFICIENT_QUANTITY, e.getMessage());
+            // Catch any other exceptions with their message
+        } catch (Exception e) {
+            metrics.failure(cashier);
+            result = CheckoutResult.failed(CheckoutResult.Status.FAILED, e.getMessage());
+        }
+        return result;
+    }
 
-            // Call method from the receipt class that serializes and save the receipt as .ser file
-            receipt.serializeReceiptObj();
+    // This method sells many baskets at once and returns the result of each basket in the same order. The baskets are
+    // priced and checked in parallel on the common fork-join pool, then the goods are taken from the stock in the order
+    // of the baskets so the same batch always sells the same baskets. The sold baskets get one range of receipt numbers
+    // and their receipts are saved by the receipt writer with one write. The checks are timed for each basket and the
+    // stages after them once for the whole batch. The whole batch is rejected if the receipt writer is falling behind
+    public List<CheckoutResult> sellGoodsBatch(List<CheckoutRequest> requests) {
+        int size = requests.size();
+        CheckoutResult[] results = new CheckoutResult[size];
+        ReceiptBuilder[] baskets = new ReceiptBuilder[size];
+        if (writer.isFallingBehind()) {
+            Arrays.fill(results, CheckoutResult.failed(CheckoutResult.Status.REJECTED, "The receipts of the shop are not saved fast enough"));
+            return Arrays.asList(results);
+        }
+        long checkoutStart = metrics.start();
 
-            // Increment the receipt number and call method to update the total value in the shop info file
-            currentReceiptNumber++;
-            receipt.updateShopTotalValue(currentReceiptNumber);
+        // Look up and price every basket and check the money of its client, nothing is taken from the stock yet
+        IntStream.range(0, size).parallel().forEach(index -> {
+            CheckoutRequest request = requests.get(index);
+            try {
+                // Each basket of the batch has its own builder because all of them are kept until the batch is sold
+                long stageStart = metrics.start();
+                ReceiptBuilder basket = lookUp(request.getItems(), new ReceiptBuilder());
+                stageStart = metrics.record(CheckoutStage.LOOKUP, stageStart);
+                price(basket);
+                stageStart = metrics.record(CheckoutStage.PRICING, stageStart);
+                request.getClient().checkIsEnoughMoney(basket.getTotalPrice());
+                metrics.record(CheckoutStage.FUNDS_CHECK, stageStart);
+                baskets[index] = basket;
+            } catch (InsufficientFundsException e) {
+                results[index] = CheckoutResult.failed(CheckoutResult.Status.INSUFFICIENT_FUNDS, e.getMessage());
+            } catch (Exception e) {
+                results[index] = CheckoutResult.failed(CheckoutResult.Status.FAILED, e.getMessage());
+            }
+        });
 
-            // Update the total income from the file after updating the receipt
-            totalIncome = readTotalValueFromFile();
+        // Take the goods of each basket from the stock in the order of the baskets
+        long stageStart = metrics.start();
+        int soldCount = 0;
+        for (int index = 0; index < size; index++) {
+            if (baskets[index] == null) continue;
+            try {
+                reserveAll(baskets[index]);
+                soldCount++;
+            } catch (InsufficientQuantityException e) {
+                baskets[index] = null;
+                results[index] = CheckoutResult.failed(CheckoutResult.Status.INSUFFICIENT_QUANTITY, e.getMessage());
+            }
+        }
+        stageStart = metrics.record(CheckoutStage.RESERVE, stageStart);
 
-            // Throw an insufficient funds custom exception in case the client doesn't have enough money
-        } catch (InsufficientFundsException e) {
-            System.err.println("Insufficient funds error: " + e.getMessage());
-            // Catch any other exceptions and print a generic message
+        // Create the receipts of the sold baskets with one range of receipt numbers and save them together
+        List<Receipt> receipts = new ArrayList<>(soldCount);
+        boolean isSubmitted = false;
+        int firstReceiptNumber = 0;
+        try {
+            if (soldCount > 0) {
+                firstReceiptNumber = sequencer.nextReceiptNumbers(soldCount);
+            }
+            int receiptNumber = firstReceiptNumber;
+            for (int index = 0; index < size; index++) {
+                if (baskets[index] == null) continue;
+                Receipt receipt = createReceipt(requests.get(index).getCashier(), receiptNumber++, baskets[index]);
+                receipts.add(receipt);
+                results[index] = CheckoutResult.sold(receipt);
+            }
+            stageStart = metrics.record(CheckoutStage.RECEIPT, stageStart);
+            writer.submitAll(receipts);
+            isSubmitted = true;
+            stageStart = metrics.record(CheckoutStage.SUBMIT, stageStart);
+            // Catch the exceptions before the receipts were submitted, none of the baskets are sold if their receipts
+            // can't be saved and their range of receipt numbers is given back. Submitted receipts are saved and
+            // journaled, so nothing is undone for them
         } catch (Exception e) {
-            System.err.println("Error: " + e.getMessage());
-        }
-        return receipt;
-    }
-
-    private double readTotalValueFromFile() {
-        // Create the file path and an object pointing to the shop info file
-        String fileName = SHOP_INFO_FOLDER + "/" + id + "_shop_info.txt";
-        double fileTotalIncome = 0.0;
-        File file = new File(fileName);
-
-        // Check if the file exists and read the current total value from the shop information file
-        if (file.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    // Read each file of the line until the line that starts with Total value:  is found
-                    if (line.startsWith("Total value: ")) {
-                        // Trim the line until only the total value is left and turn it into a double
-                        String totalValueStr = line.split(":")[1].trim().replace(" BGN", "").trim();
-                        fileTotalIncome = Double.parseDouble(totalValueStr);
-                    }
-                }
-                // Throw an exception in case there was a problem during the file reading
-            } catch (IOException e) {
-                System.err.println("Error couldn't read the total income in the file " + e.getMessage());
+            if (isSubmitted) {
+                System.err.println("Error after the receipts of the batch were submitted: " + e.getMessage());
+            } else {
+                undoBatch(firstReceiptNumber, soldCount, baskets, results, e);
+            }
+        }
+
+        // Add the sold receipts to the total income of the shop and count the results
+        if (isSubmitted) {
+            for (Receipt receipt : receipts) {
+                addToTotals(receipt);
+            }
+            metrics.record(CheckoutStage.TOTAL_UPDATE, stageStart);
+        }
+        metrics.record(CheckoutStage.CHECKOUT, checkoutStart);
+        for (int index = 0; index < size; index++) {
+            Cashier cashier = requests.get(index).getCashier();
+            switch (results[index].getStatus()) {
+                case SOLD -> metrics.sold(cashier, baskets[index].getSoldItems());
+                case INSUFFICIENT_FUNDS -> metrics.insufficientFunds(cashier);
+                case INSUFFICIENT_QUANTITY -> metrics.insufficientQuantity(cashier);
+                case FAILED -> metrics.failure(cashier);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    // Give back the range of receipt numbers of a batch whose receipts were not submitted, return the goods of its
+    // baskets to the stock and fail them with the error
+    private void undoBatch(int firstReceiptNumber, int soldCount, ReceiptBuilder[] baskets, CheckoutResult[] results, Exception e) {
+        if (firstReceiptNumber > 0) {
+            giveBack(firstReceiptNumber, soldCount);
+        }
+        for (int index = 0; index < baskets.length; index++) {
+            if (baskets[index] == null) continue;
+            releaseAll(baskets[index], baskets[index].getLineCount());
+            results[index] = CheckoutResult.failed(CheckoutResult.Status.FAILED, e.getMessage());
+        }
+    }
+
+    // Give back the range of receipt numbers, if other cashiers took numbers after the range it stays a gap in the
+    // numbers so no number is given twice
+    private void giveBack(int firstReceiptNumber, int count) {
+        if (!sequencer.giveBack(firstReceiptNumber, count)) {
+            System.err.println("Error couldn't give back the receipt numbers " + firstReceiptNumber + " to "
+                    + (firstReceiptNumber + count - 1) + ", they stay unused");
+        }
+    }
+
+    // Add the total price of a submitted receipt to the total income of the shop and to the ledger. The receipt is
+    // already sold, so a failure is only printed, the journal has the income of the receipt after a restart
+    private void addToTotals(Receipt receipt) {
+        try {
+            sequencer.commit(receipt.getTotalPriceMinor());
+            ledger.sale(receipt);
+            // Catch any exception of the totals, it must not undo a sale whose receipt is saved
+        } catch (RuntimeException e) {
+            System.err.println("Error couldn't add receipt " + receipt.getReceiptId() + " to the totals of the shop: " + e.getMessage());
+        }
+    }
+
+    // Find the goods of every item of the basket in the catalog and add them to the builder, throw an exception if one
+    // of them is not there
+    private ReceiptBuilder lookUp(Map<Integer, Integer> items, ReceiptBuilder basket) {
+        // Iterate through the items in the goods map
+        for (Map.Entry<Integer, Integer> entry : items.entrySet()) {
+            // Search for an item in the inventory with the current id and throw exception if the item is not in the inventory
+            Goods goods = inventory.get(entry.getKey());
+            // Use IllegalArgumentException for the exception as it is expected for the goods to exist
+            if (goods == null) throw new IllegalArgumentException("Goods not found");
+
+            // Remember the line so it can be added to the receipt without searching for the goods again, a line
+            // without a quantity is not valid
+            if (entry.getValue() == null) throw new IllegalArgumentException("No quantity for " + goods.getName());
+            basket.addLine(goods, entry.getValue());
+        }
+        return basket;
+    }
+
+    // Calculate the selling price of every line of the basket and the total price of the receipt in minor units
+    private void price(ReceiptBuilder basket) {
+        for (int line = 0; line < basket.getLineCount(); line++) {
+            // Get the selling price of the goods for today from the inventory of the shop, the builder adds the price
+            // multiplied by the quantity of the goods to the total price of the receipt
+            basket.setPrice(line, inventory.priceOf(basket.goodsAt(line)));
+        }
+    }
+
+    // Create the receipt with the passed number and all the lines of the basket with their selling prices
+    private Receipt createReceipt(Cashier cashier, int receiptNumber, ReceiptBuilder basket) {
+        return basket.build(this, cashier, receiptNumber);
+    }
+
+    // Reserve the quantity of each line from the stock, if one of the lines is not enough release the ones already reserved
+    private void reserveAll(ReceiptBuilder basket) throws InsufficientQuantityException {
+        for (int line = 0; line < basket.getLineCount(); line++) {
+            if (!basket.goodsAt(line).tryReserve(basket.quantityAt(line))) {
+                releaseAll(basket, line);
+                // Throw custom exception in case there are not enough goods to sell
+                throw new InsufficientQuantityException("Insufficient quantity of these goods: " + basket.goodsAt(line).getName());
             }
         }
+    }
 
-        return fileTotalIncome;
+    // Return the reserved quantity of the first lines back to the stock
+    private void releaseAll(ReceiptBuilder basket, int lineCount) {
+        for (int line = 0; line < lineCount; line++) {
+            basket.goodsAt(line).release(basket.quantityAt(line));
+        }
     }
 
     // This method calculates and returns the total profit of the shop
     public double calculateProfit() {
-        return totalIncome - totalCosts;
+        return Money.toDouble(calculateProfitMinor());
+    }
+
+    // This method calculates and returns the total profit of the shop in minor units
+    public long calculateProfitMinor() {
+        return sequencer.getTotalValue() - ledger.getTotalCosts();
+    }
+
+    // Save the receipts that are still waiting and close the journal of the shop when the shop is not used anymore
+    @Override
+    public void close() {
+        writer.close();
+        try {
+            sequencer.close();
+            // Throw an exception in case the journal couldn't be closed
+        } catch (IOException e) {
+            System.err.println("Error couldn't close the journal of the shop " + e.getMessage());
+        }
+        try {
+            ledger.save();
+            // Throw an exception in case the ledger couldn't be saved
+        } catch (IOException e) {
+            System.err.println("Error couldn't save the ledger of the shop " + e.getMessage());
+        }
+        metrics.close();
     }
 }
\ No newline at end of file
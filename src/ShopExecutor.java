@@ -0,0 +1,228 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// This class runs the work of many shops on a fixed number of worker threads. Each shop belongs to one worker that is
+// chosen by the shop id, and the checkouts, added goods and profit queries of the shop are put in the queue of that
+// worker as tasks, so one shop is only changed by one thread in the order its tasks were submitted and the stock of its
+// goods stays in the cache of that core. The work of many shops is spread over all workers. The depth of each worker
+// queue is registered as a JMX MXBean
+class ShopExecutor implements AutoCloseable {
+    // The number of tasks that can wait for one worker before the callers have to wait for it
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final String DOMAIN = "Shop";
+
+    private final String name;
+    private final Worker[] workers;
+    private volatile boolean isClosed;
+    // The submits hold the read lock while they check the flag and put their task in a queue, close takes the write
+    // lock to set the flag, so no task is put in a queue after its worker was told to stop
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    // Create an executor with one worker for each processor
+    public ShopExecutor(String name) {
+        this(name, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShopExecutor(String name, int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("The shop executor needs at least one worker");
+        }
+        // Initialize the instance variables and start the workers
+        this.name = name;
+        this.workers = new Worker[workerCount];
+        for (int index = 0; index < workerCount; index++) {
+            workers[index] = new Worker(index);
+            workers[index].start();
+        }
+    }
+
+    public int getWorkerCount() { return workers.length; }
+
+    // Return the index of the worker that runs the tasks of the shop
+    public int workerOf(int shopId) {
+        return Math.floorMod(shopId, workers.length);
+    }
+
+    // Return the number of tasks that are waiting in the queue of each worker
+    public int[] getQueueDepths() {
+        int[] depths = new int[workers.length];
+        for (int index = 0; index < workers.length; index++) {
+            depths[index] = workers[index].getQueueDepth();
+        }
+        return depths;
+    }
+
+    // Put the task in the queue of the worker of the shop and return the future with its result. If the queue is full
+    // the caller waits until there is space in it, so a task must not wait for another task of the same worker
+    public <T> CompletableFuture<T> submit(Shop shop, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        closeLock.readLock().lock();
+        try {
+            if (isClosed) {
+                future.completeExceptionally(new IllegalStateException("The shop executor is closed"));
+                return future;
+            }
+            Worker worker = workers[workerOf(shop.getId())];
+            worker.shopIds.add(shop.getId());
+            worker.put(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            // Complete the future with the exception in case the caller was interrupted while waiting for space
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return future;
+    }
+
+    // Sell the basket on the worker of the shop, the future has the result of the checkout
+    public CompletableFuture<CheckoutResult> checkout(Shop shop, Cashier cashier, Map<Integer, Integer> items, Client client) {
+        return submit(shop, () -> shop.checkout(cashier, items, client));
+    }
+
+    // Sell the basket on the worker of the shop, the future has the receipt or null if the basket couldn't be sold
+    public CompletableFuture<Receipt> sellGoods(Shop shop, Cashier cashier, Map<Integer, Integer> items, Client client) {
+        return submit(shop, () -> shop.sellGoods(cashier, items, client));
+    }
+
+    // Add the goods to the shop on the worker of the shop
+    public CompletableFuture<Void> addGoodsToList(Shop shop, Goods goods) {
+        return submit(shop, () -> {
+            shop.addGoodsToList(goods);
+            return null;
+        });
+    }
+
+    // Calculate the profit of the shop on the worker of the shop, after all the tasks of the shop submitted before it
+    public CompletableFuture<Double> calculateProfit(Shop shop) {
+        return submit(shop, shop::calculateProfit);
+    }
+
+    // Run every task that is still in the queues, stop the workers and remove their metrics from JMX
+    @Override
+    public void close() {
+        // The workers are stopped after the flag is set, the submits that already passed the check have put their tasks
+        // in the queues and the workers run them before they stop
+        closeLock.writeLock().lock();
+        try {
+            isClosed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker.unregister();
+        }
+    }
+
+    // One worker thread with its own queue of tasks
+    private final class Worker implements ShopWorkerMXBean {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private final Set<Integer> shopIds;
+        private final AtomicInteger maxQueueDepth;
+        // The number of finished tasks, it is only changed by the worker thread
+        private volatile long completedTasks;
+        private volatile boolean isStopped;
+        private ObjectName objectName;
+
+        private Worker(int index) {
+            this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            this.thread = new Thread(this::run, name + "-shop-worker-" + index);
+            this.thread.setDaemon(true);
+            this.shopIds = ConcurrentHashMap.newKeySet();
+            this.maxQueueDepth = new AtomicInteger();
+            register(index);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void put(Runnable task) throws InterruptedException {
+            queue.put(task);
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        }
+
+        // Let the worker finish the tasks in its queue and stop, the empty task wakes it up if it is waiting
+        private void stop() {
+            isStopped = true;
+            queue.offer(() -> { });
+        }
+
+        private void run() {
+            while (true) {
+                Runnable task = queue.poll();
+                if (task == null) {
+                    if (isStopped) return;
+                    try {
+                        task = queue.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task.run();
+                completedTasks++;
+            }
+        }
+
+        @Override
+        public int getQueueDepth() { return queue.size(); }
+        @Override
+        public int getMaxQueueDepth() { return maxQueueDepth.get(); }
+        @Override
+        public long getCompletedTasks() { return completedTasks; }
+        @Override
+        public int getShopCount() { return shopIds.size(); }
+
+        // Register the queue of the worker with the platform MBean server, the executor works without it if it fails
+        private void register(int index) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(DOMAIN + ":type=Worker,executor=" + ObjectName.quote(ShopExecutor.this.name) + ",worker=" + index);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                objectName = name;
+                // Throw an exception in case the metrics couldn't be registered
+            } catch (JMException e) {
+                System.err.println("Error couldn't register the metrics of the shop worker " + index + ": " + e.getMessage());
+            }
+        }
+
+        private void unregister() {
+            if (objectName == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                // The metrics were already replaced by another executor with the same name
+            }
+        }
+    }
+}
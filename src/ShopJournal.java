@@ -0,0 +1,339 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// This class holds the append only journal of the sold receipts of one shop. Each sale appends a small fixed size
+// record with the receipt number and its total price, and after a number of records a snapshot of the receipt number
+// and the total value is written and a new journal file is started. On startup the snapshot is read and only the
+// records of the journal files after it are replayed, so the shop info text file is never parsed on the hot path.
+// The buying prices of delivered goods and the salaries of new cashiers are journaled the same way, so the costs of
+// the shop are not lost when it stops without saving its ledger.
+// Version 1 kept the prices as doubles in records and snapshots of the same size and version 2 had no costs, their
+// files are converted on startup
+class ShopJournal implements ShopStateStore.Journal {
+    // Size of one journal record: receipt number or the kind of the cost, the receipt total price or the cost in minor
+    // units and a checksum of the two
+    private static final int RECORD_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    // The kinds of the cost records, they are stored in place of the receipt number which is always positive
+    private static final int COST_OF_GOODS_RECORD = -1;
+    private static final int SALARY_RECORD = -2;
+    // Size of the snapshot: magic number, version, journal generation, receipt number, total value, cost of goods and
+    // salaries in minor units and a checksum. The version 2 snapshot had no costs, the version 1 snapshot had no version
+    // either and the total value as a double
+    private static final int SNAPSHOT_SIZE = Integer.BYTES * 4 + Long.BYTES * 3 + Integer.BYTES;
+    private static final int SNAPSHOT_WITHOUT_COSTS_SIZE = Integer.BYTES * 4 + Long.BYTES + Integer.BYTES;
+    private static final int DOUBLE_SNAPSHOT_SIZE = Integer.BYTES * 3 + Long.BYTES + Integer.BYTES;
+    private static final int SNAPSHOT_MAGIC = 0x53484F50;
+    // Every journal file starts with a header of a magic number and the version, the version 1 files have no header
+    private static final int JOURNAL_HEADER_SIZE = Integer.BYTES * 2;
+    private static final int JOURNAL_MAGIC = 0x4A524E4C;
+    private static final int VERSION = 3;
+    private static final int WITHOUT_COSTS_VERSION = 2;
+    private static final int DOUBLE_PRICE_VERSION = 1;
+    // Number of records after which a new snapshot is written
+    private static final int SNAPSHOT_INTERVAL = 1000;
+
+    private final Path folder;
+    private final int shopId;
+    private final String shopName;
+    private final String currency;
+
+    // The generation of the journal file that is currently appended to
+    private int generation;
+    private FileChannel journal;
+    // The receipt number and total value of everything that was written to the journal so far
+    private int journaledReceiptNumber;
+    private long journaledTotalValue;
+    // The costs of the goods and the salaries that were written to the journal so far
+    private long journaledCostOfGoods;
+    private long journaledSalaries;
+    private int recordsSinceSnapshot;
+    // Reusable buffer for writing the records, it is only used while holding the lock of the journal
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+
+    private ShopJournal(Path folder, int shopId, String shopName, String currency) {
+        // Initialize the instance variables
+        this.folder = folder;
+        this.shopId = shopId;
+        this.shopName = shopName;
+        this.currency = currency;
+    }
+
+    // Open the journal of the shop in the existing folder and recover the last receipt number and total value from the
+    // snapshot and the journal
+    public static ShopJournal open(Path folder, int shopId, String shopName, String currency) throws IOException {
+        ShopJournal shopJournal = new ShopJournal(folder, shopId, shopName, currency);
+        shopJournal.recover();
+        return shopJournal;
+    }
+
+    @Override
+    public int getReceiptNumber() { return journaledReceiptNumber; }
+    @Override
+    public long getTotalValue() { return journaledTotalValue; }
+    @Override
+    public synchronized long getCostOfGoods() { return journaledCostOfGoods; }
+    @Override
+    public synchronized long getSalaries() { return journaledSalaries; }
+
+    // Append the sale of one receipt to the journal and write a new snapshot when enough records were appended
+    @Override
+    public synchronized void append(int receiptNumber, long receiptTotalPrice) throws IOException {
+        write(receiptNumber, receiptTotalPrice);
+    }
+
+    @Override
+    public synchronized void appendCostOfGoods(long cost) throws IOException {
+        write(COST_OF_GOODS_RECORD, cost);
+    }
+
+    @Override
+    public synchronized void appendSalary(long salary) throws IOException {
+        write(SALARY_RECORD, salary);
+    }
+
+    // Force the appended records to the disk
+    @Override
+    public synchronized void sync() throws IOException {
+        journal.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.force(false);
+        journal.close();
+    }
+
+    // Write the record and add it to the journaled values, the caller holds the lock of the journal
+    private void write(int receiptNumberOrKind, long amount) throws IOException {
+        recordBuffer.clear();
+        recordBuffer.putInt(receiptNumberOrKind).putLong(amount).putInt(checksum(recordBuffer.array(), RECORD_SIZE - Integer.BYTES));
+        recordBuffer.flip();
+        while (recordBuffer.hasRemaining()) {
+            journal.write(recordBuffer);
+        }
+
+        apply(receiptNumberOrKind, amount);
+        if (++recordsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    // Add a written or replayed record to the journaled values
+    private void apply(int receiptNumberOrKind, long amount) {
+        if (receiptNumberOrKind == COST_OF_GOODS_RECORD) {
+            journaledCostOfGoods += amount;
+        } else if (receiptNumberOrKind == SALARY_RECORD) {
+            journaledSalaries += amount;
+        } else {
+            journaledReceiptNumber = Math.max(journaledReceiptNumber, receiptNumberOrKind);
+            journaledTotalValue += amount;
+        }
+    }
+
+    // Write a snapshot of the current state and start a new journal file, after which the old journal is deleted
+    private void snapshot() throws IOException {
+        int newGeneration = generation + 1;
+        FileChannel newJournal = openJournal(newGeneration);
+
+        // Write the snapshot to a temporary file first and then replace the old snapshot with it in one step
+        ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_SIZE);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putInt(newGeneration).putInt(journaledReceiptNumber).putLong(journaledTotalValue)
+                .putLong(journaledCostOfGoods).putLong(journaledSalaries);
+        buffer.putInt(checksum(buffer.array(), SNAPSHOT_SIZE - Integer.BYTES));
+        buffer.flip();
+        Path temporary = folder.resolve(shopId + "_snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // The old journal is now part of the snapshot and is not needed anymore
+        journal.close();
+        Files.deleteIfExists(journalPath(generation));
+        journal = newJournal;
+        generation = newGeneration;
+        recordsSinceSnapshot = 0;
+
+        // Keep the readable shop info file up to date for the people that look at it
+        writeShopInfo();
+    }
+
+    // Read the snapshot and replay the records of the journal files after it, the files of older versions are converted
+    private void recover() throws IOException {
+        int snapshotGeneration = 0;
+        boolean hasSnapshot = false;
+        boolean isConverted = false;
+        if (Files.exists(snapshotPath())) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotPath()));
+            int size = buffer.remaining();
+            int version = size >= Integer.BYTES * 2 ? buffer.getInt(Integer.BYTES) : 0;
+            boolean hasCosts = size == SNAPSHOT_SIZE && version == VERSION;
+            if ((hasCosts || size == SNAPSHOT_WITHOUT_COSTS_SIZE && version == WITHOUT_COSTS_VERSION)
+                    && buffer.getInt(0) == SNAPSHOT_MAGIC && buffer.getInt(size - Integer.BYTES) == checksum(buffer.array(), size - Integer.BYTES)) {
+                buffer.position(Integer.BYTES * 2);
+                snapshotGeneration = buffer.getInt();
+                journaledReceiptNumber = buffer.getInt();
+                journaledTotalValue = buffer.getLong();
+                if (hasCosts) {
+                    journaledCostOfGoods = buffer.getLong();
+                    journaledSalaries = buffer.getLong();
+                }
+                hasSnapshot = true;
+                isConverted = !hasCosts;
+            } else if (size == DOUBLE_SNAPSHOT_SIZE && buffer.getInt(0) == SNAPSHOT_MAGIC
+                    && buffer.getInt(DOUBLE_SNAPSHOT_SIZE - Integer.BYTES) == checksum(buffer.array(), DOUBLE_SNAPSHOT_SIZE - Integer.BYTES)) {
+                buffer.position(Integer.BYTES);
+                snapshotGeneration = buffer.getInt();
+                journaledReceiptNumber = buffer.getInt();
+                journaledTotalValue = Money.fromDouble(Double.longBitsToDouble(buffer.getLong()));
+                hasSnapshot = true;
+                isConverted = true;
+            } else {
+                System.err.println("Error the snapshot of shop " + shopId + " is damaged, recovering from the journal");
+            }
+        }
+
+        // Replay the journal files that are not part of the snapshot in the order they were written
+        List<Integer> generations = journalGenerations();
+        boolean isLegacy = !hasSnapshot && generations.isEmpty();
+        if (isLegacy) {
+            // Migrate a shop that only has the old shop info file
+            readLegacyShopInfo();
+        }
+        generation = snapshotGeneration;
+        long validLength = 0;
+        for (int journalGeneration : generations) {
+            if (journalGeneration < snapshotGeneration) {
+                Files.deleteIfExists(journalPath(journalGeneration));
+                continue;
+            }
+            Path journalPath = journalPath(journalGeneration);
+            byte[] bytes = Files.readAllBytes(journalPath);
+            int version = journalVersion(bytes, journalPath);
+            isConverted |= version != VERSION;
+            validLength = replay(bytes, version);
+            generation = journalGeneration;
+        }
+
+        // Continue appending after the last complete record, a record that was cut off by a crash is dropped
+        Path journalPath = journalPath(generation);
+        if (Files.exists(journalPath) && Files.size(journalPath) > validLength) {
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        journal = openJournal(generation);
+
+        // Save the migrated or converted values right away so they don't depend on the old shop info file or the files of
+        // an older version anymore, the new records are never appended to a journal file of an older version
+        if ((isLegacy && journaledReceiptNumber > 0) || isConverted) {
+            snapshot();
+        }
+    }
+
+    // Return the version of the journal file from its header, a file without the header is of version 1
+    private static int journalVersion(byte[] bytes, Path journalPath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < JOURNAL_HEADER_SIZE || buffer.getInt(0) != JOURNAL_MAGIC) return DOUBLE_PRICE_VERSION;
+        int version = buffer.getInt(Integer.BYTES);
+        if (version != VERSION && version != WITHOUT_COSTS_VERSION) {
+            throw new IOException("Unknown version " + version + " of the journal " + journalPath);
+        }
+        return version;
+    }
+
+    // Replay the complete records of one journal file and return the length of the file that holds complete records
+    private long replay(byte[] bytes, int version) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int offset = version == DOUBLE_PRICE_VERSION ? 0 : JOURNAL_HEADER_SIZE;
+        while (offset + RECORD_SIZE <= bytes.length) {
+            int receiptNumberOrKind = buffer.getInt(offset);
+            long amount = version == DOUBLE_PRICE_VERSION
+                    ? Money.fromDouble(Double.longBitsToDouble(buffer.getLong(offset + Integer.BYTES)))
+                    : buffer.getLong(offset + Integer.BYTES);
+            int storedChecksum = buffer.getInt(offset + RECORD_SIZE - Integer.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, offset, RECORD_SIZE - Integer.BYTES);
+            if ((int) crc.getValue() != storedChecksum) break;
+
+            apply(receiptNumberOrKind, amount);
+            recordsSinceSnapshot++;
+            offset += RECORD_SIZE;
+        }
+        return offset;
+    }
+
+    // Read the receipt number and total value from the shop info file that was written before the journal existed
+    private void readLegacyShopInfo() throws IOException {
+        Path shopInfo = shopInfoPath();
+        if (!Files.exists(shopInfo)) return;
+        for (String line : Files.readAllLines(shopInfo)) {
+            if (line.startsWith("Receipt number: ")) {
+                journaledReceiptNumber = Integer.parseInt(line.split(":")[1].trim());
+            } else if (line.startsWith("Total value: ")) {
+                // Trim the line until only the total value is left and turn it into minor units
+                journaledTotalValue = Money.parse(line.split(":")[1].trim().split(" ")[0]);
+            }
+        }
+    }
+
+    // Rewrite the readable shop info file with the receipt number and total value of the last snapshot
+    private void writeShopInfo() throws IOException {
+        Path temporary = folder.resolve(shopId + "_shop_info.tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
+            writer.write(shopName + "\n");
+            writer.write("Receipt number: " + journaledReceiptNumber + "\n");
+            writer.write("Total value: " + Money.format(journaledTotalValue) + " " + currency + "\n");
+        }
+        Files.move(temporary, shopInfoPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Return the generations of all journal files of the shop sorted from the oldest to the newest
+    private List<Integer> journalGenerations() throws IOException {
+        List<Integer> generations = new ArrayList<>();
+        String prefix = shopId + "_journal_";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, prefix + "*.log")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                generations.add(Integer.parseInt(fileName.substring(prefix.length(), fileName.length() - ".log".length())));
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    // Open the journal file to append to it, a new file gets the header first
+    private FileChannel openJournal(int journalGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(journalGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE).putInt(JOURNAL_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        return channel;
+    }
+
+    private Path journalPath(int journalGeneration) { return folder.resolve(shopId + "_journal_" + journalGeneration + ".log"); }
+    private Path snapshotPath() { return folder.resolve(shopId + "_snapshot.bin"); }
+    private Path shopInfoPath() { return folder.resolve(shopId + "_shop_info.txt"); }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+}
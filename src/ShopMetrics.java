@@ -0,0 +1,202 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// This class holds the metrics of one shop, a latency histogram for each stage of the checkout and the counters of the
+// sold receipts and failed checkouts of the shop and of each of its cashiers. All of them are registered as JMX MXBeans
+// in the Shop domain, and a snapshot of them can be appended to a file in the Metrics folder every few seconds. The
+// stages are timed with System.nanoTime, the shop.metrics system property set to false turns the timing off
+class ShopMetrics implements AutoCloseable {
+    // The system properties that turn the timing off and set the seconds between two snapshots, 0 writes no snapshots
+    static final String ENABLED_PROPERTY = "shop.metrics";
+    static final String DUMP_INTERVAL_PROPERTY = "shop.metrics.dumpSeconds";
+    private static final boolean IS_ENABLED = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    private static final long DUMP_INTERVAL_SECONDS = Long.getLong(DUMP_INTERVAL_PROPERTY, 0);
+
+    // The name of the folder the snapshots are written in and the JMX domain of the metrics
+    private static final String METRICS_FOLDER = "Metrics";
+    private static final String DOMAIN = "Shop";
+
+    // One daemon thread writes the snapshots of all the shops, it is started by the first shop that needs it
+    private static ScheduledExecutorService dumpExecutor;
+
+    private final int shopId;
+    private final String shopName;
+    private final LatencyHistogram[] histograms;
+    private final CheckoutCounters counters;
+    private final Map<Integer, CheckoutCounters> cashierCounters;
+    private final List<ObjectName> registeredNames;
+    private final ScheduledFuture<?> dumpTask;
+
+    public ShopMetrics(int shopId, String shopName) {
+        // Initialize the instance variables with a histogram for each stage
+        this.shopId = shopId;
+        this.shopName = shopName;
+        this.histograms = new LatencyHistogram[CheckoutStage.values().length];
+        this.counters = new CheckoutCounters();
+        this.cashierCounters = new ConcurrentHashMap<>();
+        this.registeredNames = new CopyOnWriteArrayList<>();
+
+        // Register the counters of the shop and the histogram of each stage
+        register(counters, "type=Counters,shop=" + shopId);
+        for (CheckoutStage stage : CheckoutStage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram();
+            register(histograms[stage.ordinal()], "type=Latency,shop=" + shopId + ",stage=" + stage.getDisplayName());
+        }
+        this.dumpTask = DUMP_INTERVAL_SECONDS > 0
+                ? dumpExecutor().scheduleAtFixedRate(this::dump, DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                : null;
+    }
+
+    // Return the time a stage starts at, it is 0 when the timing is turned off
+    public long start() {
+        return IS_ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Count the time since the passed start in the histogram of the stage and return the time the stage ended,
+    // so it can be passed as the start of the next stage
+    public long record(CheckoutStage stage, long startNanos) {
+        if (!IS_ENABLED) return 0;
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - startNanos);
+        return now;
+    }
+
+    // Count a checkout of the cashier for the shop and for the cashier
+    public void sold(Cashier cashier, long items) {
+        counters.sold(items);
+        countersOf(cashier).sold(items);
+    }
+
+    public void insufficientFunds(Cashier cashier) {
+        counters.insufficientFunds();
+        countersOf(cashier).insufficientFunds();
+    }
+
+    public void insufficientQuantity(Cashier cashier) {
+        counters.insufficientQuantity();
+        countersOf(cashier).insufficientQuantity();
+    }
+
+    public void failure(Cashier cashier) {
+        counters.failure();
+        countersOf(cashier).failure();
+    }
+
+    public CheckoutCounters getCounters() { return counters; }
+    public LatencyHistogram getHistogram(CheckoutStage stage) { return histograms[stage.ordinal()]; }
+
+    // Return the text of the current metrics of the shop
+    public String snapshot() {
+        StringBuilder text = new StringBuilder();
+        text.append("Shop ").append(shopId).append(' ').append(shopName).append(" at ").append(LocalDateTime.now()).append('\n');
+        counters.appendTo(text);
+        text.append('\n');
+        // Write the cashiers in the order of their IDs
+        for (Map.Entry<Integer, CheckoutCounters> entry : new TreeMap<>(cashierCounters).entrySet()) {
+            text.append("Cashier ").append(entry.getKey()).append(": ");
+            entry.getValue().appendTo(text);
+            text.append('\n');
+        }
+        // Write the latencies of the stages that were timed in microseconds
+        for (CheckoutStage stage : CheckoutStage.values()) {
+            LatencyHistogram.Snapshot latency = histograms[stage.ordinal()].snapshot();
+            if (latency.getCount() == 0) continue;
+            text.append(String.format(Locale.ROOT, "%s: count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                    stage.getDisplayName(), latency.getCount(), latency.getMean() / 1000, latency.valueAt(50) / 1000.0,
+                    latency.valueAt(90) / 1000.0, latency.valueAt(99) / 1000.0, latency.valueAt(99.9) / 1000.0,
+                    latency.getMax() / 1000.0));
+        }
+        return text.toString();
+    }
+
+    // Append the current snapshot to the metrics file of the shop
+    public void dump() {
+        Path folder = DataFolder.resolve(METRICS_FOLDER);
+        try {
+            Files.createDirectories(folder);
+            Files.writeString(folder.resolve(shopId + "_metrics.log"), snapshot() + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            // Throw an exception in case the snapshot couldn't be written
+        } catch (IOException e) {
+            System.err.println("Error couldn't write the metrics of the shop " + shopId + ": " + e.getMessage());
+        }
+    }
+
+    // Stop writing snapshots, write the last one and remove the metrics of the shop from JMX
+    @Override
+    public void close() {
+        if (dumpTask != null) {
+            dumpTask.cancel(false);
+            dump();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // The metrics were already replaced by another shop with the same ID
+            }
+        }
+        registeredNames.clear();
+    }
+
+    // Return the counters of the cashier, the counters of a new cashier are created and registered the first time
+    private CheckoutCounters countersOf(Cashier cashier) {
+        CheckoutCounters cashierCounter = cashierCounters.get(cashier.getId());
+        if (cashierCounter == null) {
+            CheckoutCounters created = new CheckoutCounters();
+            cashierCounter = cashierCounters.putIfAbsent(cashier.getId(), created);
+            if (cashierCounter == null) {
+                cashierCounter = created;
+                register(created, "type=Counters,shop=" + shopId + ",cashier=" + cashier.getId());
+            }
+        }
+        return cashierCounter;
+    }
+
+    // Register the MXBean with the platform MBean server, the metrics of an older shop with the same ID are replaced.
+    // It is unregistered together with the metrics when the shop is closed
+    void register(Object bean, String properties) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            registeredNames.add(name);
+            // Throw an exception in case the metrics couldn't be registered, the shop works without them
+        } catch (JMException e) {
+            System.err.println("Error couldn't register the metrics " + properties + ": " + e.getMessage());
+        }
+    }
+
+    private static synchronized ScheduledExecutorService dumpExecutor() {
+        if (dumpExecutor == null) {
+            dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shop-metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dumpExecutor;
+    }
+}
@@ -0,0 +1,433 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// This class holds many shops that are saved together in one snapshot file. The file starts with a small header for
+// each shop with its id, name, currency, pricing rules, durability policy and inventory layout and the place of its goods and cashiers in the file. Opening
+// the registry only reads the headers, the shop with its journal, receipt writer and catalog is created the first time
+// it is asked for, so the startup and the first receipt of a shop take the same time no matter how many shops there
+// are. The shops that are not asked for yet can also be loaded in the background with warmUp
+class ShopRegistry implements AutoCloseable {
+    private static final int MAGIC = 0x53524547;
+    // Version 2 added the durability policy and the inventory layout to the header of each shop, the shops of a version 1
+    // snapshot are loaded with the defaults of the shop and saved as version 2 the next time
+    private static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_POLICY = 1;
+    // The type and date of expiry saved for goods that have none
+    private static final byte NO_TYPE = (byte) GoodsType.values().length;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+    // The name of the snapshot file in the shop info folder
+    static final String SNAPSHOT_FILE = "shops.snapshot";
+
+    private final Path file;
+    private final Executor warmUpExecutor;
+    // The shops of the registry by their id, sorted so the snapshot is always written in the same order
+    private final ConcurrentSkipListMap<Integer, Entry> entries = new ConcurrentSkipListMap<>();
+    // The goods and cashiers of the shops are read under the read lock, saving a new snapshot replaces the file under
+    // the write lock
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+
+    private ShopRegistry(Path file, Executor warmUpExecutor) {
+        // Initialize the instance variables
+        this.file = file;
+        this.warmUpExecutor = warmUpExecutor;
+    }
+
+    // Open the registry of the snapshot file in the shop info folder, the shops are loaded in the background on the
+    // common fork-join pool
+    public static ShopRegistry open() throws IOException {
+        return open(DataFolder.resolve(FileShopStateStore.SHOP_INFO_FOLDER).resolve(SNAPSHOT_FILE), ForkJoinPool.commonPool());
+    }
+
+    // Open the registry of the passed snapshot file and read the headers of its shops, a registry without a file is empty
+    public static ShopRegistry open(Path file, Executor warmUpExecutor) throws IOException {
+        ShopRegistry registry = new ShopRegistry(file, warmUpExecutor);
+        if (Files.exists(file)) {
+            registry.readHeaders();
+        }
+        return registry;
+    }
+
+    public int size() { return entries.size(); }
+
+    // Return the entries of all shops ordered by their id, the shops of the entries are loaded when they are asked for
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    // Return the shop with the passed id, it is loaded from the snapshot if this is the first time it is asked for
+    public Shop getShop(int shopId) {
+        Entry entry = entries.get(shopId);
+        // Use IllegalArgumentException for the exception as it is expected for the shop to exist
+        if (entry == null) throw new IllegalArgumentException("Shop not found");
+        return entry.getShop();
+    }
+
+    // Add a new shop to the registry, it is saved in the snapshot the next time the registry is saved
+    public void addShop(Shop shop) {
+        if (entries.putIfAbsent(shop.getId(), new Entry(shop)) != null) {
+            throw new IllegalArgumentException("There is already a shop with the id " + shop.getId());
+        }
+    }
+
+    // Load every shop that is not loaded yet on the warm up executor, the future completes when all of them are loaded
+    public CompletableFuture<Void> warmUp() {
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isLoaded()) {
+                loads.add(CompletableFuture.runAsync(entry::getShop, warmUpExecutor));
+            }
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // Return the profit in minor units of the passed number of days that end with today for every shop by its id. The
+    // loaded shops answer from their ledger in memory and the others from the ledger they saved, so no shop is loaded
+    public Map<Integer, Long> profitOfLastDays(int dayCount) throws IOException {
+        Map<Integer, Long> profits = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            ProfitLedger ledger = entry.isLoaded() ? entry.getShop().getLedger()
+                    : ProfitLedger.read(Storage.shopState(), entry.getId());
+            profits.put(entry.getId(), ledger != null ? ledger.profitOfLastDays(dayCount) : 0L);
+        }
+        return profits;
+    }
+
+    // Write the snapshot of all shops to a new file and replace the old snapshot with it in one step. The loaded shops
+    // are saved with their current goods, cashiers and costs and the others are copied from the old snapshot as they are
+    public void save() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            List<Entry> saved = new ArrayList<>(entries.values());
+            byte[][] bodies = new byte[saved.size()][];
+            for (int index = 0; index < bodies.length; index++) {
+                Entry entry = saved.get(index);
+                Shop shop = entry.shop;
+                bodies[index] = shop != null ? encodeBody(shop) : readBody(entry);
+            }
+
+            // The headers have the same size whatever the offsets are, so they are written once to find where the
+            // first body starts and then again with the real offsets
+            int headersSize = writeHeaders(saved, bodies, 0).length;
+            byte[] headers = writeHeaders(saved, bodies, headersSize);
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(output, ByteBuffer.wrap(headers));
+                for (byte[] body : bodies) {
+                    writeFully(output, ByteBuffer.wrap(body));
+                }
+                output.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // Read the shops that are not loaded yet from the new file from now on
+            if (channel != null) {
+                channel.close();
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long offset = headersSize;
+            for (int index = 0; index < bodies.length; index++) {
+                saved.get(index).setBody(offset, bodies[index].length, checksum(bodies[index]));
+                offset += bodies[index].length;
+            }
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    // Close the shops that were loaded and the snapshot file
+    @Override
+    public void close() {
+        for (Entry entry : entries.values()) {
+            Shop shop = entry.shop;
+            if (shop != null) {
+                shop.close();
+            }
+        }
+        fileLock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            // Throw an exception in case the snapshot file couldn't be closed
+        } catch (IOException e) {
+            System.err.println("Error couldn't close the shop snapshot " + e.getMessage());
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    // Read the header of every shop, the goods and cashiers after the headers are not read
+    private void readHeaders() throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = input.readInt() == MAGIC ? input.readInt() : -1;
+            if (version != VERSION && version != VERSION_WITHOUT_POLICY) {
+                throw new IOException("Unknown format of the shop snapshot " + file);
+            }
+            int count = input.readInt();
+            for (int index = 0; index < count; index++) {
+                Entry entry = new Entry(input, version);
+                entries.put(entry.id, entry);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    // Create the shop of the entry and put its goods and cashiers from the snapshot in it
+    private Shop load(Entry entry) {
+        byte[] body;
+        fileLock.readLock().lock();
+        try {
+            body = readBody(entry);
+            // Throw an exception in case the goods and cashiers of the shop couldn't be read
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't load the shop " + entry.id, e);
+        } finally {
+            fileLock.readLock().unlock();
+        }
+
+        // Read the whole body before the shop is created, so a damaged body doesn't leave a shop with a running writer
+        List<Goods> goods = new ArrayList<>();
+        List<Cashier> cashiers = new ArrayList<>();
+        long totalCosts;
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(body))) {
+            totalCosts = input.readLong();
+            int goodsCount = input.readInt();
+            for (int index = 0; index < goodsCount; index++) {
+                goods.add(readGoods(input));
+            }
+            int cashierCount = input.readInt();
+            for (int index = 0; index < cashierCount; index++) {
+                cashiers.add(new Cashier(input.readInt(), input.readUTF(), input.readDouble()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't load the shop " + entry.id, e);
+        }
+
+        Shop shop = new Shop(entry.id, entry.name, entry.currency, entry.overchargeFoodBasisPoints / 100.0,
+                entry.overchargeNonFoodBasisPoints / 100.0, entry.decreaseFoodBasisPoints / 100.0,
+                entry.decreaseNonFoodBasisPoints / 100.0, entry.daysTillExpiryFood, entry.daysTillExpiryNonFood,
+                entry.durabilityPolicy, entry.inventoryLayout);
+        shop.restore(goods, cashiers, totalCosts);
+        return shop;
+    }
+
+    // Read one goods of a body, the goods that were saved without a type or a date of expiry get none back and are
+    // sold like they were before the shop was saved. The buying price is kept in minor units
+    private static Goods readGoods(DataInputStream input) throws IOException {
+        int id = input.readInt();
+        String name = input.readUTF();
+        long buyingPrice = input.readLong();
+        byte type = input.readByte();
+        long expiryDay = input.readLong();
+        int quantity = input.readInt();
+        if (type < 0 || type > NO_TYPE) {
+            throw new IOException("Unknown type " + type + " of the goods " + id);
+        }
+        return new Goods(id, name, buyingPrice, type == NO_TYPE ? null : GoodsType.values()[type],
+                expiryDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(expiryDay), new AtomicInteger(quantity));
+    }
+
+    // Read the goods and cashiers of the entry from the snapshot file and check their checksum, the caller holds the lock
+    private byte[] readBody(Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.bodyLength);
+        long position = entry.bodyOffset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The shop snapshot ends before the goods of the shop " + entry.id);
+            }
+            position += read;
+        }
+        byte[] body = buffer.array();
+        if (checksum(body) != entry.bodyChecksum) {
+            throw new IOException("The goods of the shop " + entry.id + " in the snapshot are damaged");
+        }
+        return body;
+    }
+
+    // Write the total costs, the goods and the cashiers of the shop
+    private static byte[] encodeBody(Shop shop) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(shop.getTotalCostsMinor());
+            List<Goods> goods = shop.getAllGoods();
+            output.writeInt(goods.size());
+            for (Goods current : goods) {
+                output.writeInt(current.getId());
+                output.writeUTF(current.getName());
+                output.writeLong(current.getBuyingPriceMinor());
+                output.writeByte(current.getGoodsType() != null ? current.getGoodsType().ordinal() : NO_TYPE);
+                output.writeLong(current.getDateOfExpiry() != null ? current.getDateOfExpiry().toEpochDay() : NO_EXPIRY);
+                output.writeInt(current.getQuantity());
+            }
+            List<Cashier> cashiers = shop.getCashiers();
+            output.writeInt(cashiers.size());
+            for (Cashier cashier : cashiers) {
+                output.writeInt(cashier.getId());
+                output.writeUTF(cashier.getName());
+                output.writeDouble(cashier.getSalary());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Write the file header and the header of each shop with the bodies starting at the passed offset
+    private static byte[] writeHeaders(List<Entry> saved, byte[][] bodies, long firstBodyOffset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(saved.size());
+            long offset = firstBodyOffset;
+            for (int index = 0; index < bodies.length; index++) {
+                saved.get(index).writeHeader(output, offset, bodies[index].length, checksum(bodies[index]));
+                offset += bodies[index].length;
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    // The header of one shop of the registry and the shop itself once it is loaded
+    final class Entry {
+        private final int id;
+        private final String name;
+        private final String currency;
+        private final long overchargeFoodBasisPoints;
+        private final long overchargeNonFoodBasisPoints;
+        private final long decreaseFoodBasisPoints;
+        private final long decreaseNonFoodBasisPoints;
+        private final int daysTillExpiryFood;
+        private final int daysTillExpiryNonFood;
+        private final DurabilityPolicy durabilityPolicy;
+        private final InventoryLayout inventoryLayout;
+        // The place of the goods and cashiers of the shop in the snapshot file, it changes when the registry is saved
+        private long bodyOffset;
+        private int bodyLength;
+        private int bodyChecksum;
+        private volatile Shop shop;
+
+        // Read the header of a shop from a snapshot of the passed version
+        private Entry(DataInputStream input, int version) throws IOException {
+            this.id = input.readInt();
+            this.name = input.readUTF();
+            this.currency = input.readUTF();
+            this.overchargeFoodBasisPoints = input.readLong();
+            this.overchargeNonFoodBasisPoints = input.readLong();
+            this.decreaseFoodBasisPoints = input.readLong();
+            this.decreaseNonFoodBasisPoints = input.readLong();
+            this.daysTillExpiryFood = input.readInt();
+            this.daysTillExpiryNonFood = input.readInt();
+            if (version == VERSION_WITHOUT_POLICY) {
+                this.durabilityPolicy = DurabilityPolicy.PER_BATCH;
+                this.inventoryLayout = InventoryLayout.OBJECTS;
+            } else {
+                this.durabilityPolicy = DurabilityPolicy.values()[input.readByte()];
+                this.inventoryLayout = InventoryLayout.values()[input.readByte()];
+            }
+            this.bodyOffset = input.readLong();
+            this.bodyLength = input.readInt();
+            this.bodyChecksum = input.readInt();
+        }
+
+        // Create the entry of a shop that was added to the registry and is not in the snapshot yet
+        private Entry(Shop shop) {
+            this.id = shop.getId();
+            this.name = shop.getName();
+            this.currency = shop.getCurrency();
+            this.overchargeFoodBasisPoints = shop.getOverchargeFoodBasisPoints();
+            this.overchargeNonFoodBasisPoints = shop.getOverchargeNonFoodBasisPoints();
+            this.decreaseFoodBasisPoints = shop.getDecreaseFoodBasisPoints();
+            this.decreaseNonFoodBasisPoints = shop.getDecreaseNonFoodBasisPoints();
+            this.daysTillExpiryFood = shop.getDaysTillExpiryFood();
+            this.daysTillExpiryNonFood = shop.getDaysTillExpiryNonFood();
+            this.durabilityPolicy = shop.getDurabilityPolicy();
+            this.inventoryLayout = shop.getInventoryLayout();
+            this.shop = shop;
+        }
+
+        public int getId() { return id; }
+        public String getName() { return name; }
+        public String getCurrency() { return currency; }
+        public boolean isLoaded() { return shop != null; }
+
+        // Return the shop, the first cashier that asks for it loads it and the others wait for it
+        public Shop getShop() {
+            Shop current = shop;
+            if (current == null) {
+                synchronized (this) {
+                    current = shop;
+                    if (current == null) {
+                        current = load(this);
+                        shop = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        private void writeHeader(DataOutputStream output, long offset, int length, int checksum) throws IOException {
+            output.writeInt(id);
+            output.writeUTF(name);
+            output.writeUTF(currency);
+            output.writeLong(overchargeFoodBasisPoints);
+            output.writeLong(overchargeNonFoodBasisPoints);
+            output.writeLong(decreaseFoodBasisPoints);
+            output.writeLong(decreaseNonFoodBasisPoints);
+            output.writeInt(daysTillExpiryFood);
+            output.writeInt(daysTillExpiryNonFood);
+            output.writeByte(durabilityPolicy.ordinal());
+            output.writeByte(inventoryLayout.ordinal());
+            output.writeLong(offset);
+            output.writeInt(length);
+            output.writeInt(checksum);
+        }
+
+        private void setBody(long offset, int length, int checksum) {
+            this.bodyOffset = offset;
+            this.bodyLength = length;
+            this.bodyChecksum = checksum;
+        }
+    }
+}
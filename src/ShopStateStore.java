@@ -0,0 +1,36 @@
+import java.io.IOException;
+
+// The place the state of the shops is saved in between runs: the journal with the receipt numbers, the total value and
+// the costs of each shop and the saved profit ledger. The state is kept in the shop info folder or only in memory, see
+// StorageBackend
+interface ShopStateStore {
+    // Open the journal of the shop, it holds the last receipt number, total value and costs the shop had before
+    Journal openJournal(int shopId, String shopName, String currency) throws IOException;
+
+    // Return the bytes of the saved ledger of the shop, or null if the shop has no saved ledger
+    byte[] readLedger(int shopId) throws IOException;
+
+    // Replace the saved ledger of the shop with the passed bytes in one step
+    void writeLedger(int shopId, byte[] ledger) throws IOException;
+
+    // The journal of the sold receipts of one shop
+    interface Journal extends AutoCloseable {
+        int getReceiptNumber();
+        long getTotalValue();
+        long getCostOfGoods();
+        long getSalaries();
+
+        // Append the sale of one receipt, it is durable after the next sync
+        void append(int receiptNumber, long receiptTotalPrice) throws IOException;
+
+        // Append the buying price of delivered goods or the salary of a new cashier, it is durable after the next sync
+        void appendCostOfGoods(long cost) throws IOException;
+        void appendSalary(long salary) throws IOException;
+
+        // Force the appended sales to the disk
+        void sync() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+}
@@ -0,0 +1,7 @@
+// The queue of one worker of the shop executor as it is shown by JMX
+public interface ShopWorkerMXBean {
+    int getQueueDepth();
+    int getMaxQueueDepth();
+    long getCompletedTasks();
+    int getShopCount();
+}
@@ -0,0 +1,10 @@
+// The latencies of one stage of the checkout as they are shown by JMX, in microseconds
+public interface StageLatencyMXBean {
+    long getCount();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP90Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+}
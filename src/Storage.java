@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.util.Locale;
+
+// This class holds the stores the shops of the program save their receipts and their state in. The backend is taken
+// from the shop.storage system property, memory, files or segments, or set once at startup with use. The stores and
+// their folders are opened the first time they are needed and then shared by all shops, so nothing is created per receipt
+final class Storage {
+    // The name of the system property with the backend
+    static final String PROPERTY = "shop.storage";
+
+    private static StorageBackend backend;
+    private static ReceiptStore receipts;
+    private static ShopStateStore shopState;
+    // The txt and .ser files, they are also read for the receipts that were saved before the other backends existed
+    private static FileReceiptStore files;
+
+    private Storage() {
+    }
+
+    // Return the backend that is used, it is read from the system property the first time
+    public static synchronized StorageBackend backend() {
+        if (backend == null) {
+            backend = StorageBackend.valueOf(System.getProperty(PROPERTY, StorageBackend.SEGMENTS.name()).toUpperCase(Locale.ROOT));
+        }
+        return backend;
+    }
+
+    // Use the passed backend for all shops, it must be set before the first shop is created
+    public static synchronized void use(StorageBackend newBackend) {
+        if ((receipts != null || shopState != null) && newBackend != backend) {
+            throw new IllegalStateException("The storage is already opened with the " + backend + " backend");
+        }
+        backend = newBackend;
+    }
+
+    // Return the store of the receipts, open it the first time it is needed
+    public static synchronized ReceiptStore receipts() throws IOException {
+        if (receipts == null) {
+            receipts = switch (backend()) {
+                case MEMORY -> new MemoryReceiptStore();
+                case FILES -> files();
+                case SEGMENTS -> ReceiptSegmentStore.getDefault();
+            };
+        }
+        return receipts;
+    }
+
+    // Return the store of the journals and ledgers of the shops, open it the first time it is needed
+    public static synchronized ShopStateStore shopState() throws IOException {
+        if (shopState == null) {
+            shopState = backend() == StorageBackend.MEMORY ? new MemoryShopStateStore()
+                    : FileShopStateStore.open(DataFolder.resolve(FileShopStateStore.SHOP_INFO_FOLDER));
+        }
+        return shopState;
+    }
+
+    // Return the store of the txt and .ser files of the receipts, open it the first time it is needed
+    public static synchronized FileReceiptStore files() throws IOException {
+        if (files == null) {
+            files = FileReceiptStore.open();
+        }
+        return files;
+    }
+
+    // Close the stores that were opened, at the end of the program
+    public static synchronized void close() throws IOException {
+        if (receipts != null && receipts != files) {
+            receipts.close();
+        }
+        if (files != null) {
+            files.close();
+        }
+    }
+}
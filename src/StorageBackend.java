@@ -0,0 +1,9 @@
+// Create an enum to store the places the receipts and the state of the shops can be saved in
+enum StorageBackend {
+    // Everything is kept only in memory and lost when the program exits, for load tests without the disk
+    MEMORY,
+    // Each receipt is a txt and a .ser file and the state of the shops is in the shop info folder
+    FILES,
+    // The receipts are records in memory mapped segment files and the state of the shops is in the shop info folder
+    SEGMENTS
+}
@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+// This class holds a simulation of a busy day of the shops that runs the whole checkout, from Shop.checkout to the
+// receipt store, and prints a report for capacity planning. Every cashier of every shop is a thread that sells baskets
+// one after the other (closed loop) or at its share of a target rate (open loop). The goods of a basket are picked with
+// a Zipf popularity so a few goods are in most baskets, the number of lines follows a geometric distribution, some of
+// the goods are close to their expiry and sold with a discount, and a share of the baskets is paid by a client without
+// enough money or asks for more than the stock. After a warm up the run is measured and the report shows the receipts
+// per second, the latency percentiles of the checkout, the allocation rate and the bytes on the disk per receipt.
+// The workload is set with system properties:
+// workload.shops, workload.cashiers (per shop), workload.goods (per shop), workload.zipf (exponent, 0 is uniform),
+// workload.basketMean and workload.basketMax (lines per basket), workload.fundsFailures and workload.stockFailures
+// (share of the baskets), workload.expiring and workload.expired (share of the goods), workload.rate (receipts per
+// second of all cashiers, 0 runs closed loop), workload.seconds, workload.warmupSeconds, workload.seed,
+// workload.durability and workload.layout, and shop.storage and shop.data.dir for where the receipts are saved
+class WorkloadGenerator {
+    // The stock of every goods, big enough that the normal baskets never run out of it in a run
+    private static final int STOCK = 1_000_000_000;
+    // The money of a client that can pay every normal basket and of a client that can't pay any basket
+    private static final double RICH_MONEY = 1e12;
+    private static final double POOR_MONEY = 0.01;
+    // The folders the stores save the receipts and the state of the shops in, their growth is the size on the disk
+    private static final String[] STORAGE_FOLDERS = {ReceiptSegmentStore.SEGMENT_FOLDER, FileReceiptStore.TEXT_FOLDER,
+            FileReceiptStore.ENCODED_FOLDER, FileShopStateStore.SHOP_INFO_FOLDER};
+
+    private final int shopCount = Integer.getInteger("workload.shops", 2);
+    private final int cashierCount = Integer.getInteger("workload.cashiers", 4);
+    private final int goodsCount = Integer.getInteger("workload.goods", 10_000);
+    private final double zipfExponent = doubleProperty("workload.zipf", 1.0);
+    private final double basketMean = doubleProperty("workload.basketMean", 4);
+    private final int basketMax = Integer.getInteger("workload.basketMax", 20);
+    private final double fundsFailures = doubleProperty("workload.fundsFailures", 0.02);
+    private final double stockFailures = doubleProperty("workload.stockFailures", 0.02);
+    private final double expiringGoods = doubleProperty("workload.expiring", 0.2);
+    private final double expiredGoods = doubleProperty("workload.expired", 0);
+    private final double rate = doubleProperty("workload.rate", 0);
+    private final long seconds = Long.getLong("workload.seconds", 10);
+    private final long warmupSeconds = Long.getLong("workload.warmupSeconds", 3);
+    private final long seed = Long.getLong("workload.seed", 42);
+    private final DurabilityPolicy durability = DurabilityPolicy.valueOf(System.getProperty("workload.durability", "PER_BATCH").toUpperCase(Locale.ROOT));
+    private final InventoryLayout layout = InventoryLayout.valueOf(System.getProperty("workload.layout", "OBJECTS").toUpperCase(Locale.ROOT));
+
+    // The cashiers sell until the run is over, their latencies are recorded in a new histogram after the warm up. The
+    // checkouts are counted by the status of their result, the failing baskets are expected and are not printed
+    private volatile boolean isRunning = true;
+    private volatile LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLongArray statuses = new AtomicLongArray(CheckoutResult.Status.values().length);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        new WorkloadGenerator().run();
+    }
+
+    public void run() throws IOException, InterruptedException {
+        long diskBefore = diskUsage();
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Shop> shops = new ArrayList<>();
+        for (int shopId = 1; shopId <= shopCount; shopId++) {
+            shops.add(createShop(shopId, random.split()));
+        }
+
+        // Start one thread for every cashier of every shop, in open loop each of them sells its share of the rate
+        ZipfDistribution popularity = new ZipfDistribution(goodsCount, zipfExponent);
+        long periodNanos = rate > 0 ? Math.round(1e9 * shopCount * cashierCount / rate) : 0;
+        List<Thread> threads = new ArrayList<>();
+        for (Shop shop : shops) {
+            for (int cashierId = 1; cashierId <= cashierCount; cashierId++) {
+                Cashier cashier = new Cashier(cashierId, "Cashier " + cashierId, 1500);
+                shop.addCashierToList(cashier);
+                SplittableRandom cashierRandom = random.split();
+                Thread thread = new Thread(() -> sell(shop, cashier, popularity, cashierRandom, periodNanos),
+                        "workload-shop-" + shop.getId() + "-cashier-" + cashierId);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        // Let the JIT compile the checkout and the stores fill their buffers, then measure the run from a clean state
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        latencies = new LatencyHistogram();
+        long[] countersBefore = counters();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(seconds);
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        long[] countersAfter = counters();
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+
+        // Stop the cashiers and save everything that is still waiting before the size on the disk is measured
+        isRunning = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long soldReceipts = statuses.get(CheckoutResult.Status.SOLD.ordinal());
+        for (Shop shop : shops) {
+            shop.close();
+        }
+        long diskBytes = diskUsage() - diskBefore;
+
+        // Print the report of the measured part of the run
+        double elapsedSeconds = elapsed / 1e9;
+        long sold = countersAfter[CheckoutResult.Status.SOLD.ordinal()] - countersBefore[CheckoutResult.Status.SOLD.ordinal()];
+        long checkouts = snapshot.getCount();
+        System.out.println("Shops: " + shopCount + ", cashiers: " + shopCount * cashierCount + ", goods per shop: " + goodsCount
+                + ", storage: " + Storage.backend() + ", durability: " + durability + ", inventory: " + layout);
+        System.out.println(rate > 0 ? "Open loop at " + Math.round(rate) + " checkouts per second" : "Closed loop");
+        System.out.println("Receipts: " + sold + " in " + elapsed / 1_000_000 + " ms, " + Math.round(sold / elapsedSeconds)
+                + " per second, checkouts: " + Math.round(checkouts / elapsedSeconds) + " per second");
+        List<String> counts = new ArrayList<>();
+        for (CheckoutResult.Status status : CheckoutResult.Status.values()) {
+            counts.add(status + "=" + (countersAfter[status.ordinal()] - countersBefore[status.ordinal()]));
+        }
+        System.out.println("Checkouts: " + String.join(", ", counts));
+        System.out.printf(Locale.ROOT, "Latency micros: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n", snapshot.valueAt(50) / 1000.0,
+                snapshot.valueAt(99) / 1000.0, snapshot.valueAt(99.9) / 1000.0, snapshot.getMax() / 1000.0);
+        if (allocatedBefore >= 0 && allocatedAfter >= 0 && checkouts > 0) {
+            long allocated = allocatedAfter - allocatedBefore;
+            System.out.printf(Locale.ROOT, "Allocation: %.1f MB per second, %d bytes per checkout%n",
+                    allocated / elapsedSeconds / (1024 * 1024), allocated / checkouts);
+        } else {
+            System.out.println("Allocation: not measured by this runtime");
+        }
+        System.out.printf(Locale.ROOT, "Disk: %d bytes for %d receipts, %.1f bytes per receipt%n", diskBytes, soldReceipts,
+                soldReceipts > 0 ? (double) diskBytes / soldReceipts : 0.0);
+        Storage.close();
+    }
+
+    // Create the shop with its catalog, a share of the goods expires within the days the shop gives a discount on them
+    // and a share is already expired
+    private Shop createShop(int shopId, SplittableRandom random) {
+        Shop shop = new Shop(shopId, "Workload shop " + shopId, "BGN", 20, 40, 10, 5, 7, 10, durability, layout);
+        LocalDate today = LocalDate.now();
+        List<Goods> catalog = new ArrayList<>(goodsCount);
+        for (int goodsId = 1; goodsId <= goodsCount; goodsId++) {
+            GoodsType goodsType = random.nextBoolean() ? GoodsType.FOOD : GoodsType.NON_FOOD;
+            int daysTillExpiry = goodsType == GoodsType.FOOD ? shop.getDaysTillExpiryFood() : shop.getDaysTillExpiryNonFood();
+            double kind = random.nextDouble();
+            LocalDate dateOfExpiry = kind < expiredGoods ? today.minusDays(1)
+                    : kind < expiredGoods + expiringGoods ? today.plusDays(random.nextInt(daysTillExpiry))
+                    : today.plusDays(365);
+            catalog.add(new Goods(goodsId, "Goods " + goodsId, 0.5 + random.nextInt(5000) / 100.0, goodsType, dateOfExpiry, STOCK));
+        }
+        shop.addAllGoodsToList(catalog);
+        return shop;
+    }
+
+    // Sell baskets until the run is over. In open loop every checkout has its planned start time, a checkout that
+    // starts late because the one before it was slow is counted from its planned start so the waiting is not hidden,
+    // one that is on time is counted from when the thread wakes up so the oversleeping of the thread is not counted
+    private void sell(Shop shop, Cashier cashier, ZipfDistribution popularity, SplittableRandom random, long periodNanos) {
+        Client richClient = new Client(RICH_MONEY);
+        Client poorClient = new Client(POOR_MONEY);
+        Map<Integer, Integer> items = new HashMap<>();
+        long plannedStart = System.nanoTime();
+        while (isRunning) {
+            // Create a basket with a geometric number of lines of popular goods, some baskets ask for more than the stock
+            items.clear();
+            int lineCount = lineCount(random);
+            for (int line = 0; line < lineCount; line++) {
+                items.merge(popularity.sample(random), 1 + random.nextInt(3), Integer::sum);
+            }
+            if (random.nextDouble() < stockFailures) {
+                items.merge(popularity.sample(random), STOCK + 1, Integer::sum);
+            }
+            Client client = random.nextDouble() < fundsFailures ? poorClient : richClient;
+
+            long start;
+            if (periodNanos > 0) {
+                long wait = plannedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    start = System.nanoTime();
+                } else {
+                    start = plannedStart;
+                }
+                plannedStart += periodNanos;
+            } else {
+                start = System.nanoTime();
+            }
+            CheckoutResult result = shop.checkout(cashier, items, client);
+            latencies.record(System.nanoTime() - start);
+            statuses.incrementAndGet(result.getStatus().ordinal());
+        }
+    }
+
+    // Return the number of lines of the next basket, from 1 to the most lines with the mean number of lines
+    private int lineCount(SplittableRandom random) {
+        if (basketMean <= 1) return 1;
+        double extraLines = Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / basketMean);
+        return (int) Math.min(basketMax, 1 + extraLines);
+    }
+
+    // Return the checkouts of all cashiers so far by the status of their result
+    private long[] counters() {
+        long[] counters = new long[statuses.length()];
+        for (int status = 0; status < counters.length; status++) {
+            counters[status] = statuses.get(status);
+        }
+        return counters;
+    }
+
+    // Return the bytes all live threads allocated so far, or -1 if the runtime doesn't count them
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean allocations) || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    // Return the size of all files in the storage folders of the data folder
+    private static long diskUsage() throws IOException {
+        long total = 0;
+        for (String folder : STORAGE_FOLDERS) {
+            Path path = DataFolder.resolve(folder);
+            if (!Files.isDirectory(path)) continue;
+            try (Stream<Path> files = Files.walk(path)) {
+                total += files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+            }
+        }
+        return total;
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    // The popularity of the goods, the goods with the ID k is picked in proportion to 1 / k^exponent. The cumulative
+    // shares are computed once and a goods is picked with a binary search
+    static final class ZipfDistribution {
+        private final double[] cumulative;
+
+        ZipfDistribution(int size, double exponent) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int rank = 1; rank <= size; rank++) {
+                sum += 1 / Math.pow(rank, exponent);
+                cumulative[rank - 1] = sum;
+            }
+            for (int rank = 0; rank < size; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        // Return the ID of the next picked goods, from 1 to the number of goods
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1) + 1;
+        }
+    }
+}
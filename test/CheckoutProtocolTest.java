@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// This class holds the tests of the messages of the checkout server: the frames of the requests and the responses
+// read back the way they were written, and the broken requests and responses that are refused
+class CheckoutProtocolTest {
+
+    @Test
+    void readsTheRequestItWrote() throws IOException {
+        Map<Integer, Integer> items = new LinkedHashMap<>();
+        items.put(101, 2);
+        items.put(102, 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckoutProtocol.writeRequest(new DataOutputStream(bytes), 7, 3, 5000, items);
+        CheckoutProtocol.writeRequest(new DataOutputStream(bytes), 8, 4, 0, Map.of());
+
+        DataInputStream input = input(bytes.toByteArray());
+        CheckoutProtocol.Request request = CheckoutProtocol.readRequest(input);
+        CheckoutProtocol.Request empty = CheckoutProtocol.readRequest(input);
+
+        assertEquals(7, request.getShopId());
+        assertEquals(3, request.getCashierId());
+        assertEquals(5000, request.getMoney());
+        assertEquals(items, request.getItems());
+        assertEquals(8, empty.getShopId());
+        assertEquals(Map.of(), empty.getItems());
+        // The connection was closed after the last request
+        assertNull(CheckoutProtocol.readRequest(input));
+    }
+
+    @Test
+    void addsTheQuantitiesOfTheSameGoodsTogether() throws IOException {
+        byte[] frame = request(36, 7, 3, 5000, 2, 101, 2, 101, 3);
+
+        assertEquals(Map.of(101, 5), CheckoutProtocol.readRequest(input(frame)).getItems());
+    }
+
+    @Test
+    void refusesTheBrokenRequests() {
+        // A frame that is empty, too long, or doesn't match the number of its lines
+        assertRefused(ints(0));
+        assertRefused(ints(CheckoutProtocol.MAX_FRAME_LENGTH + 1));
+        assertRefused(request(36, 7, 3, 5000, 1, 101, 2));
+        assertRefused(request(20, 7, 3, 5000, -1));
+        // A negative money, a quantity that is not positive and quantities whose sum doesn't fit in an int
+        assertRefused(request(20, 7, 3, -1, 0));
+        assertRefused(request(28, 7, 3, 5000, 1, 101, 0));
+        assertRefused(request(36, 7, 3, 5000, 2, 101, Integer.MAX_VALUE, 101, 1));
+        // A frame that ends before its lines
+        assertThrows(IOException.class, () -> CheckoutProtocol.readRequest(input(ints(36, 7, 3, 0, 5000, 2, 101, 1))));
+    }
+
+    @Test
+    void readsTheResponsesItWrote() throws IOException {
+        Receipt receipt = new Receipt(7, "Shop", "BGN", new Cashier(3, "Kara Clark", 1500), 42, LocalDateTime.now());
+        receipt.addSaleOfGoods(Goods.ofReceiptLine(101, "Strawberry"), 2, 240);
+        receipt.addSaleOfGoods(Goods.ofReceiptLine(102, "Pants"), 1, 7000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        CheckoutProtocol.writeResponse(output, frame, CheckoutResult.sold(receipt));
+        CheckoutProtocol.writeResponse(output, frame, CheckoutResult.failed(CheckoutResult.Status.INSUFFICIENT_FUNDS, "Not enough funds"));
+        CheckoutProtocol.writeResponse(output, frame, CheckoutResult.failed(CheckoutResult.Status.REJECTED, null));
+
+        DataInputStream input = input(bytes.toByteArray());
+        CheckoutProtocol.Response sold = CheckoutProtocol.readResponse(input);
+        CheckoutProtocol.Response insufficientFunds = CheckoutProtocol.readResponse(input);
+        CheckoutProtocol.Response rejected = CheckoutProtocol.readResponse(input);
+
+        assertEquals(CheckoutResult.Status.SOLD, sold.getStatus());
+        assertEquals(42, sold.getReceiptId());
+        assertEquals(7480, sold.getTotalPrice());
+        assertEquals(2, sold.getLineCount());
+        assertEquals(CheckoutResult.Status.INSUFFICIENT_FUNDS, insufficientFunds.getStatus());
+        assertEquals("Not enough funds", insufficientFunds.getMessage());
+        assertEquals(CheckoutResult.Status.REJECTED, rejected.getStatus());
+        assertEquals("", rejected.getMessage());
+        // The server closed the connection after the last response
+        assertThrows(IOException.class, () -> CheckoutProtocol.readResponse(input));
+    }
+
+    @Test
+    void refusesAResponseWithAnUnknownStatus() {
+        byte[] frame = {0, 0, 0, 3, (byte) CheckoutResult.Status.values().length, 0, 0};
+
+        assertThrows(IOException.class, () -> CheckoutProtocol.readResponse(input(frame)));
+    }
+
+    private static void assertRefused(byte[] frame) {
+        assertThrows(IOException.class, () -> CheckoutProtocol.readRequest(input(frame)));
+    }
+
+    // Return the frame of a request with the passed length, header and goods IDs and quantities of its lines
+    private static byte[] request(int length, int shopId, int cashierId, long money, int lineCount, int... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(length);
+            output.writeInt(shopId);
+            output.writeInt(cashierId);
+            output.writeLong(money);
+            output.writeInt(lineCount);
+            for (int value : lines) {
+                output.writeInt(value);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ints(int... values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            for (int value : values) {
+                output.writeInt(value);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+}
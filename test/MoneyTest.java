@@ -0,0 +1,47 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// This class holds the tests of the money arithmetic: the conversions into minor units, the rounding of the percentages
+// and the formatting of the amounts
+class MoneyTest {
+
+    @Test
+    void convertsTheAmountsIntoMinorUnitsWithoutTheErrorsOfTheDoubles() {
+        assertEquals(1234, Money.fromDouble(12.34));
+        assertEquals(30, Money.fromDouble(0.1 + 0.2));
+        assertEquals(101, Money.fromDouble(1.005));
+        assertEquals(-250, Money.fromDouble(-2.5));
+        assertEquals(1250, Money.percentageToBasisPoints(12.5));
+        assertEquals(42_600, Money.parse(" 426.00 "));
+        assertEquals(1001, Money.parse("10.005"));
+    }
+
+    @Test
+    void roundsTheHalvesOfThePercentagesAwayFromZero() {
+        // 2.00 with 20% is exactly 2.40, 0.05 with 10% is 0.055 and 0.05 less 10% is 0.045
+        assertEquals(240, Money.addPercentage(200, 2000));
+        assertEquals(6, Money.addPercentage(5, 1000));
+        assertEquals(5, Money.subtractPercentage(5, 1000));
+        assertEquals(-6, Money.addPercentage(-5, 1000));
+        assertEquals(4, Money.subtractPercentage(5, 1100));
+        assertEquals(0, Money.subtractPercentage(1234, 10_000));
+    }
+
+    @Test
+    void throwsInsteadOfOverflowing() {
+        assertEquals(7_500, Money.multiply(2_500, 3));
+        assertThrows(ArithmeticException.class, () -> Money.multiply(Long.MAX_VALUE / 2, 3));
+        assertThrows(ArithmeticException.class, () -> Money.addPercentage(Long.MAX_VALUE / 2, 100));
+    }
+
+    @Test
+    void formatsTheAmountsWithTwoDecimals() {
+        assertEquals("426.00", Money.format(42_600));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("-12.34", Money.format(-1234));
+        assertEquals(12.34, Money.toDouble(1234));
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// This class holds the tests of the receipt archive: the lookup through the sparse index of the blocks, the blocks that
+// never mix the receipts of two shops, and the damaged archives that are refused
+class ReceiptArchiveTest {
+    private static final int RECORDS_PER_BLOCK = 4;
+
+    @TempDir
+    Path folder;
+    private Path path;
+
+    @BeforeEach
+    void writeArchive() throws IOException {
+        // The records of two shops out of order, and receipt 5 of shop 1 written a second time after the first one
+        ReceiptStore.Batch batch = new ReceiptStore.Batch();
+        for (int receiptId = 10; receiptId >= 1; receiptId--) {
+            add(batch, 2, receiptId, "Receipt " + receiptId + " of shop 2");
+        }
+        for (int receiptId : new int[]{3, 1, 9, 5, 2, 8, 4, 6, 7}) {
+            add(batch, 1, receiptId, "Receipt " + receiptId + " of shop 1");
+        }
+        add(batch, 1, 5, "Reprinted receipt 5 of shop 1");
+
+        path = folder.resolve("segment_00000000.arc");
+        ByteBuffer segment = ByteBuffer.wrap(batch.buffer, 0, batch.length);
+        long[] offsets = Arrays.stream(batch.starts, 0, batch.size()).asLongStream().toArray();
+        ReceiptArchive.write(path, segment, offsets, RECORDS_PER_BLOCK);
+    }
+
+    @Test
+    void findsEveryReceiptThroughTheSparseIndex() throws IOException {
+        ReceiptArchive archive = ReceiptArchive.open(path);
+
+        assertEquals(19, archive.getRecordCount());
+        for (int receiptId = 1; receiptId <= 10; receiptId++) {
+            assertEquals("Receipt " + receiptId + " of shop 2", textOf(archive.readRecord(2, receiptId)));
+        }
+        for (int receiptId = 1; receiptId <= 9; receiptId++) {
+            String expected = receiptId == 5 ? "Reprinted receipt 5 of shop 1" : "Receipt " + receiptId + " of shop 1";
+            assertEquals(expected, textOf(archive.readRecord(1, receiptId)));
+        }
+        // The keys before the first block, between the shops and after the last block are not in the archive
+        assertNull(archive.readRecord(0, 1));
+        assertNull(archive.readRecord(1, 0));
+        assertNull(archive.readRecord(1, 10));
+        assertNull(archive.readRecord(2, 11));
+        assertNull(archive.readRecord(3, 1));
+    }
+
+    @Test
+    void keepsTheReceiptsOfEachShopInTheirOwnBlocks() throws IOException {
+        ReceiptArchive archive = ReceiptArchive.open(path);
+
+        // 9 receipts of shop 1 and 10 of shop 2 in blocks of at most 4 receipts
+        assertEquals(6, archive.getBlockCount());
+        long previousKey = Long.MIN_VALUE;
+        for (int block = 0; block < archive.getBlockCount(); block++) {
+            ByteBuffer records = archive.block(block);
+            long[] offsets = ReceiptArchive.recordOffsets(records);
+            assertEquals(block == 2 ? 1 : block == 5 ? 2 : RECORDS_PER_BLOCK, offsets.length);
+            for (long offset : offsets) {
+                long key = ReceiptIndex.key(records.getInt((int) offset + Integer.BYTES), records.getInt((int) offset + Integer.BYTES * 2));
+                assertEquals(archive.getLastKey(block) >>> 32, key >>> 32);
+                assertTrue(key > previousKey);
+                previousKey = key;
+            }
+            assertEquals(archive.getLastKey(block), previousKey);
+        }
+    }
+
+    @Test
+    void refusesTheDamagedBlocksAndArchives() throws IOException {
+        // Damage the first compressed block, the blocks after it can still be read
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[0] ^= 0x7F;
+        Files.write(path, bytes);
+        ReceiptArchive archive = ReceiptArchive.open(path);
+
+        assertThrows(IOException.class, () -> archive.readRecord(1, 1));
+        assertNotNull(archive.readRecord(2, 10));
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> ReceiptArchive.open(path));
+    }
+
+    private static void add(ReceiptStore.Batch batch, int shopId, int receiptId, String text) {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        batch.add(shopId, receiptId, textBytes, textBytes.length, new byte[]{(byte) shopId, (byte) receiptId});
+    }
+
+    private static String textOf(ByteBuffer record) {
+        assertNotNull(record);
+        int textLength = record.getInt(Integer.BYTES * 3);
+        byte[] text = new byte[textLength];
+        record.get(ReceiptSegmentStore.RECORD_HEADER_SIZE, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,276 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// This class holds the tests of the receipt codec: the round trip of the current version, the receipts of version 1
+// with the prices as doubles, the scan without decoding and the old Java serialized receipts
+class ReceiptCodecTest {
+    private static final LocalDateTime DATE_TIME = LocalDateTime.of(2024, 3, 15, 10, 30, 5, 123_000_000);
+
+    @Test
+    void decodesTheReceiptItEncoded() throws IOException {
+        Receipt receipt = receipt();
+
+        Receipt decoded = ReceiptCodec.decode(ByteBuffer.wrap(ReceiptCodec.encode(receipt)));
+
+        assertSameReceipt(receipt, decoded);
+    }
+
+    @Test
+    void readsTheReceiptsOfVersionOneWithThePricesAsDoubles() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, ReceiptCodec.MAGIC);
+        writeVarLong(out, 1);
+        writeVarLong(out, 7);
+        writeString(out, "Shop");
+        writeString(out, "BGN");
+        writeVarLong(out, 42);
+        writeVarLong(out, 3);
+        writeString(out, "Kara Clark");
+        writeVarLong(out, DATE_TIME.toEpochSecond(ZoneOffset.UTC));
+        writeVarLong(out, DATE_TIME.getNano());
+        writeVarLong(out, 1);
+        writeVarLong(out, 101);
+        writeString(out, "Strawberry");
+        writeVarLong(out, 2);
+        writeLong(out, Double.doubleToLongBits(2.4));
+
+        Receipt decoded = ReceiptCodec.read(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(42, decoded.getReceiptId());
+        assertEquals("Kara Clark", decoded.getCashier().getName());
+        assertEquals(DATE_TIME, decoded.getDateTime());
+        assertEquals(1, decoded.getLineCount());
+        assertEquals(240, decoded.getLinePriceMinor(0));
+        assertEquals(480, decoded.getTotalPriceMinor());
+    }
+
+    @Test
+    void scansTheNumbersOfTheReceipt() throws IOException {
+        Receipt receipt = receipt();
+        List<String> visited = new ArrayList<>();
+
+        ReceiptCodec.scan(ByteBuffer.wrap(ReceiptCodec.encode(receipt)), new ReceiptCodec.Visitor() {
+            @Override
+            public void receipt(int shopId, int receiptId, int cashierId, long epochSecond) {
+                visited.add(shopId + " " + receiptId + " " + cashierId + " " + epochSecond);
+            }
+
+            @Override
+            public void line(int goodsId, int quantity, long price) {
+                visited.add(goodsId + " " + quantity + " " + price);
+            }
+
+            @Override
+            public void end() {
+                visited.add("end");
+            }
+        });
+
+        assertEquals(List.of("7 42 3 " + DATE_TIME.toEpochSecond(ZoneOffset.UTC), "101 2 240", "102 1 -5000", "end"), visited);
+    }
+
+    @Test
+    void rejectsDataThatIsNotACompleteReceipt() {
+        byte[] encoded = ReceiptCodec.encode(receipt());
+        byte[] cutOff = new byte[encoded.length - 1];
+        System.arraycopy(encoded, 0, cutOff, 0, cutOff.length);
+        byte[] unknownVersion = encoded.clone();
+        unknownVersion[Integer.BYTES] = 9 << 1;
+
+        assertThrows(IOException.class, () -> ReceiptCodec.decode(ByteBuffer.wrap(cutOff)));
+        assertThrows(IOException.class, () -> ReceiptCodec.decode(ByteBuffer.wrap(unknownVersion)));
+        assertThrows(IOException.class, () -> ReceiptCodec.decode(ByteBuffer.wrap("not a receipt".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void convertsTheOldJavaSerializedReceipt() throws IOException, ClassNotFoundException {
+        OldGoods strawberry = new OldGoods(101, "Strawberry", 2.0);
+        OldGoods pants = new OldGoods(102, "Pants", 50.0);
+        OldShop shop = new OldShop();
+        shop.id = 7;
+        shop.name = "Shop";
+        shop.shopCurrency = "BGN";
+        shop.allGoods = List.of(strawberry, pants);
+        OldReceipt old = new OldReceipt();
+        old.receiptId = 42;
+        old.cashier = new Cashier(3, "Kara Clark", 1500);
+        old.dateTime = DATE_TIME;
+        old.soldGoods = new HashMap<>(Map.of(strawberry, 2, pants, 1));
+        old.goodsPrices = new HashMap<>(Map.of(strawberry, 2.4, pants, 70.0));
+        old.totalPrice = 74.8;
+        old.shopId = 7;
+        old.shopName = "Shop";
+        old.shop = shop;
+
+        Receipt receipt = ReceiptCodec.read(ByteBuffer.wrap(serializeAsOldClasses(old)));
+
+        assertEquals(42, receipt.getReceiptId());
+        assertEquals("BGN", receipt.getCurrency());
+        assertEquals(3, receipt.getCashier().getId());
+        assertEquals(DATE_TIME, receipt.getDateTime());
+        assertEquals(2, receipt.getLineCount());
+        assertEquals(7480, receipt.getTotalPriceMinor());
+        // The converted receipt is written in the current version
+        assertSameReceipt(receipt, ReceiptCodec.decode(ByteBuffer.wrap(ReceiptCodec.encode(receipt))));
+    }
+
+    // A receipt with a discounted line and a line with a negative price, to check the zigzag encoding
+    private static Receipt receipt() {
+        Receipt receipt = new Receipt(7, "Shop", "BGN", new Cashier(3, "Kara Clark", 1500), 42, DATE_TIME);
+        receipt.addSaleOfGoods(Goods.ofReceiptLine(101, "Strawberry"), 2, 240);
+        receipt.addSaleOfGoods(Goods.ofReceiptLine(102, "Pants"), 1, -5000);
+        return receipt;
+    }
+
+    private static void assertSameReceipt(Receipt expected, Receipt actual) {
+        assertEquals(expected.getShopId(), actual.getShopId());
+        assertEquals(expected.getShopName(), actual.getShopName());
+        assertEquals(expected.getCurrency(), actual.getCurrency());
+        assertEquals(expected.getReceiptId(), actual.getReceiptId());
+        assertEquals(expected.getCashier().getId(), actual.getCashier().getId());
+        assertEquals(expected.getCashier().getName(), actual.getCashier().getName());
+        assertEquals(expected.getDateTime(), actual.getDateTime());
+        assertEquals(expected.getLineCount(), actual.getLineCount());
+        for (int line = 0; line < expected.getLineCount(); line++) {
+            assertEquals(expected.getLineGoods(line).getId(), actual.getLineGoods(line).getId());
+            assertEquals(expected.getLineGoods(line).getName(), actual.getLineGoods(line).getName());
+            assertEquals(expected.getLineQuantity(line), actual.getLineQuantity(line));
+            assertEquals(expected.getLinePriceMinor(line), actual.getLinePriceMinor(line));
+        }
+        assertEquals(expected.getTotalPriceMinor(), actual.getTotalPriceMinor());
+    }
+
+    // Serialize the object and rename the classes of the test to the names the old receipt, shop and goods classes had
+    private static byte[] serializeAsOldClasses(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        byte[] serialized = bytes.toByteArray();
+        for (String name : List.of("Receipt", "Shop", "Goods")) {
+            serialized = replaceUtf(serialized, ReceiptCodecTest.class.getName() + "$Old" + name, name);
+            serialized = replaceUtf(serialized, "L" + ReceiptCodecTest.class.getName() + "$Old" + name + ";", "L" + name + ";");
+        }
+        return serialized;
+    }
+
+    // Replace every string that was written with writeUTF, with its length in front of it
+    private static byte[] replaceUtf(byte[] bytes, String from, String to) {
+        byte[] pattern = utf(from);
+        byte[] replacement = utf(to);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int index = 0;
+        while (index < bytes.length) {
+            if (startsWith(bytes, index, pattern)) {
+                out.write(replacement, 0, replacement.length);
+                index += pattern.length;
+            } else {
+                out.write(bytes[index++]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] utf(String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Short.BYTES + encoded.length).putShort((short) encoded.length).put(encoded).array();
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] pattern) {
+        if (offset + pattern.length > bytes.length) return false;
+        for (int index = 0; index < pattern.length; index++) {
+            if (bytes[offset + index] != pattern[index]) return false;
+        }
+        return true;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        out.writeBytes(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, encoded.length);
+        out.writeBytes(encoded);
+    }
+
+    // The receipt, shop and goods classes with the fields they had when the receipts were saved with Java serialization
+    private static final class OldReceipt implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private int receiptId;
+        private Cashier cashier;
+        private LocalDateTime dateTime;
+        private Map<OldGoods, Integer> soldGoods;
+        private Map<OldGoods, Double> goodsPrices;
+        private double totalPrice;
+        private int shopId;
+        private String shopName;
+        private OldShop shop;
+    }
+
+    private static final class OldShop implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private int id;
+        private String name;
+        private String shopCurrency;
+        private List<OldGoods> allGoods;
+        private List<Cashier> cashiers = List.of();
+        private double totalIncome;
+        private double totalCosts;
+        private double percentageOverchargeFood;
+        private double percentageOverchargeNonFood;
+        private double percentageDecreaseFood;
+        private double percentageDecreaseNonFood;
+        private int daysTillExpiryFood;
+        private int daysTillExpiryNonFood;
+    }
+
+    private static final class OldGoods implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int id;
+        private final String name;
+        private final double buyingPrice;
+        private final GoodsType goodsType = GoodsType.FOOD;
+        private final LocalDate dateOfExpiry = LocalDate.of(2024, 3, 20);
+        private final int quantity = 10;
+
+        OldGoods(int id, String name, double buyingPrice) {
+            this.id = id;
+            this.name = name;
+            this.buyingPrice = buyingPrice;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// This class holds the tests of the index of the receipt store: the growth of the table, the keys that land in the same
+// slot and the packing of the keys and locations
+class ReceiptIndexTest {
+
+    @Test
+    void findsEveryReceiptAfterTheTableGrew() {
+        ReceiptIndex index = new ReceiptIndex();
+        for (int shopId = 1; shopId <= 4; shopId++) {
+            for (int receiptId = 1; receiptId <= 10_000; receiptId++) {
+                index.put(shopId, receiptId, ReceiptIndex.location(shopId, receiptId * 100L));
+            }
+        }
+
+        assertEquals(40_000, index.size());
+        for (int shopId = 1; shopId <= 4; shopId++) {
+            for (int receiptId = 1; receiptId <= 10_000; receiptId++) {
+                assertEquals(ReceiptIndex.location(shopId, receiptId * 100L), index.get(shopId, receiptId));
+            }
+        }
+        assertEquals(-1, index.get(5, 1));
+        assertEquals(-1, index.get(1, 10_001));
+    }
+
+    @Test
+    void keepsTheKeysThatLandInTheSameSlotApart() {
+        // The receipts of one shop and the receipts with the same ID in other shops only differ in some bits of the key,
+        // 31 of them fill the first table of 64 slots right below its growth
+        ReceiptIndex index = new ReceiptIndex();
+        for (int entry = 0; entry < 31; entry++) {
+            index.put(entry % 3, entry / 3, entry);
+        }
+
+        assertEquals(31, index.size());
+        for (int entry = 0; entry < 31; entry++) {
+            assertEquals(entry, index.get(entry % 3, entry / 3));
+        }
+        assertEquals(-1, index.get(3, 0));
+    }
+
+    @Test
+    void replacesTheLocationOfAReceiptThatWasAlreadyAdded() {
+        ReceiptIndex index = new ReceiptIndex();
+        index.put(1, 7, ReceiptIndex.location(0, 10));
+        index.put(1, 7, ReceiptIndex.location(2, 20));
+
+        assertEquals(1, index.size());
+        assertEquals(ReceiptIndex.location(2, 20), index.get(1, 7));
+    }
+
+    @Test
+    void packsTheKeysAndTheLocations() {
+        long key = ReceiptIndex.key(7, Integer.MAX_VALUE);
+        assertEquals(7, (int) (key >>> 32));
+        assertEquals(Integer.MAX_VALUE, (int) key);
+
+        long location = ReceiptIndex.location(1234, (1L << 40) - 1);
+        assertEquals(1234, ReceiptIndex.segmentOf(location));
+        assertEquals((1L << 40) - 1, ReceiptIndex.offsetOf(location));
+    }
+}
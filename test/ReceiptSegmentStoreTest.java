@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// This class holds the tests of the segment store: the records read back from the active segment and from the sealed
+// segments, the index rebuilt from the footers when the store is opened again and the record cut off by a crash
+class ReceiptSegmentStoreTest {
+    // Small segments so a few receipts fill several of them
+    private static final long SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsTheReceiptsBackFromTheActiveSegment() throws IOException {
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, ReceiptSegmentStore.DEFAULT_SEGMENT_SIZE)) {
+            append(store, 1, 1);
+            append(store, 2, 1);
+            ReceiptStore.Batch batch = new ReceiptStore.Batch();
+            byte[] text = text(1, 2);
+            batch.add(1, 2, text, text.length, encoded(1, 2));
+            store.append(batch);
+
+            assertRecord(store, 1, 1);
+            assertRecord(store, 2, 1);
+            assertRecord(store, 1, 2);
+            assertTrue(store.contains(1, 2));
+            assertFalse(store.contains(1, 3));
+            assertNull(store.readText(3, 1));
+            assertEquals(2, store.highestReceiptId(1));
+            assertEquals(0, store.highestReceiptId(3));
+        }
+    }
+
+    @Test
+    void sealsTheFullSegmentsAndRebuildsTheIndexWhenOpenedAgain() throws IOException {
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, SEGMENT_SIZE)) {
+            for (int receiptId = 1; receiptId <= 60; receiptId++) {
+                append(store, 1 + receiptId % 2, receiptId);
+            }
+            for (int receiptId = 1; receiptId <= 60; receiptId++) {
+                assertRecord(store, 1 + receiptId % 2, receiptId);
+            }
+        }
+
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, SEGMENT_SIZE)) {
+            List<Path> segments = store.segmentPaths();
+            assertTrue(segments.size() > 2);
+            // Every segment but the active one has a footer with the offsets of its records
+            int sealedRecords = 0;
+            for (Path segment : segments.subList(0, segments.size() - 1)) {
+                long[] offsets = ReceiptSegmentStore.footerOffsets(ByteBuffer.wrap(Files.readAllBytes(segment)));
+                assertNotNull(offsets);
+                sealedRecords += offsets.length;
+            }
+            assertEquals(sealedRecords + activeRecords(segments.get(segments.size() - 1)), store.size());
+            assertEquals(60, store.size());
+            for (int receiptId = 1; receiptId <= 60; receiptId++) {
+                assertRecord(store, 1 + receiptId % 2, receiptId);
+            }
+            assertEquals(59, store.highestReceiptId(2));
+            assertEquals(60, store.highestReceiptId(1));
+
+            append(store, 1, 61);
+            assertRecord(store, 1, 61);
+        }
+    }
+
+    @Test
+    void dropsTheRecordThatWasCutOffAndAppendsAfterTheLastCompleteOne() throws IOException {
+        Path segment;
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, ReceiptSegmentStore.DEFAULT_SEGMENT_SIZE)) {
+            for (int receiptId = 1; receiptId <= 3; receiptId++) {
+                append(store, 1, receiptId);
+            }
+            segment = store.segmentPaths().get(0);
+        }
+        // Add the header of a record without its body, like a crash in the middle of a write
+        long validSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(ReceiptSegmentStore.RECORD_HEADER_SIZE)
+                    .putInt(ReceiptSegmentStore.RECORD_MAGIC).putInt(1).putInt(4).putInt(100).putInt(100).flip());
+        }
+
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, ReceiptSegmentStore.DEFAULT_SEGMENT_SIZE)) {
+            assertEquals(validSize, Files.size(segment));
+            assertEquals(3, store.size());
+            assertFalse(store.contains(1, 4));
+            append(store, 1, 4);
+        }
+
+        try (ReceiptSegmentStore store = ReceiptSegmentStore.open(folder, ReceiptSegmentStore.DEFAULT_SEGMENT_SIZE)) {
+            for (int receiptId = 1; receiptId <= 4; receiptId++) {
+                assertRecord(store, 1, receiptId);
+            }
+        }
+    }
+
+    private static void append(ReceiptSegmentStore store, int shopId, int receiptId) throws IOException {
+        store.append(shopId, receiptId, text(shopId, receiptId), encoded(shopId, receiptId));
+    }
+
+    private static void assertRecord(ReceiptSegmentStore store, int shopId, int receiptId) throws IOException {
+        assertEquals(ByteBuffer.wrap(text(shopId, receiptId)), store.readText(shopId, receiptId));
+        assertEquals(ByteBuffer.wrap(encoded(shopId, receiptId)), store.readEncoded(shopId, receiptId));
+    }
+
+    private static int activeRecords(Path segment) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int count = 0;
+        for (int next = ReceiptSegmentStore.nextRecord(bytes, 0); next >= 0; next = ReceiptSegmentStore.nextRecord(bytes, next)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] text(int shopId, int receiptId) {
+        return ("Receipt " + receiptId + " of shop " + shopId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encoded(int shopId, int receiptId) {
+        Receipt receipt = new Receipt(shopId, "Shop", "BGN", new Cashier(1, "Kara Clark", 1500), receiptId,
+                LocalDateTime.of(2024, 3, 15, 10, 30));
+        receipt.addSaleOfGoods(Goods.ofReceiptLine(101, "Strawberry"), 2, 240);
+        return ReceiptCodec.encode(receipt);
+    }
+}
@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// This class holds the tests of the shop journal: the recovery from the journal and the snapshot, the records that
+// were cut off by a crash and the conversion of the files of version 1
+class ShopJournalTest {
+    private static final int SHOP_ID = 1;
+    // The values the journal of version 1 was written with, without a header and with the prices as doubles
+    private static final int SNAPSHOT_MAGIC = 0x53484F50;
+    private static final int RECORD_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void recoversTheSalesAndCostsFromTheJournal() throws IOException {
+        try (ShopJournal journal = open()) {
+            journal.append(1, 1050);
+            journal.append(2, 250);
+            journal.appendCostOfGoods(700);
+            journal.appendSalary(150_000);
+        }
+
+        try (ShopJournal journal = open()) {
+            assertEquals(2, journal.getReceiptNumber());
+            assertEquals(1300, journal.getTotalValue());
+            assertEquals(700, journal.getCostOfGoods());
+            assertEquals(150_000, journal.getSalaries());
+        }
+    }
+
+    @Test
+    void dropsTheRecordThatWasCutOffAndAppendsAfterTheLastCompleteOne() throws IOException {
+        try (ShopJournal journal = open()) {
+            journal.append(1, 100);
+            journal.append(2, 200);
+            journal.append(3, 300);
+        }
+        // Damage the checksum of the last record and add half of a record after it, like a crash in the middle of a write
+        Path journalPath = folder.resolve(SHOP_ID + "_journal_0.log");
+        byte[] bytes = Files.readAllBytes(journalPath);
+        bytes[bytes.length - 1] ^= 0x7F;
+        byte[] damaged = new byte[bytes.length + RECORD_SIZE / 2];
+        System.arraycopy(bytes, 0, damaged, 0, bytes.length);
+        Files.write(journalPath, damaged);
+
+        try (ShopJournal journal = open()) {
+            assertEquals(2, journal.getReceiptNumber());
+            assertEquals(300, journal.getTotalValue());
+            assertEquals(bytes.length - RECORD_SIZE, Files.size(journalPath));
+            journal.append(3, 400);
+        }
+
+        try (ShopJournal journal = open()) {
+            assertEquals(3, journal.getReceiptNumber());
+            assertEquals(700, journal.getTotalValue());
+        }
+    }
+
+    @Test
+    void recoversFromTheSnapshotAndTheJournalAfterIt() throws IOException {
+        try (ShopJournal journal = open()) {
+            for (int receiptNumber = 1; receiptNumber <= 1005; receiptNumber++) {
+                journal.append(receiptNumber, 10);
+            }
+            journal.appendCostOfGoods(5);
+        }
+        // The snapshot after the first 1000 records replaced the first journal file
+        assertTrue(Files.exists(folder.resolve(SHOP_ID + "_snapshot.bin")));
+        assertFalse(Files.exists(folder.resolve(SHOP_ID + "_journal_0.log")));
+        assertTrue(Files.exists(folder.resolve(SHOP_ID + "_journal_1.log")));
+
+        try (ShopJournal journal = open()) {
+            assertEquals(1005, journal.getReceiptNumber());
+            assertEquals(10_050, journal.getTotalValue());
+            assertEquals(5, journal.getCostOfGoods());
+        }
+        assertTrue(Files.readString(folder.resolve(SHOP_ID + "_shop_info.txt")).contains("Receipt number: 1000"));
+    }
+
+    @Test
+    void convertsTheSnapshotAndTheJournalOfVersionOne() throws IOException {
+        // A snapshot of generation 0 with 4 receipts worth 12.34 and a journal with two more receipts, all as doubles
+        ByteBuffer snapshot = ByteBuffer.allocate(Integer.BYTES * 3 + Long.BYTES + Integer.BYTES);
+        snapshot.putInt(SNAPSHOT_MAGIC).putInt(0).putInt(4).putLong(Double.doubleToLongBits(12.34));
+        snapshot.putInt(checksum(snapshot.array(), snapshot.position()));
+        Files.write(folder.resolve(SHOP_ID + "_snapshot.bin"), snapshot.array());
+        ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 2);
+        putDoubleRecord(records, 5, 0.1);
+        putDoubleRecord(records, 6, 0.2);
+        Files.write(folder.resolve(SHOP_ID + "_journal_0.log"), records.array());
+
+        try (ShopJournal journal = open()) {
+            assertEquals(6, journal.getReceiptNumber());
+            assertEquals(1264, journal.getTotalValue());
+            journal.append(7, 100);
+        }
+        // The converted values were saved in a new snapshot, the file of version 1 is gone and nothing was appended to it
+        assertFalse(Files.exists(folder.resolve(SHOP_ID + "_journal_0.log")));
+
+        try (ShopJournal journal = open()) {
+            assertEquals(7, journal.getReceiptNumber());
+            assertEquals(1364, journal.getTotalValue());
+        }
+    }
+
+    @Test
+    void migratesTheShopInfoFileWrittenBeforeTheJournal() throws IOException {
+        Files.writeString(folder.resolve(SHOP_ID + "_shop_info.txt"), "Shop\nReceipt number: 12\nTotal value: 45.60 BGN\n");
+
+        try (ShopJournal journal = open()) {
+            assertEquals(12, journal.getReceiptNumber());
+            assertEquals(4560, journal.getTotalValue());
+        }
+        assertTrue(Files.exists(folder.resolve(SHOP_ID + "_snapshot.bin")));
+    }
+
+    private ShopJournal open() throws IOException {
+        return ShopJournal.open(folder, SHOP_ID, "Shop", "BGN");
+    }
+
+    private static void putDoubleRecord(ByteBuffer buffer, int receiptNumber, double totalPrice) {
+        int start = buffer.position();
+        buffer.putInt(receiptNumber).putLong(Double.doubleToLongBits(totalPrice));
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), start, RECORD_SIZE - Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static int checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// This class holds the tests of the batch checkout of the shop: the baskets that are sold in their order with one range
+// of receipt numbers, and the batch whose receipts can't be submitted being undone
+class ShopTest {
+    private MemoryReceiptStore receiptStore;
+    private Shop shop;
+    private Cashier cashier;
+    private Goods strawberry;
+
+    @BeforeEach
+    void createShop() {
+        receiptStore = new MemoryReceiptStore();
+        shop = new Shop(1, "Shop", "BGN", 20, 40, 10, 5, 7, 10, DurabilityPolicy.PER_BATCH, InventoryLayout.OBJECTS,
+                receiptStore, new MemoryShopStateStore());
+        cashier = new Cashier(1, "Kara Clark", 1500);
+        shop.addCashierToList(cashier);
+        // The strawberries are far from their expiry, so they cost 2.00 with 20% overcharge
+        strawberry = new Goods(101, "Strawberry", 2.0, GoodsType.FOOD, LocalDate.now().plusDays(30), 10);
+        shop.addGoodsToList(strawberry);
+    }
+
+    @AfterEach
+    void closeShop() {
+        shop.close();
+    }
+
+    @Test
+    void sellsTheBasketsInTheirOrderWithOneRangeOfReceiptNumbers() throws Exception {
+        List<CheckoutResult> results = shop.sellGoodsBatch(List.of(
+                request(4, 100),
+                request(1, 0.01),
+                request(5, 100),
+                request(2, 100),
+                request(1, 100)));
+
+        assertEquals(CheckoutResult.Status.SOLD, results.get(0).getStatus());
+        assertEquals(CheckoutResult.Status.INSUFFICIENT_FUNDS, results.get(1).getStatus());
+        assertEquals(CheckoutResult.Status.SOLD, results.get(2).getStatus());
+        // Only one strawberry is left for the last two baskets
+        assertEquals(CheckoutResult.Status.INSUFFICIENT_QUANTITY, results.get(3).getStatus());
+        assertEquals(CheckoutResult.Status.SOLD, results.get(4).getStatus());
+        assertEquals(0, strawberry.getQuantity());
+
+        assertEquals(1, results.get(0).getReceipt().getReceiptId());
+        assertEquals(2, results.get(2).getReceipt().getReceiptId());
+        assertEquals(3, results.get(4).getReceipt().getReceiptId());
+        assertEquals(1200, results.get(2).getReceipt().getTotalPriceMinor());
+        for (CheckoutResult result : List.of(results.get(0), results.get(2), results.get(4))) {
+            result.getReceipt().getPersistedFuture().get();
+        }
+        assertEquals(3, receiptStore.highestReceiptId(1));
+    }
+
+    @Test
+    void undoesTheBatchWhoseReceiptsCantBeSubmitted() {
+        // The receipt writer of a closed shop takes no receipts
+        shop.close();
+
+        List<CheckoutResult> results = shop.sellGoodsBatch(List.of(request(4, 100), request(30, 100), request(6, 100)));
+
+        assertEquals(CheckoutResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals(CheckoutResult.Status.INSUFFICIENT_QUANTITY, results.get(1).getStatus());
+        assertEquals(CheckoutResult.Status.FAILED, results.get(2).getStatus());
+        // The goods of the failed baskets are back in the stock and none of their receipts was saved
+        assertEquals(10, strawberry.getQuantity());
+        assertFalse(receiptStore.contains(1, 1));
+        assertEquals(0, receiptStore.highestReceiptId(1));
+        assertEquals(0, shop.getMetrics().getCounters().getReceipts());
+    }
+
+    private CheckoutRequest request(int strawberries, double money) {
+        return new CheckoutRequest(cashier, Map.of(101, strawberries), new Client(money));
+    }
+}